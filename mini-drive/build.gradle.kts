@@ -2,6 +2,7 @@ plugins {
     java
     id("org.springframework.boot") version "3.1.5"
     id("io.spring.dependency-management") version "1.1.4"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.n3lx"
@@ -30,6 +31,7 @@ dependencies {
     implementation("org.springframework.boot:spring-boot-starter-data-jpa")
     implementation("org.springframework.boot:spring-boot-starter-jdbc")
     implementation("org.springframework.boot:spring-boot-starter-validation")
+    implementation("org.springframework.boot:spring-boot-starter-actuator")
     runtimeOnly("org.postgresql:postgresql:42.6.0")
     implementation("org.liquibase:liquibase-core:4.25.0")
     implementation("io.jsonwebtoken:jjwt-api:$jjwtVersion")
@@ -43,6 +45,10 @@ dependencies {
     testImplementation("io.rest-assured:rest-assured:5.3.2")
 }
 
+jmh {
+    jmhVersion.set("1.37")
+}
+
 tasks.withType<Test> {
     useJUnitPlatform()
 }
@@ -0,0 +1,93 @@
+package com.n3lx.minidrive.security.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of authenticating a single request with a JWT, excluding the user lookup.
+ * <p>
+ * Run with {@code gradle jmh}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JWTVerificationBenchmark {
+
+    private static final String secret = ")H=#T@#[]HdPDMNqNMCMVS_usIr~_0Si87Zys562Sw~TAj$JKlx!]eYK.57ld#'W";
+
+    private final UserDetails userDetails = new User("benchmarkUser", "", Collections.emptyList());
+
+    private JWTUtil uncachedJwtUtil;
+
+    private JWTUtil cachedJwtUtil;
+
+    private String token;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        uncachedJwtUtil = createJwtUtil(0);
+        cachedJwtUtil = createJwtUtil(10000);
+        token = cachedJwtUtil.generateToken(userDetails);
+        cachedJwtUtil.verifyToken(token);
+    }
+
+    /**
+     * Verification as performed by the filter before tokens were verified once per request: username is read,
+     * then the token is validated, each step builds a new parser and derives the key again
+     */
+    @Benchmark
+    public boolean repeatedParsing() {
+        var username = getAllClaims(token).getSubject();
+        var claims = getAllClaims(token);
+        return username.equals(userDetails.getUsername())
+                && claims.getSubject().equals(username)
+                && getAllClaims(token).getExpiration().getTime() > System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public VerifiedToken singleParsing() {
+        return uncachedJwtUtil.verifyToken(token);
+    }
+
+    @Benchmark
+    public VerifiedToken cachedVerification() {
+        return cachedJwtUtil.verifyToken(token);
+    }
+
+    private Claims getAllClaims(String token) {
+        return Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)))
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+
+    private static JWTUtil createJwtUtil(int verifiedTokenCacheSize) throws ReflectiveOperationException {
+        var jwtUtil = new JWTUtil();
+        setField(jwtUtil, "secret", secret);
+        setField(jwtUtil, "validityTimeInSeconds", 600);
+        setField(jwtUtil, "verifiedTokenCacheSize", verifiedTokenCacheSize);
+        var init = JWTUtil.class.getDeclaredMethod("init");
+        init.setAccessible(true);
+        init.invoke(jwtUtil);
+        return jwtUtil;
+    }
+
+    private static void setField(JWTUtil jwtUtil, String name, Object value) throws ReflectiveOperationException {
+        var field = JWTUtil.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(jwtUtil, value);
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.n3lx.minidrive.dto;
+
+import lombok.*;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+@EqualsAndHashCode
+public class ArchiveJobDTO {
+
+    private String jobId;
+
+    /**
+     * One of QUEUED, RUNNING, COMPLETED, FAILED
+     */
+    private String status;
+
+    private Integer totalFiles;
+
+    private Integer processedFiles;
+
+    private Long totalBytes;
+
+    private Long processedBytes;
+
+    /**
+     * Estimated time until the archive is ready, null until the estimate is available
+     */
+    private Long estimatedSecondsRemaining;
+
+    private String errorMessage;
+
+}
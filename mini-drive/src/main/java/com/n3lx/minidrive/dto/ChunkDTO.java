@@ -0,0 +1,25 @@
+package com.n3lx.minidrive.dto;
+
+import lombok.*;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+@EqualsAndHashCode
+public class ChunkDTO {
+
+    /**
+     * SHA-256 checksum of chunk contents
+     */
+    private String checksum;
+
+    /**
+     * Offset of the chunk within its file, not required when chunks are sent by the client
+     */
+    private Long offset;
+
+    private Integer length;
+
+}
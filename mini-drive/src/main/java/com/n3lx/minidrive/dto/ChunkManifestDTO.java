@@ -0,0 +1,34 @@
+package com.n3lx.minidrive.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Chunks of a stored file together with parameters of the chunking algorithm
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+@EqualsAndHashCode
+public class ChunkManifestDTO {
+
+    private String fileName;
+
+    private String checksum;
+
+    private String algorithm;
+
+    private Integer windowSize;
+
+    private Integer minChunkSize;
+
+    private Integer maxChunkSize;
+
+    private Integer boundaryMask;
+
+    private List<ChunkDTO> chunks;
+
+}
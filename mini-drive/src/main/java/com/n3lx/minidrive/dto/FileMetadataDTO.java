@@ -0,0 +1,28 @@
+package com.n3lx.minidrive.dto;
+
+import lombok.*;
+
+import java.sql.Timestamp;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+@EqualsAndHashCode
+public class FileMetadataDTO {
+
+    private String name;
+
+    private Long size;
+
+    private Timestamp lastModified;
+
+    private String contentType;
+
+    /**
+     * Hex encoded SHA-256 of file contents, null for files that were not uploaded through the application
+     */
+    private String checksum;
+
+}
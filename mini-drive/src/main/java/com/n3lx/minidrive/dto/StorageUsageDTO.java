@@ -0,0 +1,20 @@
+package com.n3lx.minidrive.dto;
+
+import lombok.*;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+@EqualsAndHashCode
+public class StorageUsageDTO {
+
+    private Long usedBytes;
+
+    /**
+     * Null if the user's storage is not limited
+     */
+    private Long quotaInBytes;
+
+}
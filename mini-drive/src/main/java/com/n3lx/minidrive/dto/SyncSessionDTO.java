@@ -0,0 +1,28 @@
+package com.n3lx.minidrive.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+@EqualsAndHashCode
+public class SyncSessionDTO {
+
+    private String sessionId;
+
+    private String fileName;
+
+    private Long fileSize;
+
+    private Integer chunkCount;
+
+    /**
+     * Checksums of chunks that the server does not have and that have to be uploaded
+     */
+    private List<String> missingChunks;
+
+}
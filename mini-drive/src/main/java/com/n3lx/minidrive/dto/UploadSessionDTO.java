@@ -0,0 +1,27 @@
+package com.n3lx.minidrive.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+@EqualsAndHashCode
+public class UploadSessionDTO {
+
+    private String sessionId;
+
+    private String fileName;
+
+    private Long fileSize;
+
+    private Integer chunkSize;
+
+    private Integer chunkCount;
+
+    private List<Integer> missingChunks;
+
+}
@@ -0,0 +1,41 @@
+package com.n3lx.minidrive.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.sql.Timestamp;
+
+/**
+ * Either a single revoked token identified by its id, or all tokens of a user issued before a given time
+ */
+@Entity(name = "revoked_tokens")
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+@EqualsAndHashCode
+public class RevokedToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Id of a single revoked token, null if all tokens of a user are revoked
+     */
+    private String tokenId;
+
+    /**
+     * User whose tokens issued before {@link #issuedBefore} are revoked, null if a single token is revoked
+     */
+    private String username;
+
+    private Timestamp issuedBefore;
+
+    /**
+     * Time after which all revoked tokens have expired on their own and the revocation can be removed
+     */
+    private Timestamp expiresAt;
+
+}
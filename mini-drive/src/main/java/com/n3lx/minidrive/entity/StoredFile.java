@@ -0,0 +1,36 @@
+package com.n3lx.minidrive.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.sql.Timestamp;
+
+@Entity(name = "files")
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+@EqualsAndHashCode
+public class StoredFile {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long ownerId;
+
+    private String name;
+
+    private Long size;
+
+    private Timestamp lastModified;
+
+    private String checksum;
+
+    /**
+     * Location of the file relative to the storage root directory
+     */
+    private String storageKey;
+
+}
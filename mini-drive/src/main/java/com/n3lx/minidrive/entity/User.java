@@ -28,6 +28,16 @@ public class User implements UserDetails {
 
     private Set<String> roles;
 
+    /**
+     * Storage quota, default quota applies when null and negative values disable the limit
+     */
+    private Long quotaInBytes;
+
+    /**
+     * Storage used by the user as last flushed, null until it is calculated for the first time
+     */
+    private Long usedBytes;
+
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return roles.stream().map(SimpleGrantedAuthority::new).toList();
@@ -0,0 +1,24 @@
+package com.n3lx.minidrive.repository;
+
+import com.n3lx.minidrive.entity.RevokedToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+@Repository
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, Long> {
+
+    List<RevokedToken> findByExpiresAtAfter(Timestamp timestamp);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM revoked_tokens r WHERE r.expiresAt <= :timestamp")
+    int deleteExpired(@Param("timestamp") Timestamp timestamp);
+
+}
@@ -0,0 +1,69 @@
+package com.n3lx.minidrive.repository;
+
+import com.n3lx.minidrive.entity.StoredFile;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface StoredFileRepository extends JpaRepository<StoredFile, Long> {
+
+    List<StoredFile> findByOwnerIdOrderByNameAsc(Long ownerId);
+
+    List<StoredFile> findByOwnerId(Long ownerId, Pageable pageable);
+
+    List<StoredFile> findByOwnerIdAndNameGreaterThan(Long ownerId, String name, Pageable pageable);
+
+    Optional<StoredFile> findFirstByOwnerIdAndChecksum(Long ownerId, String checksum);
+
+    /**
+     * @return Version of the file listing of a given owner, empty if the owner does not exist
+     */
+    @Query(value = "SELECT file_listing_version FROM users WHERE id = :ownerId", nativeQuery = true)
+    Optional<Long> findListingVersion(@Param("ownerId") Long ownerId);
+
+    /**
+     * Inserts or updates metadata of a file in a single statement, so concurrent updates of the same file
+     * do not conflict. Listing version of the owner is increased by the same statement
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "WITH changed AS (" +
+            "INSERT INTO files (owner_id, name, size, last_modified, checksum, storage_key) " +
+            "VALUES (:ownerId, :name, :size, :lastModified, :checksum, :storageKey) " +
+            "ON CONFLICT (owner_id, name) DO UPDATE SET size = excluded.size, " +
+            "last_modified = excluded.last_modified, checksum = excluded.checksum, " +
+            "storage_key = excluded.storage_key " +
+            "RETURNING owner_id) " +
+            "UPDATE users SET file_listing_version = file_listing_version + 1 " +
+            "WHERE id IN (SELECT owner_id FROM changed)",
+            nativeQuery = true)
+    void upsert(@Param("ownerId") Long ownerId,
+                @Param("name") String name,
+                @Param("size") long size,
+                @Param("lastModified") Timestamp lastModified,
+                @Param("checksum") String checksum,
+                @Param("storageKey") String storageKey);
+
+    /**
+     * Listing version of the owner is increased by the same statement if the file was indexed
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "WITH deleted AS (" +
+            "DELETE FROM files WHERE owner_id = :ownerId AND name = :name " +
+            "RETURNING owner_id) " +
+            "UPDATE users SET file_listing_version = file_listing_version + 1 " +
+            "WHERE id IN (SELECT owner_id FROM deleted)",
+            nativeQuery = true)
+    void deleteByOwnerIdAndName(@Param("ownerId") Long ownerId, @Param("name") String name);
+
+}
@@ -2,7 +2,11 @@ package com.n3lx.minidrive.repository;
 
 import com.n3lx.minidrive.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -11,4 +15,17 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     Optional<User> findByUsername(String username);
 
+    /**
+     * @return Number of updated users, 0 if the user does not exist or their usage was not calculated yet
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE users u SET u.usedBytes = u.usedBytes + :delta WHERE u.id = :id AND u.usedBytes IS NOT NULL")
+    int addUsedBytes(@Param("id") Long id, @Param("delta") long delta);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE users u SET u.usedBytes = :usedBytes WHERE u.id = :id")
+    void setUsedBytes(@Param("id") Long id, @Param("usedBytes") long usedBytes);
+
 }
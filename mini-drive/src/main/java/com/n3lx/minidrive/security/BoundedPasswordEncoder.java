@@ -0,0 +1,141 @@
+package com.n3lx.minidrive.security;
+
+import com.n3lx.minidrive.service.exception.PasswordHashingRejectedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a CPU-intensive password encoder on a dedicated bounded executor, so that a burst of logins or registrations
+ * can not occupy all processors and stall file transfers. Hashing requests are rejected with
+ * {@link PasswordHashingRejectedException} as soon as the queue is full instead of waiting for a free thread.
+ * <p>
+ * Queue depth, hashing time and rejections are published as metrics.
+ */
+@Slf4j
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /**
+     * Number of threads hashing passwords, values lower than 1 use half of the available processors
+     */
+    @Value("${app.passwordHashing.threadCount}")
+    private int threadCount;
+
+    /**
+     * Number of hashing requests waiting for a free thread before new requests are rejected
+     */
+    @Value("${app.passwordHashing.queueCapacity}")
+    private int queueCapacity;
+
+    @Value("${app.passwordHashing.retryAfterInSeconds}")
+    private int retryAfterInSeconds;
+
+    private final PasswordEncoder delegate;
+
+    private ThreadPoolExecutor hashingExecutor;
+
+    private Timer encodeTimer;
+
+    private Timer matchesTimer;
+
+    private Counter rejections;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate) {
+        this.delegate = delegate;
+    }
+
+    @PostConstruct
+    private void init() {
+        var effectiveThreadCount = threadCount < 1
+                ? Math.max(1, Runtime.getRuntime().availableProcessors() / 2)
+                : threadCount;
+        var threadNumber = new AtomicInteger();
+        hashingExecutor = new ThreadPoolExecutor(effectiveThreadCount, effectiveThreadCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    var thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        encodeTimer = Timer.builder("minidrive.password.hashing")
+                .tag("operation", "encode")
+                .register(meterRegistry);
+        matchesTimer = Timer.builder("minidrive.password.hashing")
+                .tag("operation", "matches")
+                .register(meterRegistry);
+        rejections = Counter.builder("minidrive.password.hashing.rejections")
+                .register(meterRegistry);
+        Gauge.builder("minidrive.password.hashing.queue", hashingExecutor, executor -> executor.getQueue().size())
+                .register(meterRegistry);
+        log.info("Password hashing executor started with " + effectiveThreadCount + " threads");
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        hashingExecutor.shutdownNow();
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return submit(encodeTimer, () -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return submit(matchesTimer, () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * Request thread waits for the result, but only a bounded number of requests can wait at the same time
+     */
+    private <T> T submit(Timer timer, Callable<T> task) {
+        Future<T> result;
+        try {
+            result = hashingExecutor.submit(() -> {
+                var startTimestamp = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    timer.record(System.nanoTime() - startTimestamp, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejections.increment();
+            log.debug("Password hashing rejected, queue is full");
+            throw new PasswordHashingRejectedException(retryAfterInSeconds);
+        }
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.n3lx.minidrive.security;
+
+import com.n3lx.minidrive.service.exception.LoginThrottledException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rejects login attempts with too many recent failures before their passwords are hashed, so that credential
+ * stuffing does not consume the processor time of legitimate logins.
+ * <p>
+ * Failures are counted per username and client address together, so that guessing passwords from one address does
+ * not lock the user out of other addresses. Once the number of failures within the window reaches the limit, the pair
+ * is blocked for a time that doubles with every further failure. Attacks spread over many addresses are caught by
+ * a higher limit per username alone, attacks on many usernames by a limit per address. Failures are counted
+ * in fixed size sketches, memory use does not grow with the number of attacked usernames or attacking addresses.
+ */
+@Component
+@Slf4j
+public class LoginThrottle {
+
+    @Value("${app.loginThrottle.enabled}")
+    private boolean enabled;
+
+    /**
+     * Number of counters per sketch row, higher values reduce the chance of unrelated keys being blocked together
+     */
+    @Value("${app.loginThrottle.sketchWidth}")
+    private int sketchWidth;
+
+    @Value("${app.loginThrottle.windowInSeconds}")
+    private int windowInSeconds;
+
+    @Value("${app.loginThrottle.maxFailuresPerUsernameAndAddress}")
+    private int maxFailuresPerUsernameAndAddress;
+
+    /**
+     * Limit for a username regardless of the address, higher than the limit per username and address,
+     * as reaching it blocks the user on every address
+     */
+    @Value("${app.loginThrottle.maxFailuresPerUsername}")
+    private int maxFailuresPerUsername;
+
+    /**
+     * Limit for a single client address, higher than the limit per username as several users can share an address
+     */
+    @Value("${app.loginThrottle.maxFailuresPerAddress}")
+    private int maxFailuresPerAddress;
+
+    @Value("${app.loginThrottle.initialBackoffInSeconds}")
+    private int initialBackoffInSeconds;
+
+    @Value("${app.loginThrottle.maxBackoffInSeconds}")
+    private int maxBackoffInSeconds;
+
+    private SlidingWindowSketch usernameAndAddressFailures;
+
+    private SlidingWindowSketch usernameFailures;
+
+    private SlidingWindowSketch addressFailures;
+
+    @PostConstruct
+    private void init() {
+        usernameAndAddressFailures = new SlidingWindowSketch(sketchWidth, windowInSeconds * 1000L);
+        usernameFailures = new SlidingWindowSketch(sketchWidth, windowInSeconds * 1000L);
+        addressFailures = new SlidingWindowSketch(sketchWidth, windowInSeconds * 1000L);
+    }
+
+    /**
+     * @throws LoginThrottledException If the username on the address, the username or the address is blocked
+     */
+    public void checkAllowed(String username, String address) {
+        if (!enabled) {
+            return;
+        }
+        var currentTimestamp = System.currentTimeMillis();
+        var blockedUntilTimestamp = Math.max(
+                usernameAndAddressFailures.getBlockedUntil(generatePairKey(username, address)),
+                Math.max(usernameFailures.getBlockedUntil(String.valueOf(username)),
+                        addressFailures.getBlockedUntil(address)));
+        if (blockedUntilTimestamp > currentTimestamp) {
+            var retryAfterInSeconds = (int) Math.ceil((blockedUntilTimestamp - currentTimestamp) / 1000.0);
+            throw new LoginThrottledException(retryAfterInSeconds);
+        }
+    }
+
+    public void recordFailure(String username, String address) {
+        if (!enabled) {
+            return;
+        }
+        var currentTimestamp = System.currentTimeMillis();
+        recordFailure(usernameAndAddressFailures, generatePairKey(username, address),
+                maxFailuresPerUsernameAndAddress, currentTimestamp);
+        recordFailure(usernameFailures, String.valueOf(username), maxFailuresPerUsername, currentTimestamp);
+        recordFailure(addressFailures, address, maxFailuresPerAddress, currentTimestamp);
+    }
+
+    /**
+     * Addresses do not contain spaces, so different pairs never share a key
+     */
+    private String generatePairKey(String username, String address) {
+        return address + " " + username;
+    }
+
+    private void recordFailure(SlidingWindowSketch failures, String key, int maxFailures, long currentTimestamp) {
+        var failureCount = failures.increment(key, currentTimestamp);
+        if (failureCount < maxFailures) {
+            return;
+        }
+        var exponent = Math.min(failureCount - maxFailures, 30);
+        var backoffInSeconds = Math.min((long) initialBackoffInSeconds << exponent, maxBackoffInSeconds);
+        failures.block(key, currentTimestamp + backoffInSeconds * 1000);
+        log.debug("Logins of " + key + " blocked for " + backoffInSeconds + " seconds after "
+                + failureCount + " failures");
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.n3lx.minidrive.security;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch of events per key within a sliding window, memory used is fixed regardless of the number of keys.
+ * <p>
+ * Events are counted in the current and the previous window, the previous window is weighted by the part of it that
+ * still overlaps the sliding window. Estimates never undercount, colliding keys can only be overcounted. Every key
+ * can additionally be blocked until a given time, blocks are kept in a sketch of the same shape.
+ * <p>
+ * Counters are updated without locking, only switching to the next window is synchronized.
+ */
+class SlidingWindowSketch {
+
+    private static final int depth = 4;
+
+    private final int width;
+
+    private final long windowInMillis;
+
+    /**
+     * Hash seeds are random so that colliding keys can not be prepared in advance
+     */
+    private final long[] seeds = new long[depth];
+
+    private final AtomicLongArray blockedUntilTimestamps;
+
+    private volatile Window currentWindow;
+
+    private volatile Window previousWindow;
+
+    SlidingWindowSketch(int width, long windowInMillis) {
+        this.width = width;
+        this.windowInMillis = windowInMillis;
+        var random = new SecureRandom();
+        for (int i = 0; i < depth; i++) {
+            seeds[i] = random.nextLong();
+        }
+        blockedUntilTimestamps = new AtomicLongArray(depth * width);
+        currentWindow = new Window(System.currentTimeMillis(), new AtomicIntegerArray(depth * width));
+        previousWindow = new Window(currentWindow.startTimestamp() - windowInMillis,
+                new AtomicIntegerArray(depth * width));
+    }
+
+    /**
+     * Records an event of a key
+     *
+     * @return Estimated number of events of the key within the sliding window, including the recorded one
+     */
+    int increment(String key, long currentTimestamp) {
+        var window = getWindow(currentTimestamp);
+        for (int row = 0; row < depth; row++) {
+            window.counts().incrementAndGet(index(key, row));
+        }
+        return estimate(key, currentTimestamp);
+    }
+
+    /**
+     * @return Estimated number of events of the key within the sliding window
+     */
+    int estimate(String key, long currentTimestamp) {
+        var window = getWindow(currentTimestamp);
+        var previous = previousWindow;
+        //Part of the previous window still covered by the sliding window
+        var previousWeight = previous.startTimestamp() + windowInMillis == window.startTimestamp()
+                ? 1.0 - (double) (currentTimestamp - window.startTimestamp()) / windowInMillis
+                : 0.0;
+
+        var estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            var index = index(key, row);
+            var count = window.counts().get(index) + (int) Math.ceil(previous.counts().get(index) * previousWeight);
+            estimate = Math.min(estimate, count);
+        }
+        return estimate;
+    }
+
+    void block(String key, long blockedUntilTimestamp) {
+        for (int row = 0; row < depth; row++) {
+            blockedUntilTimestamps.accumulateAndGet(index(key, row), blockedUntilTimestamp, Math::max);
+        }
+    }
+
+    /**
+     * @return Time until which the key is blocked, a time in the past if the key is not blocked
+     */
+    long getBlockedUntil(String key) {
+        var blockedUntilTimestamp = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            blockedUntilTimestamp = Math.min(blockedUntilTimestamp, blockedUntilTimestamps.get(index(key, row)));
+        }
+        return blockedUntilTimestamp;
+    }
+
+    private Window getWindow(long currentTimestamp) {
+        var window = currentWindow;
+        if (currentTimestamp - window.startTimestamp() < windowInMillis) {
+            return window;
+        }
+        synchronized (this) {
+            window = currentWindow;
+            if (currentTimestamp - window.startTimestamp() >= windowInMillis) {
+                var elapsedWindows = (currentTimestamp - window.startTimestamp()) / windowInMillis;
+                //Previous window is empty if more than one window has elapsed without any event
+                previousWindow = elapsedWindows == 1
+                        ? window
+                        : new Window(window.startTimestamp() + (elapsedWindows - 1) * windowInMillis,
+                        new AtomicIntegerArray(depth * width));
+                currentWindow = new Window(window.startTimestamp() + elapsedWindows * windowInMillis,
+                        new AtomicIntegerArray(depth * width));
+            }
+            return currentWindow;
+        }
+    }
+
+    private int index(String key, int row) {
+        var hash = seeds[row];
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return row * width + (int) Math.floorMod(hash, (long) width);
+    }
+
+    private record Window(long startTimestamp, AtomicIntegerArray counts) {
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.n3lx.minidrive.security;
+
+import com.n3lx.minidrive.entity.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of users resolved as principals of authenticated requests. Cached users are reloaded from
+ * the database after a short time, so that changed roles are applied without waiting for tokens to expire.
+ * Users are invalidated whenever they are updated or deleted.
+ */
+@Component
+public class UserCache {
+
+    /**
+     * Whether principals are resolved through this cache instead of being built from token claims alone
+     */
+    @Value("${app.jwt.userCache.enabled}")
+    private boolean enabled;
+
+    @Value("${app.jwt.userCache.maxSize}")
+    private int maxSize;
+
+    @Value("${app.jwt.userCache.timeToLiveInSeconds}")
+    private int timeToLiveInSeconds;
+
+    private final Map<String, CachedUser> cachedUsers = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Cached user or null if the user is not cached or has been cached for too long
+     */
+    public User get(String username) {
+        var cachedUser = cachedUsers.get(username);
+        if (cachedUser != null && cachedUser.expirationTimestamp() <= System.currentTimeMillis()) {
+            cachedUsers.remove(username, cachedUser);
+            return null;
+        }
+        return cachedUser != null ? cachedUser.user() : null;
+    }
+
+    public void put(User user) {
+        if (cachedUsers.size() >= maxSize) {
+            evict();
+        }
+        var expirationTimestamp = System.currentTimeMillis() + timeToLiveInSeconds * 1000L;
+        cachedUsers.put(user.getUsername(), new CachedUser(user, expirationTimestamp));
+    }
+
+    public void invalidate(String username) {
+        cachedUsers.remove(username);
+    }
+
+    public void invalidate(Long userId) {
+        cachedUsers.values().removeIf(cachedUser -> userId.equals(cachedUser.user().getId()));
+    }
+
+    /**
+     * Removes expired users, cache is cleared when all users are still fresh
+     */
+    private void evict() {
+        var currentTimestamp = System.currentTimeMillis();
+        cachedUsers.values().removeIf(cachedUser -> cachedUser.expirationTimestamp() <= currentTimestamp);
+        if (cachedUsers.size() >= maxSize) {
+            cachedUsers.clear();
+        }
+    }
+
+    private record CachedUser(User user, long expirationTimestamp) {
+    }
+
+}
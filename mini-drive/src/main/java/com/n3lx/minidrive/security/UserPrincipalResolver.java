@@ -0,0 +1,63 @@
+package com.n3lx.minidrive.security;
+
+import com.n3lx.minidrive.entity.User;
+import com.n3lx.minidrive.security.jwt.TokenRevocationList;
+import com.n3lx.minidrive.security.jwt.VerifiedToken;
+import io.jsonwebtoken.JwtException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Builds principals of requests authenticated with a token.
+ * <p>
+ * By default the principal is built from id and roles embedded in the token, the database is not queried.
+ * Tokens issued without these claims are resolved by loading the user. If the user cache is enabled, principals
+ * are always taken from the cache or loaded, so that role changes apply within the cache time to live.
+ * <p>
+ * A principal built from claims does not tell whether the user still exists, deleting a user revokes all of their
+ * tokens instead. Revocations are therefore checked here, before the token is trusted without loading the user.
+ */
+@Component
+public class UserPrincipalResolver {
+
+    @Autowired
+    DatabaseUserDetailsService userDetailsService;
+
+    @Autowired
+    UserCache userCache;
+
+    @Autowired
+    TokenRevocationList tokenRevocationList;
+
+    /**
+     * @throws JwtException              If the token has been revoked
+     * @throws UsernameNotFoundException If the user has to be loaded and does not exist
+     */
+    public User resolve(VerifiedToken verifiedToken) {
+        if (tokenRevocationList.isRevoked(verifiedToken)) {
+            throw new JwtException("Token of user " + verifiedToken.username() + " has been revoked");
+        }
+        if (userCache.isEnabled()) {
+            var user = userCache.get(verifiedToken.username());
+            if (user == null) {
+                user = loadUser(verifiedToken.username());
+                userCache.put(user);
+            }
+            return user;
+        }
+        if (verifiedToken.userId() != null && verifiedToken.roles() != null) {
+            return User.builder()
+                    .id(verifiedToken.userId())
+                    .username(verifiedToken.username())
+                    .roles(verifiedToken.roles())
+                    .build();
+        }
+        return loadUser(verifiedToken.username());
+    }
+
+    private User loadUser(String username) {
+        return (User) userDetailsService.loadUserByUsername(username);
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.n3lx.minidrive.security.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set membership test that never misses an added value and reports values that were not added with a configured
+ * probability. Memory used depends on the expected number of values only, values can be added concurrently.
+ */
+class BloomFilter {
+
+    private final AtomicLongArray bits;
+
+    private final long bitCount;
+
+    private final int hashCount;
+
+    BloomFilter(int expectedValueCount, double falsePositiveProbability) {
+        var valueCount = Math.max(1, expectedValueCount);
+        bitCount = Math.max(64, (long) Math.ceil(-valueCount * Math.log(falsePositiveProbability)
+                / (Math.log(2) * Math.log(2))));
+        hashCount = Math.max(1, (int) Math.round((double) bitCount / valueCount * Math.log(2)));
+        bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+    }
+
+    void add(String value) {
+        var hash = hash(value);
+        var secondHash = mix(hash);
+        for (int i = 0; i < hashCount; i++) {
+            var bitIndex = Math.floorMod(hash + i * secondHash, bitCount);
+            var mask = 1L << bitIndex;
+            bits.accumulateAndGet((int) (bitIndex >>> 6), mask, (current, added) -> current | added);
+        }
+    }
+
+    /**
+     * @return False if the value has certainly not been added
+     */
+    boolean mightContain(String value) {
+        var hash = hash(value);
+        var secondHash = mix(hash);
+        for (int i = 0; i < hashCount; i++) {
+            var bitIndex = Math.floorMod(hash + i * secondHash, bitCount);
+            if ((bits.get((int) (bitIndex >>> 6)) & (1L << bitIndex)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hash(String value) {
+        var hash = 0xcbf29ce484222325L;
+        for (var b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ b) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.n3lx.minidrive.security.jwt;
 
-import com.n3lx.minidrive.security.DatabaseUserDetailsService;
+import com.n3lx.minidrive.entity.User;
+import com.n3lx.minidrive.security.UserPrincipalResolver;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -9,7 +10,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -24,25 +24,23 @@ public class JWTFilter extends OncePerRequestFilter {
     JWTUtil jwtUtil;
 
     @Autowired
-    DatabaseUserDetailsService userDetailsService;
+    UserPrincipalResolver userPrincipalResolver;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         try {
             String jwt = parseJwt(request);
             if (jwt != null) {
-                String username = jwtUtil.getUsername(jwt);
-                if (jwtUtil.validateToken(jwt, userDetailsService.loadUserByUsername(username))) {
-
-                    UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-                    UsernamePasswordAuthenticationToken authentication =
-                            new UsernamePasswordAuthenticationToken(
-                                    userDetails,
-                                    null,
-                                    userDetails.getAuthorities());
-                    authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                    SecurityContextHolder.getContext().setAuthentication(authentication);
-                }
+                //Token is verified once, an invalid or expired token results in an exception
+                var verifiedToken = jwtUtil.verifyToken(jwt);
+                User user = userPrincipalResolver.resolve(verifiedToken);
+                UsernamePasswordAuthenticationToken authentication =
+                        new UsernamePasswordAuthenticationToken(
+                                user,
+                                verifiedToken,
+                                user.getAuthorities());
+                authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                SecurityContextHolder.getContext().setAuthentication(authentication);
             }
         } catch (Exception e) {
             log.debug("Authentication attempt has failed with a non-null JWT provided", e);
@@ -1,56 +1,130 @@
 package com.n3lx.minidrive.security.jwt;
 
+import com.n3lx.minidrive.entity.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Component
 public class JWTUtil {
 
+    private static final String userIdClaim = "id";
+
+    private static final String rolesClaim = "roles";
+
+    /**
+     * Standard issue time claim has a precision of one second, revocations need to tell tokens issued
+     * right before and right after them apart
+     */
+    private static final String issuedAtInMillisClaim = "iatMillis";
+
     @Value("${app.jwt.secret}")
     private String secret;
 
     @Value("${app.jwt.validityTimeInSeconds}")
     private int validityTimeInSeconds;
 
+    /**
+     * Maximum number of verified tokens remembered, 0 disables the cache
+     */
+    @Value("${app.jwt.verifiedTokenCacheSize}")
+    private int verifiedTokenCacheSize;
+
+    private Key secretKey;
+
+    /**
+     * Parser is immutable and can be shared by all requests
+     */
+    private JwtParser parser;
+
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @PostConstruct
+    private void init() {
+        secretKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parserBuilder()
+                .setSigningKey(secretKey)
+                .build();
+        verifiedTokenCache = new VerifiedTokenCache(verifiedTokenCacheSize);
+    }
+
+    /**
+     * Id and roles of the user are embedded in the token when known, so that the principal can be built
+     * without querying the database
+     */
     public String generateToken(UserDetails userDetails) {
-        return Jwts.builder()
+        var currentTimestamp = System.currentTimeMillis();
+        var builder = Jwts.builder();
+        if (userDetails instanceof User user && user.getId() != null && user.getRoles() != null) {
+            builder.claim(userIdClaim, user.getId())
+                    .claim(rolesClaim, user.getRoles());
+        }
+        return builder
+                .setId(UUID.randomUUID().toString())
                 .setSubject(userDetails.getUsername())
-                .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + validityTimeInSeconds * 1000L))
-                .signWith(getSecretKey(), SignatureAlgorithm.HS512)
+                .claim(issuedAtInMillisClaim, currentTimestamp)
+                .setIssuedAt(new Date(currentTimestamp))
+                .setExpiration(new Date(currentTimestamp + validityTimeInSeconds * 1000L))
+                .signWith(secretKey, SignatureAlgorithm.HS512)
                 .compact();
     }
 
-    public Boolean validateToken(String token, UserDetails userDetails) {
-        var isExpired = getAllClaims(token).getExpiration().before(new Date());
-        var username = getUsername(token);
-        return userDetails.getUsername().equals(username) && !isExpired;
-    }
-
-    public String getUsername(String token) {
-        return getAllClaims(token).getSubject();
+    /**
+     * Verifies signature and expiration of a token, a token is parsed at most once while it stays in the cache
+     *
+     * @throws JwtException If the token is malformed, its signature is invalid or it has expired
+     */
+    public VerifiedToken verifyToken(String token) {
+        var verifiedToken = verifiedTokenCache.get(token);
+        if (verifiedToken != null) {
+            return verifiedToken;
+        }
+        //Parser rejects expired tokens
+        var claims = parser.parseClaimsJws(token).getBody();
+        if (claims.getExpiration() == null) {
+            throw new JwtException("Token does not expire");
+        }
+        var userId = claims.get(userIdClaim, Number.class);
+        var roles = claims.get(rolesClaim, Collection.class);
+        var issuedAtTimestamp = claims.get(issuedAtInMillisClaim, Number.class);
+        verifiedToken = new VerifiedToken(
+                claims.getId(),
+                claims.getSubject(),
+                userId != null ? userId.longValue() : null,
+                roles != null ? toRoles(roles) : null,
+                issuedAtTimestamp != null ? issuedAtTimestamp.longValue() : getIssuedAtTimestamp(claims),
+                claims.getExpiration().getTime());
+        verifiedTokenCache.put(token, verifiedToken);
+        return verifiedToken;
     }
 
-    private Claims getAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSecretKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    /**
+     * Issue time of tokens issued without the precise claim is rounded up to the end of its second, so that
+     * revocations made within the same second apply to them
+     */
+    private long getIssuedAtTimestamp(Claims claims) {
+        return claims.getIssuedAt() != null ? claims.getIssuedAt().getTime() + 999 : 0;
     }
 
-    private Key getSecretKey() {
-        var keyAsBytes = secret.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyAsBytes);
+    private Set<String> toRoles(Collection<?> roles) {
+        return roles.stream()
+                .map(String::valueOf)
+                .collect(Collectors.toUnmodifiableSet());
     }
 
 }
@@ -0,0 +1,149 @@
+package com.n3lx.minidrive.security.jwt;
+
+import com.n3lx.minidrive.entity.RevokedToken;
+import com.n3lx.minidrive.repository.RevokedTokenRepository;
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tokens revoked before their expiration, either one by one or all tokens of a user issued before a given time.
+ * <p>
+ * Revocations are stored in the database and mirrored in memory, so that checking a token does not query
+ * the database. A Bloom filter rules out almost every token that has not been revoked by a few memory reads,
+ * exact sets are consulted only when the filter reports a possible match. Revocations are reloaded periodically
+ * to pick up changes made by other instances and to drop revocations of tokens that have expired.
+ */
+@Component
+@Slf4j
+public class TokenRevocationList {
+
+    private static final String tokenIdPrefix = "token:";
+
+    private static final String usernamePrefix = "user:";
+
+    @Autowired
+    RevokedTokenRepository revokedTokenRepository;
+
+    @Value("${app.jwt.validityTimeInSeconds}")
+    private int validityTimeInSeconds;
+
+    /**
+     * Number of revocations the Bloom filter is sized for, more revocations increase the false positive rate
+     */
+    @Value("${app.jwt.revocation.expectedRevocations}")
+    private int expectedRevocations;
+
+    @Value("${app.jwt.revocation.falsePositiveProbability}")
+    private double falsePositiveProbability;
+
+    private volatile Revocations revocations;
+
+    @PostConstruct
+    private void init() {
+        refresh();
+    }
+
+    /**
+     * @return Whether the token has been revoked by its id or together with all tokens of its user
+     */
+    public boolean isRevoked(VerifiedToken verifiedToken) {
+        var currentRevocations = revocations;
+        var tokenId = verifiedToken.tokenId();
+        if (tokenId != null && currentRevocations.filter().mightContain(tokenIdPrefix + tokenId)
+                && currentRevocations.tokenIds().contains(tokenId)) {
+            return true;
+        }
+        if (currentRevocations.filter().mightContain(usernamePrefix + verifiedToken.username())) {
+            var issuedBeforeTimestamp = currentRevocations.issuedBeforeTimestamps().get(verifiedToken.username());
+            //Tokens issued at the same moment as the revocation are revoked as well
+            return issuedBeforeTimestamp != null && verifiedToken.issuedAtTimestamp() <= issuedBeforeTimestamp;
+        }
+        return false;
+    }
+
+    public void revokeToken(VerifiedToken verifiedToken) {
+        if (verifiedToken.tokenId() == null) {
+            //Tokens issued without an id can only be revoked together with other tokens of the user
+            revokeUserTokens(verifiedToken.username());
+            return;
+        }
+        revokedTokenRepository.save(RevokedToken.builder()
+                .tokenId(verifiedToken.tokenId())
+                .expiresAt(new Timestamp(verifiedToken.expirationTimestamp()))
+                .build());
+        synchronized (this) {
+            revocations.addTokenId(verifiedToken.tokenId());
+        }
+        log.debug("Token " + verifiedToken.tokenId() + " of user " + verifiedToken.username() + " has been revoked");
+    }
+
+    /**
+     * Revokes all tokens of a user issued until now
+     */
+    public void revokeUserTokens(String username) {
+        var currentTimestamp = System.currentTimeMillis();
+        revokedTokenRepository.save(RevokedToken.builder()
+                .username(username)
+                .issuedBefore(new Timestamp(currentTimestamp))
+                .expiresAt(new Timestamp(currentTimestamp + validityTimeInSeconds * 1000L))
+                .build());
+        synchronized (this) {
+            revocations.addIssuedBefore(username, currentTimestamp);
+        }
+        log.debug("Tokens of user " + username + " issued before " + currentTimestamp + " have been revoked");
+    }
+
+    /**
+     * Revocations made while reloading wait for it to finish, so that they are added to the reloaded revocations
+     */
+    @Scheduled(fixedRate = PropertiesUtil.tokenRevocationRefreshIntervalInSeconds * 1000)
+    public synchronized void refresh() {
+        var currentTimestamp = new Timestamp(System.currentTimeMillis());
+        var removedCount = revokedTokenRepository.deleteExpired(currentTimestamp);
+
+        var reloadedRevocations = new Revocations(new BloomFilter(expectedRevocations, falsePositiveProbability),
+                ConcurrentHashMap.newKeySet(), new ConcurrentHashMap<>());
+        var revokedTokens = revokedTokenRepository.findByExpiresAtAfter(currentTimestamp);
+        for (var revokedToken : revokedTokens) {
+            if (revokedToken.getTokenId() != null) {
+                reloadedRevocations.addTokenId(revokedToken.getTokenId());
+            } else {
+                reloadedRevocations.addIssuedBefore(revokedToken.getUsername(),
+                        revokedToken.getIssuedBefore().getTime());
+            }
+        }
+        revocations = reloadedRevocations;
+        log.trace("Reloaded " + revokedTokens.size() + " token revocations, removed " + removedCount + " expired");
+    }
+
+    /**
+     * @param issuedBeforeTimestamps Time per username before which all tokens of the user are revoked
+     */
+    private record Revocations(BloomFilter filter, Set<String> tokenIds, Map<String, Long> issuedBeforeTimestamps) {
+
+        /**
+         * Exact sets are updated before the filter, so that a match reported by the filter can always be confirmed
+         */
+        void addTokenId(String tokenId) {
+            tokenIds.add(tokenId);
+            filter.add(tokenIdPrefix + tokenId);
+        }
+
+        void addIssuedBefore(String username, long issuedBeforeTimestamp) {
+            issuedBeforeTimestamps.merge(username, issuedBeforeTimestamp, Math::max);
+            filter.add(usernamePrefix + username);
+        }
+
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.n3lx.minidrive.security.jwt;
+
+import java.util.Set;
+
+/**
+ * Claims of a token whose signature and expiration have been verified
+ *
+ * @param tokenId             Unique id of the token, null if the token has been issued without it
+ * @param username            Subject of the token
+ * @param userId              Id of the user, null if the token has been issued without it
+ * @param roles               Roles of the user at the time the token was issued, null if the token has been issued
+ *                            without them
+ * @param issuedAtTimestamp   Issue time in milliseconds since epoch, 0 if the token has been issued without it
+ * @param expirationTimestamp Expiration time in milliseconds since epoch
+ */
+public record VerifiedToken(String tokenId, String username, Long userId, Set<String> roles,
+                            long issuedAtTimestamp, long expirationTimestamp) {
+}
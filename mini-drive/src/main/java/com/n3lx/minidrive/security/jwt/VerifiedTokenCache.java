@@ -0,0 +1,72 @@
+package com.n3lx.minidrive.security.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of tokens whose signatures have already been verified, so that a token sent with every request
+ * of a client is verified only once. Tokens are keyed by their SHA-256 hash, tokens themselves are not kept.
+ * Entries expire together with their tokens.
+ */
+class VerifiedTokenCache {
+
+    private final Map<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+
+    VerifiedTokenCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return Verified token that has not expired yet or null if the token is not cached
+     */
+    VerifiedToken get(String token) {
+        if (maxSize <= 0) {
+            return null;
+        }
+        var tokenHash = hash(token);
+        var verifiedToken = verifiedTokens.get(tokenHash);
+        if (verifiedToken != null && verifiedToken.expirationTimestamp() <= System.currentTimeMillis()) {
+            verifiedTokens.remove(tokenHash, verifiedToken);
+            return null;
+        }
+        return verifiedToken;
+    }
+
+    void put(String token, VerifiedToken verifiedToken) {
+        if (maxSize <= 0) {
+            return;
+        }
+        if (verifiedTokens.size() >= maxSize) {
+            evict();
+        }
+        verifiedTokens.put(hash(token), verifiedToken);
+    }
+
+    /**
+     * Removes expired tokens, cache is cleared when all tokens are still valid, as they are going to be verified
+     * again on their next use anyway
+     */
+    private void evict() {
+        var currentTimestamp = System.currentTimeMillis();
+        verifiedTokens.values().removeIf(verifiedToken -> verifiedToken.expirationTimestamp() <= currentTimestamp);
+        if (verifiedTokens.size() >= maxSize) {
+            verifiedTokens.clear();
+        }
+    }
+
+    private String hash(String token) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,238 @@
+package com.n3lx.minidrive.service;
+
+import com.n3lx.minidrive.dto.ArchiveJobDTO;
+import com.n3lx.minidrive.service.archive.ArchiveCache;
+import com.n3lx.minidrive.service.archive.ArchiveProgressListener;
+import com.n3lx.minidrive.service.contract.ArchiveJobService;
+import com.n3lx.minidrive.service.contract.ArchivingService;
+import com.n3lx.minidrive.service.contract.FileStorageService;
+import com.n3lx.minidrive.service.exception.ArchiveJobNotFoundException;
+import com.n3lx.minidrive.service.exception.ArchiveJobNotReadyException;
+import com.n3lx.minidrive.service.exception.ArchiveJobRejectedException;
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Archives generated in the background, clients poll the job for progress and download the archive once it is ready.
+ * Jobs run on a dedicated bounded executor so that long archive builds do not occupy request handling threads.
+ * Archive of a completed job is retained in the archive cache until the job itself is removed.
+ */
+@Service
+@Slf4j
+public class ArchiveJobServiceImpl implements ArchiveJobService {
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    @Autowired
+    FileStorageService fileStorageService;
+
+    @Autowired
+    ArchivingService archivingService;
+
+    @Autowired
+    ArchiveCache archiveCache;
+
+    private final Map<String, ArchiveJob> jobs = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor jobExecutor;
+
+    @PostConstruct
+    private void init() {
+        var threadCount = Math.max(1, propertiesUtil.getArchiveJobThreadCount());
+        var threadNumber = new AtomicInteger();
+        jobExecutor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(propertiesUtil.getArchiveJobQueueCapacity()),
+                runnable -> {
+                    var thread = new Thread(runnable, "archive-job-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        log.info("Archive job executor started with " + threadCount + " threads");
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        jobExecutor.shutdownNow();
+    }
+
+    @Override
+    public ArchiveJobDTO submit(List<String> filenames, Long ownerId) {
+        var resourceList = new ArrayList<Resource>();
+        long totalBytes = 0;
+        for (var filename : filenames) {
+            var resource = fileStorageService.resolve(filename, ownerId);
+            try {
+                totalBytes += resource.contentLength();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            resourceList.add(resource);
+        }
+
+        var job = new ArchiveJob(UUID.randomUUID().toString(), ownerId, resourceList.size(), totalBytes);
+        jobs.put(job.id, job);
+        try {
+            jobExecutor.execute(() -> run(job, resourceList));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            log.debug("Archive job of user " + ownerId + " rejected, queue is full");
+            throw new ArchiveJobRejectedException(propertiesUtil.getArchiveJobRetryAfterInSeconds());
+        }
+
+        log.debug("Archive job " + job.id + " of user " + ownerId + " queued for " + resourceList.size()
+                + " files (" + totalBytes + " bytes)");
+        return mapToDTO(job);
+    }
+
+    @Override
+    public ArchiveJobDTO getJob(String jobId, Long ownerId) {
+        return mapToDTO(findJob(jobId, ownerId));
+    }
+
+    @Override
+    public Resource loadResult(String jobId, Long ownerId) {
+        var job = findJob(jobId, ownerId);
+        return switch (job.status) {
+            case COMPLETED -> job.result;
+            case FAILED -> throw new ArchiveJobNotReadyException("Archive job " + jobId + " has failed");
+            default -> throw new ArchiveJobNotReadyException("Archive job " + jobId + " is not completed yet");
+        };
+    }
+
+    @Override
+    @Scheduled(fixedRate = PropertiesUtil.archiveJobCleanupIntervalInSeconds * 1000)
+    public void cleanupJobs() {
+        var expirationTimestamp = System.currentTimeMillis()
+                - propertiesUtil.getArchiveJobRetentionInSeconds() * 1000L;
+        var removedJobs = 0;
+        for (var job : jobs.values()) {
+            if (job.finishTimestamp != 0 && job.finishTimestamp < expirationTimestamp && jobs.remove(job.id, job)) {
+                if (job.result != null) {
+                    archiveCache.release(job.result);
+                }
+                removedJobs++;
+            }
+        }
+        log.info("Archive job cleanup complete, removed job count: " + removedJobs);
+    }
+
+    private void run(ArchiveJob job, List<Resource> resourceList) {
+        job.startTimestamp = System.currentTimeMillis();
+        job.status = ArchiveJobStatus.RUNNING;
+        try {
+            var result = archivingService.archive(resourceList, job.ownerId, job);
+            archiveCache.retain(result);
+            job.result = result;
+            job.status = ArchiveJobStatus.COMPLETED;
+            log.debug("Archive job " + job.id + " completed in "
+                    + (System.currentTimeMillis() - job.startTimestamp) + " ms");
+        } catch (IOException | RuntimeException e) {
+            job.errorMessage = "Archive could not be generated";
+            job.status = ArchiveJobStatus.FAILED;
+            log.warn("Archive job " + job.id + " failed", e);
+        } finally {
+            job.finishTimestamp = System.currentTimeMillis();
+        }
+    }
+
+    private ArchiveJob findJob(String jobId, Long ownerId) {
+        var job = jobs.get(jobId);
+        if (job == null || !job.ownerId.equals(ownerId)) {
+            throw new ArchiveJobNotFoundException(jobId);
+        }
+        return job;
+    }
+
+    private ArchiveJobDTO mapToDTO(ArchiveJob job) {
+        return ArchiveJobDTO.builder()
+                .jobId(job.id)
+                .status(job.status.name())
+                .totalFiles(job.totalFiles)
+                .processedFiles(job.processedFiles.get())
+                .totalBytes(job.totalBytes)
+                .processedBytes(job.processedBytes.get())
+                .estimatedSecondsRemaining(job.estimateSecondsRemaining())
+                .errorMessage(job.errorMessage)
+                .build();
+    }
+
+    private enum ArchiveJobStatus {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private static class ArchiveJob implements ArchiveProgressListener {
+
+        private final String id;
+
+        private final Long ownerId;
+
+        private final int totalFiles;
+
+        private final long totalBytes;
+
+        private final AtomicInteger processedFiles = new AtomicInteger();
+
+        private final AtomicLong processedBytes = new AtomicLong();
+
+        private volatile ArchiveJobStatus status = ArchiveJobStatus.QUEUED;
+
+        private volatile Resource result;
+
+        private volatile String errorMessage;
+
+        private volatile long startTimestamp;
+
+        private volatile long finishTimestamp;
+
+        ArchiveJob(String id, Long ownerId, int totalFiles, long totalBytes) {
+            this.id = id;
+            this.ownerId = ownerId;
+            this.totalFiles = totalFiles;
+            this.totalBytes = totalBytes;
+        }
+
+        @Override
+        public void onBytesArchived(long byteCount) {
+            processedBytes.addAndGet(byteCount);
+        }
+
+        @Override
+        public void onFileArchived() {
+            processedFiles.incrementAndGet();
+        }
+
+        /**
+         * Extrapolates the throughput observed so far, estimate is not available until some bytes were processed
+         */
+        Long estimateSecondsRemaining() {
+            if (status == ArchiveJobStatus.COMPLETED) {
+                return 0L;
+            }
+            var bytes = processedBytes.get();
+            if (status != ArchiveJobStatus.RUNNING || bytes == 0) {
+                return null;
+            }
+            var elapsedMillis = System.currentTimeMillis() - startTimestamp;
+            var remainingBytes = Math.max(0, totalBytes - bytes);
+            return (long) Math.ceil(elapsedMillis * ((double) remainingBytes / bytes) / 1000);
+        }
+
+    }
+
+}
@@ -0,0 +1,358 @@
+package com.n3lx.minidrive.service;
+
+import com.n3lx.minidrive.dto.UploadSessionDTO;
+import com.n3lx.minidrive.service.contract.ChunkedUploadService;
+import com.n3lx.minidrive.service.contract.FileStorageService;
+import com.n3lx.minidrive.service.contract.QuotaService;
+import com.n3lx.minidrive.service.exception.IncompleteUploadException;
+import com.n3lx.minidrive.service.exception.InvalidUploadChunkException;
+import com.n3lx.minidrive.service.exception.UploadSessionNotFoundException;
+import com.n3lx.minidrive.utils.DirectBufferPool;
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resumable uploads, file contents are sent as a series of fixed size chunks which can be written concurrently
+ * and in any order. Chunks are written at their offsets into a pre-sized partial file that is moved into
+ * the owner's storage once all of them were received.
+ */
+@Service
+@Slf4j
+public class ChunkedUploadServiceImpl implements ChunkedUploadService {
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    @Autowired
+    FileStorageService fileStorageService;
+
+    @Autowired
+    DirectBufferPool directBufferPool;
+
+    @Autowired
+    QuotaService quotaService;
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        //Sessions live only in memory, partial files left behind by a previous run can not be resumed
+        var uploadDirectoryPath = generatePathToUploadDirectory();
+        if (!Files.isDirectory(uploadDirectoryPath)) {
+            return;
+        }
+        var removedFiles = 0;
+        try (var partialFiles = Files.newDirectoryStream(uploadDirectoryPath, "*.part")) {
+            for (var partialFile : partialFiles) {
+                Files.deleteIfExists(partialFile);
+                removedFiles++;
+            }
+        } catch (IOException e) {
+            log.warn("Could not remove partial files from " + uploadDirectoryPath, e);
+        }
+        log.info("Removed " + removedFiles + " partial files of upload sessions from a previous run");
+    }
+
+    @Override
+    public UploadSessionDTO createSession(String fileName, Long fileSize, Integer chunkSize, Long ownerId) {
+        if (!StringUtils.hasText(fileName)) {
+            throw new InvalidUploadChunkException("File name can not be empty");
+        }
+        if (fileSize == null || fileSize < 0) {
+            throw new InvalidUploadChunkException("File size has to be a non-negative number");
+        }
+        var maxChunkSize = propertiesUtil.getMaxChunkSizeInBytes();
+        var sessionChunkSize = chunkSize != null ? chunkSize : propertiesUtil.getDefaultChunkSizeInBytes();
+        if (sessionChunkSize <= 0 || sessionChunkSize > maxChunkSize) {
+            throw new InvalidUploadChunkException("Chunk size has to be between 1 and " + maxChunkSize + " bytes");
+        }
+        var chunkCount = (fileSize + sessionChunkSize - 1) / sessionChunkSize;
+        if (chunkCount > Integer.MAX_VALUE) {
+            throw new InvalidUploadChunkException("Chunk size is too small for a file of this size");
+        }
+        if (fileStorageService.exists(fileName, ownerId)) {
+            throw new RuntimeException(new FileAlreadyExistsException(fileName));
+        }
+        quotaService.checkQuota(ownerId, fileSize);
+
+        var session = new UploadSession(UUID.randomUUID().toString(), ownerId, fileName,
+                fileSize, sessionChunkSize, (int) chunkCount);
+        var partialFilePath = generatePartialFilePath(session.id);
+        try {
+            Files.createDirectories(generatePathToUploadDirectory());
+            try (var partialFile = new RandomAccessFile(partialFilePath.toFile(), "rw")) {
+                partialFile.setLength(fileSize);
+            }
+        } catch (IOException e) {
+            log.warn("Could not create partial file " + partialFilePath, e);
+            throw new RuntimeException(e);
+        }
+        sessions.put(session.id, session);
+
+        log.debug("Upload session " + session.id + " created for file " + fileName + " of user " + ownerId
+                + " (" + fileSize + " bytes in " + chunkCount + " chunks)");
+        return mapToDTO(session);
+    }
+
+    @Override
+    public UploadSessionDTO getSession(String sessionId, Long ownerId) {
+        return mapToDTO(findSession(sessionId, ownerId));
+    }
+
+    @Override
+    public void writeChunk(String sessionId, Integer chunkNumber, Long offset, InputStream inputStream, Long ownerId) {
+        var session = findSession(sessionId, ownerId);
+        if (chunkNumber == null || chunkNumber < 0 || chunkNumber >= session.chunkCount) {
+            throw new InvalidUploadChunkException("Chunk number has to be between 0 and " + (session.chunkCount - 1));
+        }
+        var chunkOffset = (long) chunkNumber * session.chunkSize;
+        if (offset != null && offset != chunkOffset) {
+            throw new InvalidUploadChunkException("Chunk " + chunkNumber + " starts at offset " + chunkOffset);
+        }
+        var chunkLength = Math.min(session.chunkSize, session.fileSize - chunkOffset);
+
+        session.beginWrite();
+        try (var fileChannel = FileChannel.open(generatePartialFilePath(sessionId), StandardOpenOption.WRITE)) {
+            var writtenBytes = writeAt(Channels.newChannel(inputStream), fileChannel, chunkOffset, chunkLength);
+            if (writtenBytes != chunkLength) {
+                throw new InvalidUploadChunkException("Chunk " + chunkNumber + " has to be exactly "
+                        + chunkLength + " bytes long");
+            }
+            session.markReceived(chunkNumber);
+        } catch (IOException e) {
+            log.debug("Could not write chunk " + chunkNumber + " of upload session " + sessionId, e);
+            throw new RuntimeException(e);
+        } finally {
+            session.endWrite();
+        }
+    }
+
+    @Override
+    public boolean commit(String sessionId, Long ownerId) {
+        var session = findSession(sessionId, ownerId);
+        session.closeIfComplete();
+        sessions.remove(sessionId);
+
+        try {
+            return fileStorageService.importFile(generatePartialFilePath(sessionId), session.fileName, ownerId);
+        } catch (RuntimeException e) {
+            //Keep received chunks so that the client can retry once the conflict is resolved
+            session.reopen();
+            sessions.put(sessionId, session);
+            throw e;
+        }
+    }
+
+    @Override
+    public void abort(String sessionId, Long ownerId) {
+        var session = findSession(sessionId, ownerId);
+        session.close();
+        sessions.remove(sessionId);
+        deletePartialFile(sessionId);
+        log.debug("Upload session " + sessionId + " has been aborted");
+    }
+
+    @Override
+    @Scheduled(fixedRate = PropertiesUtil.uploadSessionCleanupIntervalInSeconds * 1000)
+    public void cleanupSessions() {
+        var expirationTimestamp = System.currentTimeMillis() - PropertiesUtil.uploadSessionRetentionInSeconds * 1000L;
+        var removedSessions = 0;
+        for (var session : sessions.values()) {
+            if (session.closeIfInactiveSince(expirationTimestamp)) {
+                sessions.remove(session.id);
+                deletePartialFile(session.id);
+                removedSessions++;
+            }
+        }
+        log.info("Upload session cleanup complete, removed session count: " + removedSessions);
+    }
+
+    /**
+     * Writes up to length bytes at a given position, one byte past the chunk is read to detect oversized chunks
+     *
+     * @return Number of bytes written
+     */
+    private long writeAt(ReadableByteChannel source, FileChannel target, long position, long length)
+            throws IOException {
+        var buffer = directBufferPool.acquire();
+        try {
+            long writtenBytes = 0;
+            var isEndOfStream = false;
+            while (!isEndOfStream) {
+                buffer.limit((int) Math.min(buffer.capacity(), length - writtenBytes + 1));
+                while (buffer.hasRemaining()) {
+                    if (source.read(buffer) < 0) {
+                        isEndOfStream = true;
+                        break;
+                    }
+                }
+                buffer.flip();
+                if (writtenBytes + buffer.remaining() > length) {
+                    throw new InvalidUploadChunkException("Chunk exceeds expected length of " + length + " bytes");
+                }
+                while (buffer.hasRemaining()) {
+                    writtenBytes += target.write(buffer, position + writtenBytes);
+                }
+                buffer.clear();
+            }
+            return writtenBytes;
+        } finally {
+            directBufferPool.release(buffer);
+        }
+    }
+
+    private UploadSession findSession(String sessionId, Long ownerId) {
+        var session = sessions.get(sessionId);
+        if (session == null || !session.ownerId.equals(ownerId)) {
+            throw new UploadSessionNotFoundException(sessionId);
+        }
+        return session;
+    }
+
+    private void deletePartialFile(String sessionId) {
+        try {
+            Files.deleteIfExists(generatePartialFilePath(sessionId));
+        } catch (IOException e) {
+            log.debug("Could not remove partial file of upload session " + sessionId, e);
+        }
+    }
+
+    private UploadSessionDTO mapToDTO(UploadSession session) {
+        return UploadSessionDTO.builder()
+                .sessionId(session.id)
+                .fileName(session.fileName)
+                .fileSize(session.fileSize)
+                .chunkSize(session.chunkSize)
+                .chunkCount(session.chunkCount)
+                .missingChunks(session.getMissingChunks())
+                .build();
+    }
+
+    private Path generatePathToUploadDirectory() {
+        return Paths
+                .get(propertiesUtil.getRootDirAbsolutePath())
+                .normalize()
+                .resolve(propertiesUtil.getUploadDirName())
+                .toAbsolutePath();
+    }
+
+    private Path generatePartialFilePath(String sessionId) {
+        return generatePathToUploadDirectory().resolve(sessionId + ".part");
+    }
+
+    private static class UploadSession {
+
+        private final String id;
+
+        private final Long ownerId;
+
+        private final String fileName;
+
+        private final long fileSize;
+
+        private final int chunkSize;
+
+        private final int chunkCount;
+
+        private final BitSet receivedChunks;
+
+        private int activeWrites;
+
+        private boolean isClosed;
+
+        private long lastActivityTimestamp;
+
+        UploadSession(String id, Long ownerId, String fileName, long fileSize, int chunkSize, int chunkCount) {
+            this.id = id;
+            this.ownerId = ownerId;
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+            this.chunkSize = chunkSize;
+            this.chunkCount = chunkCount;
+            this.receivedChunks = new BitSet(chunkCount);
+            this.lastActivityTimestamp = System.currentTimeMillis();
+        }
+
+        synchronized void beginWrite() {
+            if (isClosed) {
+                throw new UploadSessionNotFoundException(id);
+            }
+            activeWrites++;
+            lastActivityTimestamp = System.currentTimeMillis();
+        }
+
+        synchronized void endWrite() {
+            activeWrites--;
+            lastActivityTimestamp = System.currentTimeMillis();
+        }
+
+        synchronized void markReceived(int chunkNumber) {
+            receivedChunks.set(chunkNumber);
+        }
+
+        synchronized List<Integer> getMissingChunks() {
+            var missingChunks = new ArrayList<Integer>();
+            for (var chunk = receivedChunks.nextClearBit(0); chunk < chunkCount;
+                 chunk = receivedChunks.nextClearBit(chunk + 1)) {
+                missingChunks.add(chunk);
+            }
+            return missingChunks;
+        }
+
+        synchronized void closeIfComplete() {
+            if (isClosed) {
+                throw new UploadSessionNotFoundException(id);
+            }
+            if (activeWrites > 0) {
+                throw new IncompleteUploadException("Chunks of upload session " + id + " are still being written");
+            }
+            var missingChunkCount = chunkCount - receivedChunks.cardinality();
+            if (missingChunkCount > 0) {
+                throw new IncompleteUploadException("Upload session " + id + " is missing "
+                        + missingChunkCount + " chunks");
+            }
+            isClosed = true;
+        }
+
+        synchronized boolean closeIfInactiveSince(long timestamp) {
+            if (isClosed || activeWrites > 0 || lastActivityTimestamp >= timestamp) {
+                return false;
+            }
+            isClosed = true;
+            return true;
+        }
+
+        synchronized void close() {
+            if (isClosed) {
+                throw new UploadSessionNotFoundException(id);
+            }
+            isClosed = true;
+        }
+
+        synchronized void reopen() {
+            isClosed = false;
+            lastActivityTimestamp = System.currentTimeMillis();
+        }
+
+    }
+
+}
@@ -0,0 +1,572 @@
+package com.n3lx.minidrive.service;
+
+import com.n3lx.minidrive.dto.ChunkDTO;
+import com.n3lx.minidrive.dto.ChunkManifestDTO;
+import com.n3lx.minidrive.dto.SyncSessionDTO;
+import com.n3lx.minidrive.service.contract.DeltaSyncService;
+import com.n3lx.minidrive.service.contract.FileStorageService;
+import com.n3lx.minidrive.service.contract.QuotaService;
+import com.n3lx.minidrive.service.exception.IncompleteUploadException;
+import com.n3lx.minidrive.service.exception.InvalidUploadChunkException;
+import com.n3lx.minidrive.service.exception.UploadSessionNotFoundException;
+import com.n3lx.minidrive.service.sync.ChunkManifestStore;
+import com.n3lx.minidrive.service.sync.ContentDefinedChunker;
+import com.n3lx.minidrive.utils.DirectBufferPool;
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Delta synchronization of file updates. Client splits the new version of a file in the same way as the server,
+ * compares its chunks with the manifest of the stored version and uploads only chunks that are not part of it.
+ * On commit the new version is assembled from uploaded chunks and chunks of the stored version and replaces it.
+ */
+@Service
+@Slf4j
+public class DeltaSyncServiceImpl implements DeltaSyncService {
+
+    private static final String sessionDirectoryExtension = ".sync";
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    @Autowired
+    FileStorageService fileStorageService;
+
+    @Autowired
+    QuotaService quotaService;
+
+    @Autowired
+    ChunkManifestStore chunkManifestStore;
+
+    @Autowired
+    DirectBufferPool directBufferPool;
+
+    private final Map<String, SyncSession> sessions = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        //Sessions live only in memory, chunks left behind by a previous run can not be used
+        var uploadDirectoryPath = generatePathToUploadDirectory();
+        if (!Files.isDirectory(uploadDirectoryPath)) {
+            return;
+        }
+        try (var sessionPaths = Files.newDirectoryStream(uploadDirectoryPath, "*" + sessionDirectoryExtension + "*")) {
+            for (var sessionPath : sessionPaths) {
+                FileSystemUtils.deleteRecursively(sessionPath);
+            }
+        } catch (IOException e) {
+            log.warn("Could not remove chunks of sync sessions from " + uploadDirectoryPath, e);
+        }
+    }
+
+    @Override
+    public ChunkManifestDTO getManifest(String fileName, Long ownerId) {
+        var manifest = readManifest(fileName, ownerId);
+        return ChunkManifestDTO.builder()
+                .fileName(fileName)
+                .checksum(manifest.checksum())
+                .algorithm(ContentDefinedChunker.algorithm)
+                .windowSize(ContentDefinedChunker.windowSize)
+                .minChunkSize(ContentDefinedChunker.minChunkSize)
+                .maxChunkSize(ContentDefinedChunker.maxChunkSize)
+                .boundaryMask(ContentDefinedChunker.boundaryMask)
+                .chunks(manifest.chunks().stream()
+                        .map(chunk -> ChunkDTO.builder()
+                                .checksum(chunk.checksum())
+                                .offset(chunk.offset())
+                                .length(chunk.length())
+                                .build())
+                        .toList())
+                .build();
+    }
+
+    @Override
+    public SyncSessionDTO createSession(String fileName, String baseFileName, List<ChunkDTO> chunks, Long ownerId) {
+        if (!StringUtils.hasText(fileName)) {
+            throw new InvalidUploadChunkException("File name can not be empty");
+        }
+        if (chunks == null) {
+            throw new InvalidUploadChunkException("List of chunks is required, it is empty for an empty file");
+        }
+        var targetChunks = new ArrayList<ContentDefinedChunker.Chunk>(chunks.size());
+        var chunkLengths = new HashMap<String, Integer>();
+        long fileSize = 0;
+        for (var chunk : chunks) {
+            var checksum = chunk.getChecksum() != null ? chunk.getChecksum().toLowerCase(Locale.ROOT) : "";
+            if (!checksum.matches("[0-9a-f]{64}")) {
+                throw new InvalidUploadChunkException("Chunk checksum has to be a SHA-256 hash "
+                        + "written as 64 hexadecimal digits");
+            }
+            var length = chunk.getLength();
+            if (length == null || length < 1 || length > ContentDefinedChunker.maxChunkSize) {
+                throw new InvalidUploadChunkException("Chunk length has to be between 1 and "
+                        + ContentDefinedChunker.maxChunkSize + " bytes");
+            }
+            if (!length.equals(chunkLengths.getOrDefault(checksum, length))) {
+                throw new InvalidUploadChunkException("Chunks with checksum " + checksum + " differ in length");
+            }
+            chunkLengths.put(checksum, length);
+            targetChunks.add(new ContentDefinedChunker.Chunk(checksum, fileSize, length));
+            fileSize += length;
+        }
+
+        var session = new SyncSession(UUID.randomUUID().toString(), ownerId, fileName, fileSize, targetChunks);
+        var baseName = baseFileName != null ? baseFileName : fileName;
+        if (fileStorageService.exists(baseName, ownerId)) {
+            session.baseFileName = baseName;
+            var baseFilePath = resolveFilePath(baseName, ownerId);
+            try {
+                session.baseFileSize = Files.size(baseFilePath);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            for (var chunk : readManifest(baseName, ownerId).chunks()) {
+                session.baseChunks.putIfAbsent(chunk.checksum(), chunk);
+            }
+        }
+        var currentSize = fileStorageService.exists(fileName, ownerId)
+                ? (fileName.equals(session.baseFileName) ? session.baseFileSize : sizeOf(fileName, ownerId))
+                : 0;
+        if (fileSize > currentSize) {
+            quotaService.checkQuota(ownerId, fileSize - currentSize);
+        }
+        for (var entry : chunkLengths.entrySet()) {
+            if (!session.baseChunks.containsKey(entry.getKey())) {
+                session.missingChunks.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        try {
+            Files.createDirectories(generateSessionDirectoryPath(session.id));
+        } catch (IOException e) {
+            log.warn("Could not create directory of sync session " + session.id, e);
+            throw new RuntimeException(e);
+        }
+        sessions.put(session.id, session);
+
+        log.debug("Sync session " + session.id + " created for file " + fileName + " of user " + ownerId
+                + " (" + targetChunks.size() + " chunks, " + session.missingChunks.size() + " missing)");
+        return mapToDTO(session);
+    }
+
+    @Override
+    public SyncSessionDTO getSession(String sessionId, Long ownerId) {
+        return mapToDTO(findSession(sessionId, ownerId));
+    }
+
+    @Override
+    public void writeChunk(String sessionId, String checksum, InputStream inputStream, Long ownerId) {
+        var session = findSession(sessionId, ownerId);
+        var normalizedChecksum = checksum.toLowerCase(Locale.ROOT);
+        var length = session.getExpectedLength(normalizedChecksum);
+        if (length == null) {
+            throw new InvalidUploadChunkException("Chunk " + checksum + " is not expected by sync session "
+                    + sessionId);
+        }
+
+        var sessionDirectoryPath = generateSessionDirectoryPath(sessionId);
+        var temporaryChunkPath = sessionDirectoryPath.resolve(normalizedChecksum + "." + UUID.randomUUID() + ".tmp");
+        session.beginWrite();
+        try {
+            var digest = ContentDefinedChunker.createDigest();
+            try (var fileChannel = FileChannel.open(temporaryChunkPath, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                var writtenBytes = writeChunk(Channels.newChannel(inputStream), fileChannel, length, digest);
+                if (writtenBytes != length) {
+                    throw new InvalidUploadChunkException("Chunk " + normalizedChecksum + " has to be exactly "
+                            + length + " bytes long");
+                }
+            }
+            if (!normalizedChecksum.equals(HexFormat.of().formatHex(digest.digest()))) {
+                throw new InvalidUploadChunkException("Contents of chunk " + normalizedChecksum
+                        + " do not match its checksum");
+            }
+            Files.move(temporaryChunkPath, sessionDirectoryPath.resolve(normalizedChecksum),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            session.markReceived(normalizedChecksum);
+        } catch (IOException e) {
+            log.debug("Could not write chunk " + normalizedChecksum + " of sync session " + sessionId, e);
+            throw new RuntimeException(e);
+        } finally {
+            deleteQuietly(temporaryChunkPath);
+            session.endWrite();
+        }
+    }
+
+    @Override
+    public boolean commit(String sessionId, Long ownerId) {
+        var session = findSession(sessionId, ownerId);
+        session.closeIfComplete();
+        sessions.remove(sessionId);
+
+        var partialFilePath = generatePathToUploadDirectory().resolve(sessionId + sessionDirectoryExtension + ".part");
+        String checksum;
+        try {
+            checksum = assemble(session, partialFilePath);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(partialFilePath);
+            if (e instanceof IncompleteUploadException) {
+                //Stored version has changed, chunks that were not uploaded can no longer be found
+                FileSystemUtils.deleteRecursively(generateSessionDirectoryPath(sessionId).toFile());
+                throw (IncompleteUploadException) e;
+            }
+            session.reopen();
+            sessions.put(sessionId, session);
+            log.debug("Could not assemble file of sync session " + sessionId, e);
+            throw e instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e);
+        }
+
+        try {
+            fileStorageService.replaceFile(partialFilePath, session.fileName, checksum, ownerId);
+        } catch (RuntimeException e) {
+            //Keep received chunks so that the client can retry once the conflict is resolved
+            deleteQuietly(partialFilePath);
+            session.reopen();
+            sessions.put(sessionId, session);
+            throw e;
+        }
+        FileSystemUtils.deleteRecursively(generateSessionDirectoryPath(sessionId).toFile());
+        log.debug("Sync session " + sessionId + " committed, " + session.uploadedBytes() + " of "
+                + session.fileSize + " bytes were uploaded");
+        return true;
+    }
+
+    @Override
+    public void abort(String sessionId, Long ownerId) {
+        var session = findSession(sessionId, ownerId);
+        session.close();
+        sessions.remove(sessionId);
+        FileSystemUtils.deleteRecursively(generateSessionDirectoryPath(sessionId).toFile());
+        log.debug("Sync session " + sessionId + " has been aborted");
+    }
+
+    @Override
+    @Scheduled(fixedRate = PropertiesUtil.uploadSessionCleanupIntervalInSeconds * 1000)
+    public void cleanupSessions() {
+        var expirationTimestamp = System.currentTimeMillis() - PropertiesUtil.uploadSessionRetentionInSeconds * 1000L;
+        var removedSessions = 0;
+        for (var session : sessions.values()) {
+            if (session.closeIfInactiveSince(expirationTimestamp)) {
+                sessions.remove(session.id);
+                FileSystemUtils.deleteRecursively(generateSessionDirectoryPath(session.id).toFile());
+                removedSessions++;
+            }
+        }
+        log.info("Sync session cleanup complete, removed session count: " + removedSessions);
+    }
+
+    /**
+     * Writes chunks of the new version in order, chunks taken from the stored version are verified
+     * against their checksums
+     *
+     * @return SHA-256 checksum of the assembled file
+     */
+    private String assemble(SyncSession session, Path partialFilePath) throws IOException {
+        var sessionDirectoryPath = generateSessionDirectoryPath(session.id);
+        var fileDigest = ContentDefinedChunker.createDigest();
+        var buffer = directBufferPool.acquire();
+        try (var partialFile = FileChannel.open(partialFilePath, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+             var baseFile = openBaseFile(session)) {
+            for (var chunk : session.targetChunks) {
+                var uploadedChunkPath = sessionDirectoryPath.resolve(chunk.checksum());
+                if (session.isUploaded(chunk.checksum())) {
+                    try (var chunkFile = FileChannel.open(uploadedChunkPath, StandardOpenOption.READ)) {
+                        copy(chunkFile, 0, chunk.length(), partialFile, buffer, fileDigest, null);
+                    }
+                } else {
+                    var baseChunk = session.baseChunks.get(chunk.checksum());
+                    var chunkDigest = ContentDefinedChunker.createDigest();
+                    copy(baseFile, baseChunk.offset(), chunk.length(), partialFile, buffer, fileDigest, chunkDigest);
+                    if (!chunk.checksum().equals(HexFormat.of().formatHex(chunkDigest.digest()))) {
+                        throw new IncompleteUploadException("File " + session.baseFileName
+                                + " has changed since sync session " + session.id + " was created");
+                    }
+                }
+            }
+        } finally {
+            directBufferPool.release(buffer);
+        }
+        return HexFormat.of().formatHex(fileDigest.digest());
+    }
+
+    /**
+     * @return Channel of the stored version or null if no chunks are taken from it
+     */
+    private FileChannel openBaseFile(SyncSession session) throws IOException {
+        if (session.baseFileName == null || session.missingChunks.size() == session.uniqueChunkCount()) {
+            return null;
+        }
+        //Contents of every reused chunk are verified while copying, size only rules out obvious changes early
+        if (fileStorageService.exists(session.baseFileName, session.ownerId)) {
+            var baseFile = FileChannel.open(resolveFilePath(session.baseFileName, session.ownerId),
+                    StandardOpenOption.READ);
+            if (baseFile.size() == session.baseFileSize) {
+                return baseFile;
+            }
+            baseFile.close();
+        }
+        throw new IncompleteUploadException("File " + session.baseFileName + " has changed since sync session "
+                + session.id + " was created");
+    }
+
+    private void copy(FileChannel source, long position, int length, FileChannel target, ByteBuffer buffer,
+                      MessageDigest fileDigest, MessageDigest chunkDigest) throws IOException {
+        long copiedBytes = 0;
+        while (copiedBytes < length) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), length - copiedBytes));
+            var readBytes = source.read(buffer, position + copiedBytes);
+            if (readBytes < 0) {
+                throw new IncompleteUploadException("Chunk source ended before its expected length");
+            }
+            buffer.flip();
+            fileDigest.update(buffer.duplicate());
+            if (chunkDigest != null) {
+                chunkDigest.update(buffer.duplicate());
+            }
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            copiedBytes += readBytes;
+        }
+    }
+
+    /**
+     * Writes up to length bytes, one byte past the chunk is read to detect oversized chunks
+     *
+     * @return Number of bytes written
+     */
+    private long writeChunk(ReadableByteChannel source, FileChannel target, int length, MessageDigest digest)
+            throws IOException {
+        var buffer = directBufferPool.acquire();
+        try {
+            long writtenBytes = 0;
+            var isEndOfStream = false;
+            while (!isEndOfStream) {
+                buffer.limit((int) Math.min(buffer.capacity(), length - writtenBytes + 1));
+                while (buffer.hasRemaining()) {
+                    if (source.read(buffer) < 0) {
+                        isEndOfStream = true;
+                        break;
+                    }
+                }
+                buffer.flip();
+                if (writtenBytes + buffer.remaining() > length) {
+                    throw new InvalidUploadChunkException("Chunk exceeds expected length of " + length + " bytes");
+                }
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    writtenBytes += target.write(buffer);
+                }
+                buffer.clear();
+            }
+            return writtenBytes;
+        } finally {
+            directBufferPool.release(buffer);
+        }
+    }
+
+    private ChunkManifestStore.ChunkManifest readManifest(String fileName, Long ownerId) {
+        try {
+            return chunkManifestStore.getManifest(resolveFilePath(fileName, ownerId));
+        } catch (IOException e) {
+            log.debug("Could not read chunks of file " + fileName, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private long sizeOf(String fileName, Long ownerId) {
+        try {
+            return Files.size(resolveFilePath(fileName, ownerId));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Path resolveFilePath(String fileName, Long ownerId) {
+        try {
+            return fileStorageService.resolve(fileName, ownerId).getFile().toPath();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private SyncSession findSession(String sessionId, Long ownerId) {
+        var session = sessions.get(sessionId);
+        if (session == null || !session.ownerId.equals(ownerId)) {
+            throw new UploadSessionNotFoundException(sessionId);
+        }
+        return session;
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.debug("Could not remove " + path, e);
+        }
+    }
+
+    private SyncSessionDTO mapToDTO(SyncSession session) {
+        return SyncSessionDTO.builder()
+                .sessionId(session.id)
+                .fileName(session.fileName)
+                .fileSize(session.fileSize)
+                .chunkCount(session.targetChunks.size())
+                .missingChunks(session.getMissingChunks())
+                .build();
+    }
+
+    private Path generatePathToUploadDirectory() {
+        return Paths
+                .get(propertiesUtil.getRootDirAbsolutePath())
+                .normalize()
+                .resolve(propertiesUtil.getUploadDirName())
+                .toAbsolutePath();
+    }
+
+    private Path generateSessionDirectoryPath(String sessionId) {
+        return generatePathToUploadDirectory().resolve(sessionId + sessionDirectoryExtension);
+    }
+
+    private static class SyncSession {
+
+        private final String id;
+
+        private final Long ownerId;
+
+        private final String fileName;
+
+        private final long fileSize;
+
+        private final List<ContentDefinedChunker.Chunk> targetChunks;
+
+        private final Map<String, ContentDefinedChunker.Chunk> baseChunks = new HashMap<>();
+
+        /**
+         * Lengths of chunks that have to be uploaded, keyed by their checksums
+         */
+        private final Map<String, Integer> missingChunks = new HashMap<>();
+
+        private final Set<String> receivedChunks = new HashSet<>();
+
+        private String baseFileName;
+
+        private long baseFileSize;
+
+        private int activeWrites;
+
+        private boolean isClosed;
+
+        private long lastActivityTimestamp;
+
+        SyncSession(String id, Long ownerId, String fileName, long fileSize,
+                    List<ContentDefinedChunker.Chunk> targetChunks) {
+            this.id = id;
+            this.ownerId = ownerId;
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+            this.targetChunks = targetChunks;
+            this.lastActivityTimestamp = System.currentTimeMillis();
+        }
+
+        synchronized Integer getExpectedLength(String checksum) {
+            return missingChunks.get(checksum);
+        }
+
+        synchronized boolean isUploaded(String checksum) {
+            return missingChunks.containsKey(checksum);
+        }
+
+        synchronized int uniqueChunkCount() {
+            return missingChunks.size() + (int) targetChunks.stream()
+                    .map(ContentDefinedChunker.Chunk::checksum)
+                    .filter(checksum -> !missingChunks.containsKey(checksum))
+                    .distinct()
+                    .count();
+        }
+
+        synchronized long uploadedBytes() {
+            return missingChunks.values().stream().mapToLong(Integer::longValue).sum();
+        }
+
+        synchronized void beginWrite() {
+            if (isClosed) {
+                throw new UploadSessionNotFoundException(id);
+            }
+            activeWrites++;
+            lastActivityTimestamp = System.currentTimeMillis();
+        }
+
+        synchronized void endWrite() {
+            activeWrites--;
+            lastActivityTimestamp = System.currentTimeMillis();
+        }
+
+        synchronized void markReceived(String checksum) {
+            receivedChunks.add(checksum);
+        }
+
+        synchronized List<String> getMissingChunks() {
+            return missingChunks.keySet().stream()
+                    .filter(checksum -> !receivedChunks.contains(checksum))
+                    .sorted()
+                    .toList();
+        }
+
+        synchronized void closeIfComplete() {
+            if (isClosed) {
+                throw new UploadSessionNotFoundException(id);
+            }
+            if (activeWrites > 0) {
+                throw new IncompleteUploadException("Chunks of sync session " + id + " are still being written");
+            }
+            var missingChunkCount = missingChunks.size() - receivedChunks.size();
+            if (missingChunkCount > 0) {
+                throw new IncompleteUploadException("Sync session " + id + " is missing "
+                        + missingChunkCount + " chunks");
+            }
+            isClosed = true;
+        }
+
+        synchronized boolean closeIfInactiveSince(long timestamp) {
+            if (isClosed || activeWrites > 0 || lastActivityTimestamp >= timestamp) {
+                return false;
+            }
+            isClosed = true;
+            return true;
+        }
+
+        synchronized void close() {
+            if (isClosed) {
+                throw new UploadSessionNotFoundException(id);
+            }
+            isClosed = true;
+        }
+
+        synchronized void reopen() {
+            isClosed = false;
+            lastActivityTimestamp = System.currentTimeMillis();
+        }
+
+    }
+
+}
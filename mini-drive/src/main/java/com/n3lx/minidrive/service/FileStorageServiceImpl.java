@@ -1,24 +1,48 @@
 package com.n3lx.minidrive.service;
 
+import com.n3lx.minidrive.dto.FileMetadataDTO;
 import com.n3lx.minidrive.service.contract.ArchivingService;
+import com.n3lx.minidrive.service.contract.FileIndex;
 import com.n3lx.minidrive.service.contract.FileStorageService;
+import com.n3lx.minidrive.service.contract.QuotaService;
+import com.n3lx.minidrive.service.exception.InvalidInstantUploadException;
+import com.n3lx.minidrive.service.exception.InvalidListingParameterException;
+import com.n3lx.minidrive.service.exception.QuotaExceededException;
+import com.n3lx.minidrive.service.index.ChecksumAttributes;
+import com.n3lx.minidrive.service.index.FileQuery;
+import com.n3lx.minidrive.service.index.IndexedFile;
+import com.n3lx.minidrive.service.storage.BlobStore;
+import com.n3lx.minidrive.service.storage.FileCommitter;
+import com.n3lx.minidrive.service.storage.FileContentCache;
+import com.n3lx.minidrive.service.storage.StorageLayout;
+import com.n3lx.minidrive.utils.DirectBufferPool;
 import com.n3lx.minidrive.utils.PropertiesUtil;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.awt.print.Pageable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
@@ -31,6 +55,27 @@ public class FileStorageServiceImpl implements FileStorageService {
     @Autowired
     ArchivingService archivingService;
 
+    @Autowired
+    DirectBufferPool directBufferPool;
+
+    @Autowired
+    FileIndex fileIndex;
+
+    @Autowired
+    QuotaService quotaService;
+
+    @Autowired
+    StorageLayout storageLayout;
+
+    @Autowired
+    BlobStore blobStore;
+
+    @Autowired
+    FileCommitter fileCommitter;
+
+    @Autowired
+    FileContentCache fileContentCache;
+
     @PostConstruct
     private void init() {
         var messageBuilder = new StringBuilder();
@@ -79,30 +124,53 @@ public class FileStorageServiceImpl implements FileStorageService {
 
     @Override
     public boolean store(MultipartFile file, Long ownerId) {
+        try (InputStream inputStream = file.getInputStream()) {
+            return store(inputStream, file.getOriginalFilename(), ownerId);
+        } catch (IOException e) {
+            log.debug("Could not open uploaded file " + file.getOriginalFilename(), e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public boolean store(InputStream inputStream, String filename, Long ownerId) {
         var logMessageBuilder = new StringBuilder();
         logMessageBuilder
                 .append("File upload attempt:").append("\n")
-                .append("Original file name: ").append(file.getOriginalFilename()).append("\n")
-                .append("File size (in bytes): ").append(file.getSize()).append("\n")
+                .append("Original file name: ").append(filename).append("\n")
                 .append("Owner: ").append(ownerId).append("\n");
 
-        var userDirectoryPath = generatePathToUserDirectory(ownerId);
-        var filePath = generateFilePath(file.getOriginalFilename(), ownerId);
+        var filePath = storageLayout.getTargetPath(ownerId, filename);
         logMessageBuilder
                 .append("Calculated path: ").append(filePath).append("\n");
 
-        try (InputStream inputStream = file.getInputStream()) {
-            if (validateFilePath(filePath, ownerId)) {
-                if (!Files.exists(userDirectoryPath)) {
-                    Files.createDirectory(userDirectoryPath);
-                }
-                if (Files.exists(filePath)) {
-                    throw new FileAlreadyExistsException(filePath.toString());
+        try {
+            if (validateFilename(filename, ownerId)) {
+                ensureDoesNotExist(filename, ownerId);
+                //File is written under a temporary name, an interrupted upload never leaves a truncated file
+                var temporaryFilePath = generateTemporaryFilePath();
+                try {
+                    var digest = createDigest();
+                    var writtenBytes = writeFile(inputStream, temporaryFilePath, digest);
+                    reserveQuotaOrDelete(ownerId, writtenBytes, temporaryFilePath);
+                    try {
+                        var checksum = HexFormat.of().formatHex(digest.digest());
+                        ChecksumAttributes.write(temporaryFilePath, checksum);
+                        fileCommitter.commit(temporaryFilePath, filePath, false);
+                        fileContentCache.invalidate(ownerId, filename);
+                        blobStore.deduplicate(filePath, checksum);
+                        refreshIndexOrDelete(ownerId, filename, filePath);
+                        quotaService.recordUsage(ownerId, writtenBytes);
+                    } finally {
+                        quotaService.releaseQuota(ownerId, writtenBytes);
+                    }
+                    logMessageBuilder
+                            .append("File size (in bytes): ").append(writtenBytes).append("\n");
+                } finally {
+                    Files.deleteIfExists(temporaryFilePath);
                 }
-
-                Files.copy(inputStream, filePath, StandardCopyOption.REPLACE_EXISTING);
             }
-        } catch (IllegalArgumentException e) {
+        } catch (IllegalArgumentException | QuotaExceededException e) {
             logMessageBuilder
                     .append("Upload failed");
             log.debug(logMessageBuilder.toString(), e);
@@ -120,9 +188,137 @@ public class FileStorageServiceImpl implements FileStorageService {
         return true;
     }
 
+    @Override
+    public boolean storeExisting(String filename, String checksum, Long size, Long ownerId) {
+        if (checksum == null || !checksum.matches("[0-9a-fA-F]{64}")) {
+            throw new InvalidInstantUploadException("Checksum has to be a SHA-256 hash written as 64 hexadecimal digits");
+        }
+        if (size == null || size < 0) {
+            throw new InvalidInstantUploadException("File size has to be a non-negative number");
+        }
+        var normalizedChecksum = checksum.toLowerCase(Locale.ROOT);
+
+        var filePath = storageLayout.getTargetPath(ownerId, filename);
+        try {
+            if (validateFilename(filename, ownerId)) {
+                ensureDoesNotExist(filename, ownerId);
+                quotaService.reserveQuota(ownerId, size);
+                try {
+                    Files.createDirectories(filePath.getParent());
+                    if (!storeExistingContents(normalizedChecksum, size, filePath, ownerId)) {
+                        log.debug("Contents of file " + filename
+                                + " are not stored yet, instant upload not possible");
+                        return false;
+                    }
+                    fileContentCache.invalidate(ownerId, filename);
+                    refreshIndexOrDelete(ownerId, filename, filePath);
+                    quotaService.recordUsage(ownerId, size);
+                } finally {
+                    quotaService.releaseQuota(ownerId, size);
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Could not store file " + filePath + " from existing contents", e);
+            throw new RuntimeException(e);
+        }
+        log.debug("File " + filePath + " has been stored from existing contents " + normalizedChecksum);
+        return true;
+    }
+
+    @Override
+    public boolean importFile(Path sourceFile, String filename, Long ownerId) {
+        var filePath = storageLayout.getTargetPath(ownerId, filename);
+        try {
+            if (validateFilename(filename, ownerId)) {
+                ensureDoesNotExist(filename, ownerId);
+                var fileSize = Files.size(sourceFile);
+                quotaService.reserveQuota(ownerId, fileSize);
+                try {
+                    var checksum = blobStore.isEnabled() ? calculateChecksum(sourceFile) : null;
+                    if (checksum != null) {
+                        ChecksumAttributes.write(sourceFile, checksum);
+                    }
+                    fileCommitter.commit(sourceFile, filePath, false);
+                    fileContentCache.invalidate(ownerId, filename);
+                    try {
+                        fileIndex.refresh(ownerId, filename);
+                    } catch (RuntimeException e) {
+                        //Source file is restored so that the import can be retried
+                        Files.move(filePath, sourceFile);
+                        throw e;
+                    }
+                    //Deduplicated only once the import can no longer be reverted, as source files are written in place
+                    if (blobStore.deduplicate(filePath, checksum)) {
+                        fileIndex.refresh(ownerId, filename);
+                    }
+                    quotaService.recordUsage(ownerId, fileSize);
+                } finally {
+                    quotaService.releaseQuota(ownerId, fileSize);
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Could not move file " + sourceFile + " to " + filePath, e);
+            throw new RuntimeException(e);
+        }
+        log.debug("File " + filePath + " has been imported from " + sourceFile);
+        return true;
+    }
+
+    @Override
+    public boolean replaceFile(Path sourceFile, String filename, String checksum, Long ownerId) {
+        var filePath = storageLayout.resolve(ownerId, filename);
+        try {
+            if (validateFilename(filename, ownerId)) {
+                quotaService.loadUsage(ownerId);
+                var fileSize = Files.size(sourceFile);
+                var previousFileSize = Files.exists(filePath) ? Files.size(filePath) : 0;
+                var reservedBytes = Math.max(fileSize - previousFileSize, 0);
+                quotaService.reserveQuota(ownerId, reservedBytes);
+                try {
+                    ChecksumAttributes.write(sourceFile, checksum);
+                    //Readers keep the previous version open, a new file never replaces contents in place
+                    fileCommitter.commit(sourceFile, filePath, true);
+                    fileContentCache.invalidate(ownerId, filename);
+                    fileIndex.refresh(ownerId, filename);
+                    quotaService.recordUsage(ownerId, fileSize - previousFileSize);
+                } finally {
+                    quotaService.releaseQuota(ownerId, reservedBytes);
+                }
+                if (blobStore.deduplicate(filePath, checksum)) {
+                    fileIndex.refresh(ownerId, filename);
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Could not replace file " + filePath + " with " + sourceFile, e);
+            throw new RuntimeException(e);
+        }
+        log.debug("File " + filePath + " has been replaced with " + sourceFile);
+        return true;
+    }
+
+    @Override
+    public boolean exists(String filename, Long ownerId) {
+        return validateFilename(filename, ownerId) && storageLayout.exists(ownerId, filename);
+    }
+
     @Override
     public Resource load(String filename, Long ownerId) {
-        var filePath = generateFilePath(filename, ownerId);
+        var cachedResource = fileContentCache.get(ownerId, filename);
+        if (cachedResource != null) {
+            return cachedResource;
+        }
+        var resource = resolve(filename, ownerId);
+        try {
+            cachedResource = fileContentCache.put(ownerId, filename, resource.getFile().toPath());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return cachedResource != null ? cachedResource : resource;
+    }
+
+    @Override
+    public Resource resolve(String filename, Long ownerId) {
+        var filePath = storageLayout.resolve(ownerId, filename);
         try {
             var resource = new UrlResource(filePath.toUri());
             if (resource.exists()) {
@@ -140,24 +336,28 @@ public class FileStorageServiceImpl implements FileStorageService {
     public Resource loadMultiple(List<String> fileNames, Long ownerId) {
         var resourceList = new ArrayList<Resource>();
         for (var fileName : fileNames) {
-            resourceList.add(load(fileName, ownerId));
+            resourceList.add(resolve(fileName, ownerId));
         }
         return archivingService.archive(resourceList, ownerId);
     }
 
     @Override
-    public List<String> listAllFiles(Long ownerId) {
-        var userDirectoryPath = generatePathToUserDirectory(ownerId);
-        try (var stream = Files.list(userDirectoryPath)) {
-            return stream
-                    .map(Path::getFileName)
-                    .map(Path::toString)
-                    .collect(Collectors.toList());
-        } catch (NotDirectoryException | NoSuchFileException e) {
-            return List.of();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    public StreamingResponseBody loadMultipleAsStream(List<String> fileNames, Long ownerId) {
+        var resourceList = new ArrayList<Resource>();
+        for (var fileName : fileNames) {
+            resourceList.add(resolve(fileName, ownerId));
         }
+        return outputStream -> archivingService.archive(resourceList, outputStream);
+    }
+
+    /**
+     * Files are listed from the index sorted by name, storage directory is not read
+     */
+    @Override
+    public List<String> listAllFiles(Long ownerId) {
+        return fileIndex.listFiles(ownerId).stream()
+                .map(IndexedFile::name)
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -172,46 +372,249 @@ public class FileStorageServiceImpl implements FileStorageService {
         }
     }
 
+    @Override
+    public List<String> listFilesAfter(Long ownerId, String after, Integer limit) {
+        var pageSize = Math.min(limit != null ? limit : PropertiesUtil.defaultListingLimit,
+                PropertiesUtil.maxListingLimit);
+        if (pageSize < 1) {
+            return List.of();
+        }
+        return fileIndex.listFilesAfter(ownerId, after, pageSize).stream()
+                .map(IndexedFile::name)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<FileMetadataDTO> listFileDetails(Long ownerId, String sortBy, String order, String prefix,
+                                                 List<String> extensions, Integer pageNumber, Integer pageSize) {
+        var sortField = switch (sortBy != null ? sortBy : "name") {
+            case "name" -> FileQuery.SortField.NAME;
+            case "size" -> FileQuery.SortField.SIZE;
+            case "date" -> FileQuery.SortField.DATE;
+            default -> throw new InvalidListingParameterException("Files can be sorted by name, size or date");
+        };
+        if (order != null && !"asc".equals(order) && !"desc".equals(order)) {
+            throw new InvalidListingParameterException("Sort order has to be either asc or desc");
+        }
+        var extensionSet = extensions == null ? Set.<String>of() : extensions.stream()
+                .map(extension -> extension.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+
+        var query = new FileQuery(prefix, extensionSet, sortField, "desc".equals(order), pageNumber, pageSize);
+        return fileIndex.search(ownerId, query).stream()
+                .map(this::mapToMetadataDTO)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public String getListingVersion(Long ownerId) {
+        return fileIndex.getVersion(ownerId);
+    }
+
     @Override
     public boolean delete(String filename, Long ownerId) {
-        var filePath = generateFilePath(filename, ownerId);
+        var filePath = storageLayout.resolve(ownerId, filename);
         try {
+            quotaService.loadUsage(ownerId);
+            var fileSize = Files.size(filePath);
             Files.delete(filePath);
+            quotaService.recordUsage(ownerId, -fileSize);
         } catch (IOException e) {
             log.warn("Could not delete file from path: " + filePath);
             throw new RuntimeException(e);
+        } finally {
+            fileContentCache.invalidate(ownerId, filename);
+            fileIndex.refresh(ownerId, filename);
         }
         return true;
     }
 
     @Override
     public boolean rename(String currentFilename, String newFileName, Long ownerId) {
-        var currentFilePath = generateFilePath(currentFilename, ownerId);
-        var newFilePath = generateFilePath(newFileName, ownerId);
+        var currentFilePath = storageLayout.resolve(ownerId, currentFilename);
+        var newFilePath = storageLayout.getTargetPath(ownerId, newFileName);
         try {
+            ensureDoesNotExist(newFileName, ownerId);
+            Files.createDirectories(newFilePath.getParent());
             Files.move(currentFilePath, newFilePath);
         } catch (IOException e) {
             log.warn("Could not rename file from path " + currentFilePath + " to " + newFilePath);
             throw new RuntimeException(e);
+        } finally {
+            fileContentCache.invalidate(ownerId, currentFilename);
+            fileContentCache.invalidate(ownerId, newFileName);
+            fileIndex.refresh(ownerId, currentFilename);
+            fileIndex.refresh(ownerId, newFileName);
         }
         return true;
     }
 
-    private Path generatePathToUserDirectory(Long ownerId) {
-        return Paths
+    /**
+     * Writes the stream into a newly created file through a pooled direct buffer,
+     * partially written file is removed if the transfer fails
+     *
+     * @param digest Digest updated with written contents
+     * @return Number of bytes written
+     */
+    private long writeFile(InputStream inputStream, Path filePath, MessageDigest digest) throws IOException {
+        var fileChannel = FileChannel.open(filePath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try (fileChannel) {
+            return transfer(Channels.newChannel(inputStream), fileChannel, digest);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(filePath);
+            throw e;
+        }
+    }
+
+    private long transfer(ReadableByteChannel source, WritableByteChannel target, MessageDigest digest)
+            throws IOException {
+        var buffer = directBufferPool.acquire();
+        try {
+            long transferredBytes = 0;
+            var isEndOfStream = false;
+            while (!isEndOfStream) {
+                //Fill the whole buffer before writing so that the disk receives large sequential writes
+                while (buffer.hasRemaining()) {
+                    if (source.read(buffer) < 0) {
+                        isEndOfStream = true;
+                        break;
+                    }
+                }
+                buffer.flip();
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    transferredBytes += target.write(buffer);
+                }
+                buffer.clear();
+            }
+            return transferredBytes;
+        } finally {
+            directBufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Files of the owner are linked when possible and copied otherwise, contents of other users are only used
+     * through the blob store. Checksum of the source file is verified, as the index might not have noticed
+     * a modification made outside the application
+     *
+     * @return Whether the file has been created
+     */
+    private boolean storeExistingContents(String checksum, long size, Path filePath, Long ownerId)
+            throws IOException {
+        var existingFile = fileIndex.findByChecksum(ownerId, checksum);
+        if (existingFile != null && existingFile.size() == size) {
+            var sourcePath = storageLayout.resolve(ownerId, existingFile.name());
+            try {
+                var attributes = Files.readAttributes(sourcePath, BasicFileAttributes.class);
+                if (checksum.equals(ChecksumAttributes.read(sourcePath, attributes))) {
+                    if (blobStore.isEnabled()) {
+                        Files.createLink(filePath, sourcePath);
+                    } else {
+                        Files.copy(sourcePath, filePath);
+                        ChecksumAttributes.write(filePath, checksum);
+                    }
+                    return true;
+                }
+            } catch (NoSuchFileException e) {
+                //File removed in the meantime, contents might still be available in the blob store
+            }
+        }
+        return propertiesUtil.isInstantUploadGlobal() && blobStore.linkBlob(checksum, size, filePath);
+    }
+
+    /**
+     * Reads the whole file, used for files whose contents were not digested while being written
+     */
+    private String calculateChecksum(Path filePath) throws IOException {
+        var digest = createDigest();
+        try (var fileChannel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            var buffer = directBufferPool.acquire();
+            try {
+                while (fileChannel.read(buffer) >= 0) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            } finally {
+                directBufferPool.release(buffer);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Quota is checked again and reserved once the actual size is known, uploads without a declared length
+     * are not checked before they are written
+     */
+    private void reserveQuotaOrDelete(Long ownerId, long writtenBytes, Path filePath) throws IOException {
+        try {
+            quotaService.reserveQuota(ownerId, writtenBytes);
+        } catch (QuotaExceededException e) {
+            Files.deleteIfExists(filePath);
+            throw e;
+        }
+    }
+
+    /**
+     * Registers a newly written file in the index, the file is removed if it can not be registered
+     * so that storage and index do not diverge
+     */
+    private void refreshIndexOrDelete(Long ownerId, String filename, Path filePath) throws IOException {
+        try {
+            fileIndex.refresh(ownerId, filename);
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(filePath);
+            throw e;
+        }
+    }
+
+    private FileMetadataDTO mapToMetadataDTO(IndexedFile file) {
+        return FileMetadataDTO.builder()
+                .name(file.name())
+                .size(file.size())
+                .lastModified(new Timestamp(file.lastModifiedTimestamp()))
+                .contentType(MediaTypeFactory.getMediaType(file.name())
+                        .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                        .toString())
+                .checksum(file.checksum())
+                .build();
+    }
+
+    private MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Temporary files are kept in the upload directory, which is on the same file system as the storage
+     * and is cleared of partial files on startup
+     */
+    private Path generateTemporaryFilePath() throws IOException {
+        var uploadDirectoryPath = Paths
                 .get(propertiesUtil.getRootDirAbsolutePath())
                 .normalize()
-                .resolve(ownerId.toString())
+                .resolve(propertiesUtil.getUploadDirName())
                 .toAbsolutePath();
+        Files.createDirectories(uploadDirectoryPath);
+        return uploadDirectoryPath.resolve(UUID.randomUUID() + ".part");
     }
 
-    private Path generateFilePath(String fileName, Long ownerId) {
-        var userDirectory = generatePathToUserDirectory(ownerId);
-        return userDirectory.resolve(fileName);
+    /**
+     * Files stored in the other layout are not found at the target path, so their existence is checked separately
+     */
+    private void ensureDoesNotExist(String filename, Long ownerId) throws FileAlreadyExistsException {
+        if (storageLayout.exists(ownerId, filename)) {
+            throw new FileAlreadyExistsException(storageLayout.resolve(ownerId, filename).toString());
+        }
     }
 
-    private boolean validateFilePath(Path path, Long ownerId) {
-        if (!generatePathToUserDirectory(ownerId).equals(path.getParent())) {
+    private boolean validateFilename(String filename, Long ownerId) {
+        var userDirectoryPath = storageLayout.getUserDirectory(ownerId);
+        if (!userDirectoryPath.equals(storageLayout.getFlatPath(ownerId, filename).getParent())) {
             throw new IllegalArgumentException(
                     "Filename contains special characters that prevent it from being properly stored");
         }
@@ -0,0 +1,285 @@
+package com.n3lx.minidrive.service;
+
+import com.n3lx.minidrive.dto.StorageUsageDTO;
+import com.n3lx.minidrive.entity.User;
+import com.n3lx.minidrive.repository.UserRepository;
+import com.n3lx.minidrive.service.contract.QuotaService;
+import com.n3lx.minidrive.service.exception.QuotaExceededException;
+import com.n3lx.minidrive.service.storage.StorageLayout;
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps storage usage of every user in memory, changes are accumulated in striped counters
+ * and periodically added to the usage saved in the database.
+ * <p>
+ * Usage of a user is calculated by walking their directory only once, when it is needed for the first time.
+ * It has to be known before files of the user are changed, a walk made after a change would already include it.
+ * Uploads reserve their bytes while the quota is checked, so that concurrent uploads can not exceed it together.
+ * Quota of a user is cached next to their usage until the user is changed.
+ */
+@Service
+@Slf4j
+public class QuotaServiceImpl implements QuotaService {
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    StorageLayout storageLayout;
+
+    /**
+     * Counters are completed by the thread that loads them, other threads wait for the same load
+     */
+    private final Map<Long, CompletableFuture<UsageCounter>> usageCounters = new ConcurrentHashMap<>();
+
+    @PreDestroy
+    private void shutdown() {
+        flushUsage();
+    }
+
+    @Override
+    public void checkQuota(Long ownerId, long additionalBytes) {
+        //Usage is loaded even for unlimited users, the file system is about to change
+        var usageCounter = getCounter(ownerId);
+        var quotaInBytes = getQuota(ownerId, usageCounter);
+        if (quotaInBytes != null && usageCounter.getAllocatedBytes() + additionalBytes > quotaInBytes) {
+            log.debug("User " + ownerId + " has exceeded their quota of " + quotaInBytes + " bytes");
+            throw new QuotaExceededException(quotaInBytes);
+        }
+    }
+
+    @Override
+    public void reserveQuota(Long ownerId, long additionalBytes) {
+        var usageCounter = getCounter(ownerId);
+        var quotaInBytes = getQuota(ownerId, usageCounter);
+        synchronized (usageCounter) {
+            if (quotaInBytes != null && usageCounter.getAllocatedBytes() + additionalBytes > quotaInBytes) {
+                log.debug("User " + ownerId + " has exceeded their quota of " + quotaInBytes + " bytes");
+                throw new QuotaExceededException(quotaInBytes);
+            }
+            usageCounter.reservedBytes += additionalBytes;
+        }
+    }
+
+    @Override
+    public void releaseQuota(Long ownerId, long reservedBytes) {
+        var usageCounter = getCounter(ownerId);
+        synchronized (usageCounter) {
+            usageCounter.reservedBytes -= reservedBytes;
+        }
+    }
+
+    @Override
+    public void loadUsage(Long ownerId) {
+        getCounter(ownerId);
+    }
+
+    @Override
+    public void recordUsage(Long ownerId, long deltaBytes) {
+        if (deltaBytes == 0) {
+            return;
+        }
+        if (!usageCounters.containsKey(ownerId)) {
+            //Usage was not loaded before the change, the walk already includes it
+            log.warn("Storage usage of user " + ownerId + " was not loaded before their files changed");
+            getCounter(ownerId);
+            return;
+        }
+        getCounter(ownerId).pendingBytes.add(deltaBytes);
+    }
+
+    @Override
+    public StorageUsageDTO getUsage(Long ownerId) {
+        var usageCounter = getCounter(ownerId);
+        return StorageUsageDTO.builder()
+                .usedBytes(usageCounter.getUsedBytes())
+                .quotaInBytes(getQuota(ownerId, usageCounter))
+                .build();
+    }
+
+    @Override
+    public void invalidateQuota(Long ownerId) {
+        var usageCounter = usageCounters.get(ownerId);
+        if (usageCounter != null) {
+            //A counter that is still being loaded might have read the previous quota
+            usageCounter.thenAccept(UsageCounter::invalidateQuota);
+        }
+    }
+
+    @Override
+    @Scheduled(fixedRate = PropertiesUtil.quotaUsageFlushIntervalInSeconds * 1000)
+    public void flushUsage() {
+        for (var entry : usageCounters.entrySet()) {
+            var usageCounter = entry.getValue().getNow(null);
+            if (usageCounter == null) {
+                //Still being loaded
+                continue;
+            }
+            var pendingBytes = usageCounter.pendingBytes.sum();
+            if (pendingBytes == 0) {
+                continue;
+            }
+            try {
+                if (userRepository.addUsedBytes(entry.getKey(), pendingBytes) == 0) {
+                    //User has been removed in the meantime
+                    usageCounters.remove(entry.getKey(), entry.getValue());
+                    continue;
+                }
+            } catch (RuntimeException e) {
+                log.warn("Could not save storage usage of user " + entry.getKey(), e);
+                continue;
+            }
+            //Flushed bytes are increased first so that usage is never underestimated
+            usageCounter.flushedBytes += pendingBytes;
+            usageCounter.pendingBytes.add(-pendingBytes);
+        }
+    }
+
+    /**
+     * @return Quota of a given user, null if their storage is not limited
+     */
+    private Long getQuota(Long ownerId, UsageCounter usageCounter) {
+        var quotaInBytes = usageCounter.quotaInBytes;
+        if (quotaInBytes == null) {
+            long quotaVersion;
+            synchronized (usageCounter) {
+                quotaVersion = usageCounter.quotaVersion;
+            }
+            quotaInBytes = loadQuota(userRepository.findById(ownerId).orElse(null));
+            synchronized (usageCounter) {
+                //Not cached if the user has changed while it was being loaded
+                if (usageCounter.quotaVersion == quotaVersion) {
+                    usageCounter.quotaInBytes = quotaInBytes;
+                }
+            }
+        }
+        return quotaInBytes >= 0 ? quotaInBytes : null;
+    }
+
+    /**
+     * @return Quota of a given user, negative if their storage is not limited
+     */
+    private long loadQuota(User user) {
+        var quotaInBytes = user != null ? user.getQuotaInBytes() : null;
+        return quotaInBytes != null ? quotaInBytes : propertiesUtil.getDefaultQuotaInBytes();
+    }
+
+    /**
+     * Directory is walked outside of the map, so that loading usage of one user does not block other users
+     */
+    private UsageCounter getCounter(Long ownerId) {
+        var loadedCounter = new CompletableFuture<UsageCounter>();
+        var usageCounter = usageCounters.putIfAbsent(ownerId, loadedCounter);
+        if (usageCounter == null) {
+            try {
+                loadedCounter.complete(loadCounter(ownerId));
+            } catch (RuntimeException e) {
+                //Next request tries again
+                usageCounters.remove(ownerId, loadedCounter);
+                loadedCounter.completeExceptionally(e);
+                throw e;
+            }
+            usageCounter = loadedCounter;
+        }
+        try {
+            return usageCounter.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    private UsageCounter loadCounter(Long ownerId) {
+        var user = userRepository.findById(ownerId).orElse(null);
+        var usedBytes = user != null ? user.getUsedBytes() : null;
+        if (usedBytes == null) {
+            usedBytes = calculateUsage(ownerId);
+            userRepository.setUsedBytes(ownerId, usedBytes);
+            log.debug("Storage usage of user " + ownerId + " calculated: " + usedBytes + " bytes");
+        }
+        var usageCounter = new UsageCounter(usedBytes);
+        usageCounter.quotaInBytes = loadQuota(user);
+        return usageCounter;
+    }
+
+    private long calculateUsage(Long ownerId) {
+        var userDirectoryPath = storageLayout.getUserDirectory(ownerId);
+        try (var filePaths = Files.walk(userDirectoryPath)) {
+            return filePaths
+                    .filter(Files::isRegularFile)
+                    .mapToLong(filePath -> {
+                        try {
+                            return Files.size(filePath);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .sum();
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException | UncheckedIOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class UsageCounter {
+
+        private volatile long flushedBytes;
+
+        private final LongAdder pendingBytes = new LongAdder();
+
+        /**
+         * Bytes of uploads that passed the quota check and are not recorded yet, guarded by the counter
+         */
+        private long reservedBytes;
+
+        /**
+         * Null until loaded, negative if storage of the user is not limited
+         */
+        private volatile Long quotaInBytes;
+
+        /**
+         * Increased on every invalidation, guarded by the counter
+         */
+        private long quotaVersion;
+
+        UsageCounter(long flushedBytes) {
+            this.flushedBytes = flushedBytes;
+        }
+
+        long getUsedBytes() {
+            return flushedBytes + pendingBytes.sum();
+        }
+
+        synchronized long getAllocatedBytes() {
+            return getUsedBytes() + reservedBytes;
+        }
+
+        synchronized void invalidateQuota() {
+            quotaVersion++;
+            quotaInBytes = null;
+        }
+
+    }
+
+}
@@ -3,7 +3,10 @@ package com.n3lx.minidrive.service;
 import com.n3lx.minidrive.dto.UserDTO;
 import com.n3lx.minidrive.mapper.UserMapper;
 import com.n3lx.minidrive.repository.UserRepository;
+import com.n3lx.minidrive.security.UserCache;
+import com.n3lx.minidrive.security.jwt.TokenRevocationList;
 import com.n3lx.minidrive.service.contract.GenericCrudService;
+import com.n3lx.minidrive.service.contract.QuotaService;
 import jakarta.validation.ConstraintViolationException;
 import jakarta.validation.Validation;
 import jakarta.validation.ValidatorFactory;
@@ -26,6 +29,12 @@ public class UserService implements GenericCrudService<UserDTO> {
     private UserMapper userMapper;
     @Autowired
     private PasswordEncoder passwordEncoder;
+    @Autowired
+    private UserCache userCache;
+    @Autowired
+    private TokenRevocationList tokenRevocationList;
+    @Autowired
+    private QuotaService quotaService;
 
     private final ValidatorFactory validatorFactory = Validation.buildDefaultValidatorFactory();
 
@@ -85,11 +94,17 @@ public class UserService implements GenericCrudService<UserDTO> {
         var user = userMapper.mapToEntity(userDTO);
         user.setId(existingUser.get().getId());
         user.setRoles(existingUser.get().getRoles());
+        user.setQuotaInBytes(existingUser.get().getQuotaInBytes());
+        user.setUsedBytes(existingUser.get().getUsedBytes());
 
         var isPasswordChanged = !passwordEncoder.matches(userDTO.getPassword(), existingUser.get().getPassword());
         if (isPasswordChanged && validateDTO(userDTO)) {
             user.setPassword(passwordEncoder.encode(userDTO.getPassword()));
             var savedObject = userRepository.save(user);
+            userCache.invalidate(user.getUsername());
+            quotaService.invalidateQuota(user.getId());
+            //Tokens issued with the previous password are no longer accepted
+            tokenRevocationList.revokeUserTokens(user.getUsername());
             log.debug("Password for user " + userDTO.getUsername() + " has been changed");
             return userMapper.mapToDTO(savedObject);
         }
@@ -98,7 +113,12 @@ public class UserService implements GenericCrudService<UserDTO> {
 
     @Override
     public void delete(Long id) {
+        //Tokens carry the user in their claims and would otherwise stay valid after the user is deleted
+        userRepository.findById(id)
+                .ifPresent(user -> tokenRevocationList.revokeUserTokens(user.getUsername()));
         userRepository.deleteById(id);
+        userCache.invalidate(id);
+        quotaService.invalidateQuota(id);
     }
 
     private boolean validateDTO(UserDTO userDTO) {
@@ -1,24 +1,28 @@
 package com.n3lx.minidrive.service;
 
+import com.n3lx.minidrive.service.archive.ArchiveCache;
+import com.n3lx.minidrive.service.archive.ArchiveProgressListener;
+import com.n3lx.minidrive.service.archive.ParallelZipWriter;
 import com.n3lx.minidrive.service.contract.ArchivingService;
 import com.n3lx.minidrive.utils.PropertiesUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 @Slf4j
@@ -27,78 +31,143 @@ public class ZipArchivingService implements ArchivingService {
     @Autowired
     PropertiesUtil propertiesUtil;
 
+    @Autowired
+    ArchiveCache archiveCache;
+
+    private ForkJoinPool compressionPool;
+
+    @PostConstruct
+    private void init() {
+        var parallelism = propertiesUtil.getArchiveParallelism() > 0
+                ? propertiesUtil.getArchiveParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        compressionPool = new ForkJoinPool(parallelism);
+        log.info("Archive compression pool started with parallelism of " + parallelism);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        compressionPool.shutdownNow();
+    }
+
+    /**
+     * Archives are cached, a repeated request for the same unchanged files of a given owner
+     * returns the previously generated archive
+     */
     @Override
     public Resource archive(List<Resource> resourceList, Long ownerId) {
+        return archive(resourceList, ownerId, null);
+    }
+
+    @Override
+    public Resource archive(List<Resource> resourceList, Long ownerId, ArchiveProgressListener progressListener) {
         var messageBuilder = new StringBuilder();
         messageBuilder
                 .append("User ")
                 .append(ownerId)
                 .append(" has requested compression of multiple files")
                 .append("\n");
-        messageBuilder
-                .append("Attempting to compress ")
-                .append(resourceList.size())
-                .append(" files")
-                .append("\n");
-        createTempDirIfNotCreated();
-
-        var zipFilePath = generatePathToTempDirectory().resolve(resourceList.hashCode() + ".zip");
-        try (var fileOutputStream = new FileOutputStream(zipFilePath.toString());
-             var zipOutputStream = new ZipOutputStream(fileOutputStream)) {
 
-            for (var resource : resourceList) {
-                try (var fileInputStream = new FileInputStream(resource.getFile())) {
-                    ZipEntry zipEntry = new ZipEntry(resource.getFile().getName());
-                    zipOutputStream.putNextEntry(zipEntry);
-
-                    byte[] buffer = new byte[1024];
-                    int readLength;
-                    while ((readLength = fileInputStream.read(buffer)) >= 0) {
-                        zipOutputStream.write(buffer, 0, readLength);
-                    }
-                }
+        //Entries are sorted so that the same set of files always maps to the same cached archive
+        var sortedResourceList = new ArrayList<>(resourceList);
+        sortedResourceList.sort(Comparator.comparing(Resource::getFilename));
+        Path temporaryFilePath = null;
+        try {
+            var files = new ArrayList<File>();
+            for (var resource : sortedResourceList) {
+                files.add(resource.getFile());
+            }
+            var key = archiveCache.generateKey(files, ownerId);
+            var cachedArchive = archiveCache.get(key);
+            if (cachedArchive != null) {
+                messageBuilder
+                        .append("Archive of ")
+                        .append(resourceList.size())
+                        .append(" files served from cache: ")
+                        .append(key)
+                        .append("\n");
+                return cachedArchive;
+            }
 
+            messageBuilder
+                    .append("Attempting to compress ")
+                    .append(resourceList.size())
+                    .append(" files")
+                    .append("\n");
+            createTempDirIfNotCreated();
+            temporaryFilePath = archiveCache.createTemporaryFile(key);
+            try (var fileOutputStream = new FileOutputStream(temporaryFilePath.toString())) {
+                writeArchive(sortedResourceList, fileOutputStream, progressListener);
             }
+            var archive = archiveCache.put(key, temporaryFilePath);
             messageBuilder
                     .append("Compressed ")
                     .append(resourceList.size())
                     .append(" files to ")
-                    .append(zipFilePath)
+                    .append(archive.getFilename())
                     .append("\n");
-            return new UrlResource(zipFilePath.toUri());
+            return archive;
         } catch (IOException e) {
-            messageBuilder.append("Compression failed for ").append(zipFilePath);
+            messageBuilder.append("Compression failed");
             throw new RuntimeException(e);
         } finally {
+            deleteTemporaryFile(temporaryFilePath);
             log.debug(messageBuilder.toString());
         }
     }
 
     @Override
-    @Scheduled(fixedRate = PropertiesUtil.tempDirArchiveRetentionInSeconds * 1000)
+    public void archive(List<Resource> resourceList, OutputStream outputStream) throws IOException {
+        log.debug("Streaming compression of " + resourceList.size() + " files started");
+        writeArchive(resourceList, outputStream, null);
+        log.debug("Streaming compression of " + resourceList.size() + " files finished");
+    }
+
+    @Override
+    @Scheduled(fixedRate = PropertiesUtil.archiveCacheCleanupIntervalInSeconds * 1000)
     public void cleanupArchives() {
-        var tempPath = generatePathToTempDirectory();
-        if(!Files.exists(tempPath)){
-            log.info("Archive directory cleanup did not start as temporary directory was not yet created");
+        log.info("Archive cache cleanup started");
+        var removedArchives = archiveCache.evict();
+        log.info("Archive cache cleanup complete, removed archive count: " + removedArchives);
+    }
+
+    /**
+     * Writes a complete archive to the stream, entries are compressed in blocks on the compression pool
+     * and the output is buffered so that the target receives large writes.
+     * Already compressed files are stored as is when enabled in properties
+     */
+    private void writeArchive(List<Resource> resourceList, OutputStream outputStream,
+                              ArchiveProgressListener progressListener) throws IOException {
+        try (var zipWriter = new ParallelZipWriter(StreamUtils.nonClosing(outputStream), compressionPool,
+                propertiesUtil.getArchiveMaxParallelismPerRequest(), propertiesUtil.getArchiveBlockSizeInBytes(),
+                propertiesUtil.getArchiveCompressionLevel(), propertiesUtil.getBufferSizeInBytes(),
+                propertiesUtil.isArchiveStoreIncompressible())) {
+            for (var resource : resourceList) {
+                var file = resource.getFile();
+                var reportedBytes = new AtomicLong();
+                zipWriter.putEntry(file.getName(), file.lastModified(), () -> {
+                    var fileInputStream = new FileInputStream(file);
+                    return progressListener != null
+                            ? new ProgressTrackingInputStream(fileInputStream, progressListener, reportedBytes)
+                            : fileInputStream;
+                });
+                if (progressListener != null) {
+                    progressListener.onFileArchived();
+                }
+            }
+            zipWriter.finish();
+        }
+    }
+
+    private void deleteTemporaryFile(Path temporaryFilePath) {
+        if (temporaryFilePath == null) {
             return;
         }
-        log.info("Archive directory cleanup started");
-        AtomicInteger removedFiles = new AtomicInteger();
-        try (var filePaths = Files.walk(tempPath)) {
-            filePaths
-                    .filter(path -> !path.equals(tempPath))
-                    .forEach(path -> {
-                        try {
-                            Files.delete(path);
-                            removedFiles.getAndIncrement();
-                        } catch (IOException e) {
-                            log.debug("Could not remove a file during cleanup", e);
-                        }
-                    });
+        try {
+            Files.deleteIfExists(temporaryFilePath);
         } catch (IOException e) {
-            log.debug("An error has occurred while traversing temp directory", e);
+            log.debug("Could not remove temporary archive " + temporaryFilePath, e);
         }
-        log.info("Archive cleanup complete, removed file count: " + removedFiles.get());
     }
 
     private void createTempDirIfNotCreated() {
@@ -145,12 +214,52 @@ public class ZipArchivingService implements ArchivingService {
         log.debug(messageBuilder.toString());
     }
 
-    private Path generatePathToTempDirectory() {
-        return Paths
-                .get(propertiesUtil.getRootDirAbsolutePath())
-                .normalize()
-                .resolve(propertiesUtil.getTempDirName())
-                .toAbsolutePath();
+    /**
+     * Stored entries are read twice by the writer, streams of the same file share the number of reported bytes
+     * so that every byte is reported only the first time it is read
+     */
+    private static class ProgressTrackingInputStream extends FilterInputStream {
+
+        private final ArchiveProgressListener progressListener;
+
+        private final AtomicLong reportedBytes;
+
+        private long position;
+
+        ProgressTrackingInputStream(InputStream inputStream, ArchiveProgressListener progressListener,
+                                    AtomicLong reportedBytes) {
+            super(inputStream);
+            this.progressListener = progressListener;
+            this.reportedBytes = reportedBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            var readByte = super.read();
+            if (readByte >= 0) {
+                onBytesRead(1);
+            }
+            return readByte;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            var readBytes = super.read(buffer, offset, length);
+            if (readBytes > 0) {
+                onBytesRead(readBytes);
+            }
+            return readBytes;
+        }
+
+        private void onBytesRead(int byteCount) {
+            position += byteCount;
+            var unreportedBytes = position - reportedBytes.get();
+            if (unreportedBytes > 0) {
+                reportedBytes.set(position);
+                progressListener.onBytesArchived(unreportedBytes);
+            }
+        }
+
     }
 
 }
@@ -0,0 +1,347 @@
+package com.n3lx.minidrive.service.archive;
+
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cache of generated archives stored in the temporary directory.
+ * <p>
+ * Archives are keyed by their owner and names, sizes and modification times of archived files, so a repeated
+ * request for unchanged files is served from an existing archive while any modification produces a new key.
+ * Entries are evicted once they were not accessed for the configured time or, least recently used first,
+ * when the cache exceeds its size limit. Archives that are being read or are retained are never evicted.
+ */
+@Component
+@Slf4j
+public class ArchiveCache {
+
+    private static final String archiveExtension = ".zip";
+
+    private static final String temporaryFileExtension = ".tmp";
+
+    /**
+     * Archives handed out recently are protected from size based eviction,
+     * so that responses that have not started reading yet still find their file
+     */
+    private static final long recentAccessProtectionInMillis = 60_000;
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    private final Map<String, CachedArchive> cachedArchives = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        //Archives created by a previous run are still valid as their names are derived from archived content
+        var tempDirectoryPath = generatePathToTempDirectory();
+        if (!Files.isDirectory(tempDirectoryPath)) {
+            return;
+        }
+        try (var filePaths = Files.newDirectoryStream(tempDirectoryPath)) {
+            for (var filePath : filePaths) {
+                var fileName = filePath.getFileName().toString();
+                var key = StringUtils.stripFilenameExtension(fileName);
+                if (fileName.endsWith(archiveExtension) && isValidKey(key)) {
+                    cachedArchives.put(key, new CachedArchive(filePath, Files.size(filePath),
+                            Files.getLastModifiedTime(filePath).toMillis()));
+                } else {
+                    Files.deleteIfExists(filePath);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not read archives from " + tempDirectoryPath, e);
+        }
+        log.info("Archive cache initialized with " + cachedArchives.size() + " archives from a previous run");
+    }
+
+    /**
+     * @return Key identifying an archive of given files, files are expected to be sorted by name
+     */
+    public String generateKey(List<File> files, Long ownerId) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(ownerId.toString().getBytes(StandardCharsets.UTF_8));
+            for (var file : files) {
+                digest.update((byte) 0);
+                digest.update(file.getName().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update((file.length() + ":" + file.lastModified()).getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return Cached archive or null if there is none for a given key
+     */
+    public Resource get(String key) {
+        var cachedArchive = cachedArchives.get(key);
+        if (cachedArchive == null) {
+            return null;
+        }
+        if (!Files.exists(cachedArchive.path)) {
+            cachedArchives.remove(key, cachedArchive);
+            return null;
+        }
+        cachedArchive.touch();
+        return new CachedArchiveResource(cachedArchive);
+    }
+
+    /**
+     * Keeps an archive returned by this cache from being evicted until it is released, for holders
+     * that refer to an archive for longer than it would otherwise stay in the cache
+     *
+     * @throws NoSuchFileException If the archive has already been evicted
+     */
+    public void retain(Resource archive) throws IOException {
+        if (archive instanceof CachedArchiveResource cachedArchiveResource) {
+            cachedArchiveResource.cachedArchive.retain();
+        }
+    }
+
+    /**
+     * Allows a retained archive to be evicted again, each retain has to be matched by exactly one release
+     */
+    public void release(Resource archive) {
+        if (archive instanceof CachedArchiveResource cachedArchiveResource) {
+            cachedArchiveResource.cachedArchive.release();
+        }
+    }
+
+    /**
+     * @return Path of a new temporary file in which an archive for a given key can be built
+     */
+    public Path createTemporaryFile(String key) throws IOException {
+        var tempDirectoryPath = generatePathToTempDirectory();
+        Files.createDirectories(tempDirectoryPath);
+        return tempDirectoryPath.resolve(key + "." + UUID.randomUUID() + temporaryFileExtension);
+    }
+
+    /**
+     * Moves a completely built archive into the cache, if the same archive was cached in the meantime
+     * by another request the new one is discarded
+     *
+     * @return Cached archive
+     */
+    public Resource put(String key, Path temporaryFile) throws IOException {
+        var archivePath = generatePathToTempDirectory().resolve(key + archiveExtension);
+        var newArchive = new CachedArchive(archivePath, Files.size(temporaryFile), System.currentTimeMillis());
+        var cachedArchive = cachedArchives.compute(key, (ignored, existingArchive) -> {
+            if (existingArchive != null && Files.exists(existingArchive.path)) {
+                return existingArchive;
+            }
+            try {
+                Files.move(temporaryFile, archivePath, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return newArchive;
+        });
+        Files.deleteIfExists(temporaryFile);
+        cachedArchive.touch();
+        evictOverSizeLimit();
+        return new CachedArchiveResource(cachedArchive);
+    }
+
+    /**
+     * Removes archives that were not accessed within the configured time
+     * and the least recently used ones while the cache exceeds its size limit
+     *
+     * @return Number of removed archives
+     */
+    public int evict() {
+        var expirationTimestamp = System.currentTimeMillis() - propertiesUtil.getArchiveCacheTtlInSeconds() * 1000L;
+        var removedArchives = 0;
+        for (var entry : cachedArchives.entrySet()) {
+            if (entry.getValue().lastAccessTimestamp < expirationTimestamp && remove(entry.getKey(), entry.getValue())) {
+                removedArchives++;
+            }
+        }
+        return removedArchives + evictOverSizeLimit();
+    }
+
+    private int evictOverSizeLimit() {
+        var cacheSize = cachedArchives.values().stream().mapToLong(cachedArchive -> cachedArchive.size).sum();
+        var maxCacheSize = propertiesUtil.getArchiveCacheMaxSizeInBytes();
+        if (cacheSize <= maxCacheSize) {
+            return 0;
+        }
+
+        var protectionTimestamp = System.currentTimeMillis() - recentAccessProtectionInMillis;
+        var removedArchives = 0;
+        var leastRecentlyUsed = cachedArchives.entrySet().stream()
+                .sorted(Comparator.comparingLong(entry -> entry.getValue().lastAccessTimestamp))
+                .toList();
+        for (var entry : leastRecentlyUsed) {
+            if (cacheSize <= maxCacheSize) {
+                break;
+            }
+            var cachedArchive = entry.getValue();
+            if (cachedArchive.lastAccessTimestamp < protectionTimestamp && remove(entry.getKey(), cachedArchive)) {
+                cacheSize -= cachedArchive.size;
+                removedArchives++;
+            }
+        }
+        return removedArchives;
+    }
+
+    private boolean remove(String key, CachedArchive cachedArchive) {
+        if (!cachedArchive.markEvictedIfIdle()) {
+            return false;
+        }
+        cachedArchives.remove(key, cachedArchive);
+        try {
+            Files.deleteIfExists(cachedArchive.path);
+        } catch (IOException e) {
+            log.debug("Could not remove cached archive " + cachedArchive.path, e);
+        }
+        return true;
+    }
+
+    private boolean isValidKey(String key) {
+        return key.length() == 64 && key.chars().allMatch(character -> Character.digit(character, 16) >= 0);
+    }
+
+    private Path generatePathToTempDirectory() {
+        return Paths
+                .get(propertiesUtil.getRootDirAbsolutePath())
+                .normalize()
+                .resolve(propertiesUtil.getTempDirName())
+                .toAbsolutePath();
+    }
+
+    private static class CachedArchive {
+
+        private final Path path;
+
+        private final long size;
+
+        private volatile long lastAccessTimestamp;
+
+        private int activeReads;
+
+        private int retainCount;
+
+        private boolean isEvicted;
+
+        CachedArchive(Path path, long size, long lastAccessTimestamp) {
+            this.path = path;
+            this.size = size;
+            this.lastAccessTimestamp = lastAccessTimestamp;
+        }
+
+        void touch() {
+            lastAccessTimestamp = System.currentTimeMillis();
+        }
+
+        synchronized void beginRead() throws IOException {
+            if (isEvicted) {
+                throw new NoSuchFileException(path.toString(), null, "Archive has been evicted from cache");
+            }
+            activeReads++;
+            touch();
+        }
+
+        synchronized void endRead() {
+            activeReads--;
+            touch();
+        }
+
+        synchronized void retain() throws IOException {
+            if (isEvicted) {
+                throw new NoSuchFileException(path.toString(), null, "Archive has been evicted from cache");
+            }
+            retainCount++;
+            touch();
+        }
+
+        synchronized void release() {
+            retainCount--;
+            touch();
+        }
+
+        synchronized boolean markEvictedIfIdle() {
+            if (activeReads > 0 || retainCount > 0) {
+                return false;
+            }
+            isEvicted = true;
+            return true;
+        }
+
+    }
+
+    /**
+     * Resource that keeps its archive in cache for as long as any of its streams is open
+     */
+    private static class CachedArchiveResource extends FileSystemResource {
+
+        private final CachedArchive cachedArchive;
+
+        CachedArchiveResource(CachedArchive cachedArchive) {
+            super(cachedArchive.path);
+            this.cachedArchive = cachedArchive;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            cachedArchive.beginRead();
+            try {
+                return new ReadTrackingInputStream(super.getInputStream(), cachedArchive);
+            } catch (IOException | RuntimeException e) {
+                cachedArchive.endRead();
+                throw e;
+            }
+        }
+
+    }
+
+    private static class ReadTrackingInputStream extends FilterInputStream {
+
+        private final CachedArchive cachedArchive;
+
+        private final AtomicBoolean isClosed = new AtomicBoolean();
+
+        ReadTrackingInputStream(InputStream inputStream, CachedArchive cachedArchive) {
+            super(inputStream);
+            this.cachedArchive = cachedArchive;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (isClosed.compareAndSet(false, true)) {
+                    cachedArchive.endRead();
+                }
+            }
+        }
+
+    }
+
+}
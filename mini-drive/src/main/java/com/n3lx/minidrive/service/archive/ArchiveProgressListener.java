@@ -0,0 +1,15 @@
+package com.n3lx.minidrive.service.archive;
+
+/**
+ * Receives progress of an archive that is being generated, called from the thread generating the archive
+ */
+public interface ArchiveProgressListener {
+
+    /**
+     * @param byteCount Number of bytes of file contents read since the previous call
+     */
+    void onBytesArchived(long byteCount);
+
+    void onFileArchived();
+
+}
@@ -0,0 +1,119 @@
+package com.n3lx.minidrive.service.archive;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Detects content that would not shrink when deflated, such as images, videos or other archives.
+ * <p>
+ * Content is recognized by file extension and by signatures of common compressed formats, remaining content
+ * is judged by a fast compression of its first bytes. Instances are not thread safe and hold a native deflater
+ * which has to be released with {@link #close()}.
+ */
+public class CompressibilityDetector implements AutoCloseable {
+
+    private static final Set<String> compressedExtensions = Set.of(
+            "jpg", "jpeg", "png", "gif", "webp", "heic", "heif", "avif",
+            "mp4", "m4v", "mov", "mkv", "webm", "avi", "wmv",
+            "mp3", "m4a", "aac", "ogg", "opus", "flac",
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "zst", "lz4",
+            "jar", "apk", "docx", "xlsx", "pptx", "odt", "ods", "odp", "epub", "pdf");
+
+    private static final byte[][] compressedSignatures = {
+            {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF},
+            {(byte) 0x89, 'P', 'N', 'G'},
+            {'G', 'I', 'F', '8'},
+            {'P', 'K', 0x03, 0x04},
+            {0x1F, (byte) 0x8B},
+            {'B', 'Z', 'h'},
+            {(byte) 0xFD, '7', 'z', 'X', 'Z', 0x00},
+            {'7', 'z', (byte) 0xBC, (byte) 0xAF, 0x27, 0x1C},
+            {'R', 'a', 'r', '!', 0x1A, 0x07},
+            {0x28, (byte) 0xB5, 0x2F, (byte) 0xFD},
+            {'%', 'P', 'D', 'F'},
+            {'O', 'g', 'g', 'S'},
+            {'f', 'L', 'a', 'C'},
+            {'I', 'D', '3'},
+            {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3}};
+
+    /**
+     * Content smaller than this is always deflated as potential savings do not justify sampling
+     */
+    private static final int minSampledLength = 4 * 1024;
+
+    private static final int sampleLength = 64 * 1024;
+
+    /**
+     * Content is stored as is when a sample does not shrink below this ratio
+     */
+    private static final double incompressibleRatio = 0.97;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+
+    private final byte[] sampleOutput = new byte[sampleLength + sampleLength / 8 + 64];
+
+    /**
+     * @param name       Entry name
+     * @param firstBlock Beginning of the content
+     * @param length     Number of valid bytes in the first block
+     */
+    public boolean isIncompressible(String name, byte[] firstBlock, int length) {
+        if (compressedExtensions.contains(getExtension(name)) || hasCompressedSignature(firstBlock, length)) {
+            return true;
+        }
+        if (length < minSampledLength) {
+            return false;
+        }
+
+        var sampledLength = Math.min(length, sampleLength);
+        deflater.reset();
+        deflater.setInput(firstBlock, 0, sampledLength);
+        deflater.finish();
+        var compressedLength = 0;
+        while (!deflater.finished() && compressedLength < sampleOutput.length) {
+            compressedLength += deflater.deflate(sampleOutput, compressedLength, sampleOutput.length - compressedLength);
+        }
+        return compressedLength >= sampledLength * incompressibleRatio;
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+    }
+
+    private boolean hasCompressedSignature(byte[] content, int length) {
+        for (var signature : compressedSignatures) {
+            if (startsWith(content, length, 0, signature)) {
+                return true;
+            }
+        }
+        //ISO base media files (MP4, MOV, HEIC...) carry their signature after the box size
+        if (startsWith(content, length, 4, new byte[]{'f', 't', 'y', 'p'})) {
+            return true;
+        }
+        return startsWith(content, length, 0, new byte[]{'R', 'I', 'F', 'F'})
+                && startsWith(content, length, 8, new byte[]{'W', 'E', 'B', 'P'});
+    }
+
+    private boolean startsWith(byte[] content, int length, int offset, byte[] signature) {
+        if (length < offset + signature.length) {
+            return false;
+        }
+        for (var i = 0; i < signature.length; i++) {
+            if (content[offset + i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getExtension(String name) {
+        var extensionIndex = name.lastIndexOf('.');
+        if (extensionIndex < 0) {
+            return "";
+        }
+        return name.substring(extensionIndex + 1).toLowerCase(Locale.ROOT);
+    }
+
+}
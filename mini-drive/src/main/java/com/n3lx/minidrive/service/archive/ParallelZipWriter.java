@@ -0,0 +1,561 @@
+package com.n3lx.minidrive.service.archive;
+
+import org.springframework.core.io.InputStreamSource;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * ZIP writer that compresses entries on a fork-join pool.
+ * <p>
+ * Content that would not shrink (see {@link CompressibilityDetector}) is stored without compression,
+ * remaining entries are deflated.
+ * <p>
+ * Entries are split into fixed size blocks, every block is deflated independently (primed with the tail of the
+ * previous block as a dictionary) and ends with a sync flush, so concatenated blocks form a single valid deflate
+ * stream. Compressed blocks are written in their original order while later blocks, possibly belonging to
+ * following entries, are still being compressed. Number of blocks compressed at the same time is capped
+ * by the given parallelism, which also bounds memory used by a single writer.
+ * <p>
+ * Sizes and CRC of deflated entries are written in data descriptors, stored entries are read in advance to write
+ * them in local headers instead. ZIP64 records are used for entries and archives that exceed limits
+ * of the original format.
+ */
+public class ParallelZipWriter implements Closeable {
+
+    private static final int localFileHeaderSignature = 0x04034b50;
+
+    private static final int dataDescriptorSignature = 0x08074b50;
+
+    private static final int centralDirectoryHeaderSignature = 0x02014b50;
+
+    private static final int zip64EndOfCentralDirectorySignature = 0x06064b50;
+
+    private static final int zip64EndOfCentralDirectoryLocatorSignature = 0x07064b50;
+
+    private static final int endOfCentralDirectorySignature = 0x06054b50;
+
+    private static final int versionDefault = 20;
+
+    private static final int versionZip64 = 45;
+
+    private static final int flagDataDescriptor = 0x0008;
+
+    private static final int flagUtf8 = 0x0800;
+
+    private static final int methodStored = 0;
+
+    private static final int methodDeflated = 8;
+
+    private static final long zip64Limit = 0xFFFFFFFFL;
+
+    private static final int zip64EntryCountLimit = 0xFFFF;
+
+    private static final int dictionarySize = 32 * 1024;
+
+    private final CountingOutputStream outputStream;
+
+    private final ForkJoinPool compressionPool;
+
+    private final int maxParallelism;
+
+    private final int blockSize;
+
+    private final int compressionLevel;
+
+    private final CompressibilityDetector compressibilityDetector;
+
+    private final Queue<Deflater> idleDeflaters = new ConcurrentLinkedQueue<>();
+
+    private final Deque<PendingSegment> pendingSegments = new ArrayDeque<>();
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    private int pendingBlocks;
+
+    private boolean isFinished;
+
+    /**
+     * Cancelled compression tasks may still be running after close, they end their deflaters themselves
+     */
+    private volatile boolean isClosed;
+
+    /**
+     * @param outputStream     Target stream, closed together with the writer
+     * @param compressionPool  Pool on which blocks are compressed
+     * @param maxParallelism   Maximum number of blocks of this writer that are compressed at the same time
+     * @param blockSize        Size of independently compressed blocks in bytes
+     * @param compressionLevel Deflate compression level
+     * @param bufferSize       Size of the output buffer in bytes
+     */
+    public ParallelZipWriter(OutputStream outputStream, ForkJoinPool compressionPool, int maxParallelism,
+                             int blockSize, int compressionLevel, int bufferSize) {
+        this(outputStream, compressionPool, maxParallelism, blockSize, compressionLevel, bufferSize, false);
+    }
+
+    /**
+     * @param storeIncompressible Whether content that would not shrink should be stored without compression
+     */
+    public ParallelZipWriter(OutputStream outputStream, ForkJoinPool compressionPool, int maxParallelism,
+                             int blockSize, int compressionLevel, int bufferSize, boolean storeIncompressible) {
+        this.outputStream = new CountingOutputStream(new BufferedOutputStream(outputStream, bufferSize));
+        this.compressionPool = compressionPool;
+        this.maxParallelism = Math.max(1, maxParallelism);
+        this.blockSize = blockSize;
+        this.compressionLevel = compressionLevel;
+        this.compressibilityDetector = storeIncompressible ? new CompressibilityDetector() : null;
+    }
+
+    /**
+     * Reads the contents and adds them to the archive as a single entry. Contents stored without compression
+     * are read twice, first to compute their size and CRC, which have to precede them in the local header
+     *
+     * @param name                  Entry name
+     * @param lastModifiedTimestamp Modification time in milliseconds since epoch
+     * @param contentSource         Entry contents, every stream opened by the writer is closed by it
+     */
+    public void putEntry(String name, long lastModifiedTimestamp, InputStreamSource contentSource)
+            throws IOException {
+        if (isFinished) {
+            throw new IOException("Archive has already been finished");
+        }
+        var encodedName = name.getBytes(StandardCharsets.UTF_8);
+        var dosTime = toDosTime(lastModifiedTimestamp);
+        try (var inputStream = contentSource.getInputStream()) {
+            var block = inputStream.readNBytes(blockSize);
+            var isStored = compressibilityDetector != null
+                    && compressibilityDetector.isIncompressible(name, block, block.length);
+            if (isStored) {
+                putStoredEntry(new Entry(encodedName, dosTime, methodStored), block, inputStream, contentSource);
+            } else {
+                putDeflatedEntry(new Entry(encodedName, dosTime, methodDeflated), block, inputStream);
+            }
+        }
+    }
+
+    /**
+     * Writes remaining entries and the central directory, underlying stream is flushed but not closed
+     */
+    public void finish() throws IOException {
+        if (isFinished) {
+            return;
+        }
+        drain(0);
+        writeCentralDirectory();
+        outputStream.flush();
+        isFinished = true;
+    }
+
+    /**
+     * Releases compression resources and closes the underlying stream,
+     * archive is left incomplete unless {@link #finish()} has been called before
+     */
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        try {
+            for (var segment : pendingSegments) {
+                if (segment.compressionTask != null) {
+                    segment.compressionTask.cancel(false);
+                    segment.compressionTask.quietlyJoin();
+                }
+            }
+            pendingSegments.clear();
+            if (compressibilityDetector != null) {
+                compressibilityDetector.close();
+            }
+            endIdleDeflaters();
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private void putDeflatedEntry(Entry entry, byte[] block, InputStream inputStream) throws IOException {
+        entries.add(entry);
+        enqueue(() -> writeLocalFileHeader(entry));
+
+        var crc = new CRC32();
+        byte[] previousBlock = null;
+        while (true) {
+            crc.update(block);
+            entry.uncompressedSize += block.length;
+
+            var nextBlock = block.length < blockSize ? new byte[0] : inputStream.readNBytes(blockSize);
+            var isLastBlock = nextBlock.length == 0;
+            enqueueBlock(entry, block, previousBlock, isLastBlock);
+            if (isLastBlock) {
+                break;
+            }
+            previousBlock = block;
+            block = nextBlock;
+        }
+
+        entry.crc = crc.getValue();
+        enqueue(() -> writeDataDescriptor(entry));
+    }
+
+    /**
+     * {@link java.util.zip.ZipInputStream} cannot find the end of a stored entry followed by a data descriptor,
+     * so the rest of the first stream is only used to compute size and CRC, contents are written from a second one
+     */
+    private void putStoredEntry(Entry entry, byte[] firstBlock, InputStream inputStream,
+                                InputStreamSource contentSource) throws IOException {
+        var crc = new CRC32();
+        crc.update(firstBlock);
+        entry.uncompressedSize = firstBlock.length;
+        //First block is not written from this stream, so its array can be reused for the rest of the contents
+        int readBytes;
+        while ((readBytes = inputStream.read(firstBlock)) > 0) {
+            crc.update(firstBlock, 0, readBytes);
+            entry.uncompressedSize += readBytes;
+        }
+        entry.crc = crc.getValue();
+        entry.compressedSize = entry.uncompressedSize;
+        entries.add(entry);
+        enqueue(() -> writeLocalFileHeader(entry));
+
+        var writtenCrc = new CRC32();
+        var writtenBytes = 0L;
+        try (var contentStream = contentSource.getInputStream()) {
+            while (true) {
+                var block = contentStream.readNBytes(blockSize);
+                if (block.length == 0) {
+                    break;
+                }
+                writtenCrc.update(block);
+                writtenBytes += block.length;
+                enqueueStoredBlock(block);
+            }
+        }
+        if (writtenBytes != entry.uncompressedSize || writtenCrc.getValue() != entry.crc) {
+            throw new IOException("Contents of entry " + new String(entry.name, StandardCharsets.UTF_8)
+                    + " have changed while being archived");
+        }
+    }
+
+    private void enqueueBlock(Entry entry, byte[] block, byte[] previousBlock, boolean isLastBlock)
+            throws IOException {
+        drain(maxParallelism - 1);
+        var compressionTask = compressionPool.submit(() -> deflate(block, previousBlock, isLastBlock));
+        pendingBlocks++;
+        pendingSegments.add(new PendingSegment(true, compressionTask, () -> {
+            var compressedBlock = compressionTask.join();
+            outputStream.write(compressedBlock.data, 0, compressedBlock.length);
+            entry.compressedSize += compressedBlock.length;
+        }));
+    }
+
+    /**
+     * Stored blocks wait in the same queue as compressed ones to keep the order and the memory bound
+     */
+    private void enqueueStoredBlock(byte[] block) throws IOException {
+        drain(maxParallelism - 1);
+        pendingBlocks++;
+        pendingSegments.add(new PendingSegment(true, null, () -> outputStream.write(block)));
+    }
+
+    private void enqueue(SegmentWriter segmentWriter) {
+        pendingSegments.add(new PendingSegment(false, null, segmentWriter));
+    }
+
+    /**
+     * Writes pending segments in order until at most given number of blocks is still being compressed
+     */
+    private void drain(int maxPendingBlocks) throws IOException {
+        while (!pendingSegments.isEmpty()) {
+            var segment = pendingSegments.peek();
+            if (segment.isBlock) {
+                if (pendingBlocks <= maxPendingBlocks) {
+                    return;
+                }
+                pendingBlocks--;
+            }
+            pendingSegments.poll();
+            try {
+                segment.writer.write();
+            } catch (RuntimeException e) {
+                throw new IOException("Compression of an archive entry has failed", e);
+            }
+        }
+    }
+
+    private CompressedBlock deflate(byte[] block, byte[] previousBlock, boolean isLastBlock) {
+        var deflater = idleDeflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(compressionLevel, true);
+        }
+        try {
+            if (previousBlock != null) {
+                var dictionaryLength = Math.min(dictionarySize, previousBlock.length);
+                deflater.setDictionary(previousBlock, previousBlock.length - dictionaryLength, dictionaryLength);
+            }
+            deflater.setInput(block);
+            if (isLastBlock) {
+                deflater.finish();
+            }
+
+            var output = new byte[block.length / 2 + 1024];
+            var length = 0;
+            var isDone = false;
+            while (!isDone) {
+                if (length == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                var availableSpace = output.length - length;
+                var compressedBytes = isLastBlock
+                        ? deflater.deflate(output, length, availableSpace)
+                        : deflater.deflate(output, length, availableSpace, Deflater.SYNC_FLUSH);
+                length += compressedBytes;
+                isDone = isLastBlock ? deflater.finished() : compressedBytes < availableSpace;
+            }
+            return new CompressedBlock(output, length);
+        } finally {
+            deflater.reset();
+            idleDeflaters.offer(deflater);
+            if (isClosed) {
+                endIdleDeflaters();
+            }
+        }
+    }
+
+    /**
+     * Deflaters are ended by whichever thread takes them from the queue, so each of them is ended exactly once
+     */
+    private void endIdleDeflaters() {
+        Deflater deflater;
+        while ((deflater = idleDeflaters.poll()) != null) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Sizes and CRC of deflated entries are not known yet and are left empty, they follow in the data descriptor
+     */
+    private void writeLocalFileHeader(Entry entry) throws IOException {
+        entry.localHeaderOffset = outputStream.getWrittenBytes();
+        var isStored = entry.method == methodStored;
+        var hasZip64Sizes = isStored && entry.hasZip64Sizes();
+        writeInt(localFileHeaderSignature);
+        writeShort(hasZip64Sizes ? versionZip64 : versionDefault);
+        writeShort(entry.getFlags());
+        writeShort(entry.method);
+        writeInt(entry.dosTime);
+        writeInt(isStored ? entry.crc : 0);
+        writeInt(isStored ? Math.min(entry.compressedSize, zip64Limit) : 0);
+        writeInt(isStored ? Math.min(entry.uncompressedSize, zip64Limit) : 0);
+        writeShort(entry.name.length);
+        writeShort(hasZip64Sizes ? 20 : 0);
+        outputStream.write(entry.name);
+        if (hasZip64Sizes) {
+            writeShort(0x0001);
+            writeShort(16);
+            writeLong(entry.uncompressedSize);
+            writeLong(entry.compressedSize);
+        }
+    }
+
+    private void writeDataDescriptor(Entry entry) throws IOException {
+        writeInt(dataDescriptorSignature);
+        writeInt(entry.crc);
+        if (entry.hasZip64Sizes()) {
+            writeLong(entry.compressedSize);
+            writeLong(entry.uncompressedSize);
+        } else {
+            writeInt(entry.compressedSize);
+            writeInt(entry.uncompressedSize);
+        }
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        var centralDirectoryOffset = outputStream.getWrittenBytes();
+        for (var entry : entries) {
+            writeCentralDirectoryHeader(entry);
+        }
+        var centralDirectorySize = outputStream.getWrittenBytes() - centralDirectoryOffset;
+
+        var isZip64 = entries.size() >= zip64EntryCountLimit
+                || centralDirectoryOffset >= zip64Limit
+                || centralDirectorySize >= zip64Limit;
+        if (isZip64) {
+            var zip64EndOfCentralDirectoryOffset = outputStream.getWrittenBytes();
+            writeInt(zip64EndOfCentralDirectorySignature);
+            writeLong(44);
+            writeShort(versionZip64);
+            writeShort(versionZip64);
+            writeInt(0);
+            writeInt(0);
+            writeLong(entries.size());
+            writeLong(entries.size());
+            writeLong(centralDirectorySize);
+            writeLong(centralDirectoryOffset);
+
+            writeInt(zip64EndOfCentralDirectoryLocatorSignature);
+            writeInt(0);
+            writeLong(zip64EndOfCentralDirectoryOffset);
+            writeInt(1);
+        }
+
+        writeInt(endOfCentralDirectorySignature);
+        writeShort(0);
+        writeShort(0);
+        writeShort(Math.min(entries.size(), zip64EntryCountLimit));
+        writeShort(Math.min(entries.size(), zip64EntryCountLimit));
+        writeInt(Math.min(centralDirectorySize, zip64Limit));
+        writeInt(Math.min(centralDirectoryOffset, zip64Limit));
+        writeShort(0);
+    }
+
+    private void writeCentralDirectoryHeader(Entry entry) throws IOException {
+        var zip64Fields = new ArrayList<Long>();
+        if (entry.uncompressedSize >= zip64Limit) {
+            zip64Fields.add(entry.uncompressedSize);
+        }
+        if (entry.compressedSize >= zip64Limit) {
+            zip64Fields.add(entry.compressedSize);
+        }
+        if (entry.localHeaderOffset >= zip64Limit) {
+            zip64Fields.add(entry.localHeaderOffset);
+        }
+        var version = zip64Fields.isEmpty() ? versionDefault : versionZip64;
+        var extraFieldLength = zip64Fields.isEmpty() ? 0 : 4 + zip64Fields.size() * 8;
+
+        writeInt(centralDirectoryHeaderSignature);
+        writeShort(version);
+        writeShort(version);
+        writeShort(entry.getFlags());
+        writeShort(entry.method);
+        writeInt(entry.dosTime);
+        writeInt(entry.crc);
+        writeInt(Math.min(entry.compressedSize, zip64Limit));
+        writeInt(Math.min(entry.uncompressedSize, zip64Limit));
+        writeShort(entry.name.length);
+        writeShort(extraFieldLength);
+        writeShort(0);
+        writeShort(0);
+        writeShort(0);
+        writeInt(0);
+        writeInt(Math.min(entry.localHeaderOffset, zip64Limit));
+        outputStream.write(entry.name);
+        if (!zip64Fields.isEmpty()) {
+            writeShort(0x0001);
+            writeShort(zip64Fields.size() * 8);
+            for (var field : zip64Fields) {
+                writeLong(field);
+            }
+        }
+    }
+
+    private void writeShort(int value) throws IOException {
+        outputStream.write(value & 0xFF);
+        outputStream.write((value >>> 8) & 0xFF);
+    }
+
+    private void writeInt(long value) throws IOException {
+        writeShort((int) (value & 0xFFFF));
+        writeShort((int) ((value >>> 16) & 0xFFFF));
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt(value & 0xFFFFFFFFL);
+        writeInt(value >>> 32);
+    }
+
+    private static long toDosTime(long timestamp) {
+        var dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+        if (dateTime.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (long) (dateTime.getYear() - 1980) << 25
+                | (long) dateTime.getMonthValue() << 21
+                | (long) dateTime.getDayOfMonth() << 16
+                | (long) dateTime.getHour() << 11
+                | (long) dateTime.getMinute() << 5
+                | (long) dateTime.getSecond() >> 1;
+    }
+
+    private interface SegmentWriter {
+
+        void write() throws IOException;
+
+    }
+
+    private record PendingSegment(boolean isBlock, ForkJoinTask<CompressedBlock> compressionTask,
+                                  SegmentWriter writer) {
+    }
+
+    private record CompressedBlock(byte[] data, int length) {
+    }
+
+    private static class Entry {
+
+        private final byte[] name;
+
+        private final long dosTime;
+
+        private final int method;
+
+        private long crc;
+
+        private long uncompressedSize;
+
+        private long compressedSize;
+
+        private long localHeaderOffset;
+
+        Entry(byte[] name, long dosTime, int method) {
+            this.name = name;
+            this.dosTime = dosTime;
+            this.method = method;
+        }
+
+        int getFlags() {
+            return method == methodStored ? flagUtf8 : flagDataDescriptor | flagUtf8;
+        }
+
+        boolean hasZip64Sizes() {
+            return uncompressedSize >= zip64Limit || compressedSize >= zip64Limit;
+        }
+
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long writtenBytes;
+
+        CountingOutputStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            writtenBytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            writtenBytes += len;
+        }
+
+        long getWrittenBytes() {
+            return writtenBytes;
+        }
+
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.n3lx.minidrive.service.contract;
+
+import com.n3lx.minidrive.dto.ArchiveJobDTO;
+import org.springframework.core.io.Resource;
+
+import java.util.List;
+
+public interface ArchiveJobService {
+
+    /**
+     * Queues generation of an archive, all files are resolved before the job is queued
+     */
+    ArchiveJobDTO submit(List<String> filenames, Long ownerId);
+
+    ArchiveJobDTO getJob(String jobId, Long ownerId);
+
+    /**
+     * @return Generated archive of a completed job
+     */
+    Resource loadResult(String jobId, Long ownerId);
+
+    void cleanupJobs();
+
+}
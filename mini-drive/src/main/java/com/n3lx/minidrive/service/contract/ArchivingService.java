@@ -1,13 +1,27 @@
 package com.n3lx.minidrive.service.contract;
 
+import com.n3lx.minidrive.service.archive.ArchiveProgressListener;
 import org.springframework.core.io.Resource;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 public interface ArchivingService {
 
     Resource archive(List<Resource> resourceList, Long ownerId);
 
+    /**
+     * Variant of {@link #archive(List, Long)} that reports progress while the archive is being generated
+     */
+    Resource archive(List<Resource> resourceList, Long ownerId, ArchiveProgressListener progressListener);
+
+    /**
+     * Writes the archive directly to a given stream without creating any temporary files,
+     * stream is not closed afterwards
+     */
+    void archive(List<Resource> resourceList, OutputStream outputStream) throws IOException;
+
     void cleanupArchives();
 
 }
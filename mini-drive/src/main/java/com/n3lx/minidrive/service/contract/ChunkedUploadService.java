@@ -0,0 +1,21 @@
+package com.n3lx.minidrive.service.contract;
+
+import com.n3lx.minidrive.dto.UploadSessionDTO;
+
+import java.io.InputStream;
+
+public interface ChunkedUploadService {
+
+    UploadSessionDTO createSession(String fileName, Long fileSize, Integer chunkSize, Long ownerId);
+
+    UploadSessionDTO getSession(String sessionId, Long ownerId);
+
+    void writeChunk(String sessionId, Integer chunkNumber, Long offset, InputStream inputStream, Long ownerId);
+
+    boolean commit(String sessionId, Long ownerId);
+
+    void abort(String sessionId, Long ownerId);
+
+    void cleanupSessions();
+
+}
@@ -0,0 +1,37 @@
+package com.n3lx.minidrive.service.contract;
+
+import com.n3lx.minidrive.dto.ChunkDTO;
+import com.n3lx.minidrive.dto.ChunkManifestDTO;
+import com.n3lx.minidrive.dto.SyncSessionDTO;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Updates of stored files that transfer only chunks the server does not have yet,
+ * see {@link com.n3lx.minidrive.service.sync.ContentDefinedChunker} for the way files are split
+ */
+public interface DeltaSyncService {
+
+    ChunkManifestDTO getManifest(String fileName, Long ownerId);
+
+    /**
+     * @param baseFileName File whose chunks can be reused, defaults to the updated file
+     * @param chunks       Chunks of the new version of the file in order
+     */
+    SyncSessionDTO createSession(String fileName, String baseFileName, List<ChunkDTO> chunks, Long ownerId);
+
+    SyncSessionDTO getSession(String sessionId, Long ownerId);
+
+    void writeChunk(String sessionId, String checksum, InputStream inputStream, Long ownerId);
+
+    /**
+     * Assembles the new version of the file and replaces the stored one
+     */
+    boolean commit(String sessionId, Long ownerId);
+
+    void abort(String sessionId, Long ownerId);
+
+    void cleanupSessions();
+
+}
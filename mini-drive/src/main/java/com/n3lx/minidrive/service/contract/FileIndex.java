@@ -0,0 +1,48 @@
+package com.n3lx.minidrive.service.contract;
+
+import com.n3lx.minidrive.service.index.FileQuery;
+import com.n3lx.minidrive.service.index.IndexedFile;
+
+import java.util.List;
+
+/**
+ * Index of files stored by each owner, allows listing files without reading their directories
+ */
+public interface FileIndex {
+
+    /**
+     * @return Files of a given owner sorted by name
+     */
+    List<IndexedFile> listFiles(Long ownerId);
+
+    /**
+     * @param after Name after which the listing starts, null to start from the first file
+     * @param limit Maximum number of returned files
+     * @return Files of a given owner sorted by name
+     */
+    List<IndexedFile> listFilesAfter(Long ownerId, String after, int limit);
+
+    /**
+     * @return Files of a given owner matching the query, page numbers lower than 1 result in an empty list
+     */
+    List<IndexedFile> search(Long ownerId, FileQuery query);
+
+    /**
+     * @param checksum SHA-256 checksum as lowercase hexadecimal digits
+     * @return Any file of a given owner with matching contents or null if there is none
+     */
+    IndexedFile findByChecksum(Long ownerId, String checksum);
+
+    /**
+     * @return Opaque version that changes whenever the list of files of a given owner or their metadata changes,
+     * an unchanged version means that the listing has not changed
+     */
+    String getVersion(Long ownerId);
+
+    /**
+     * Updates the index entry of a given file according to its current state in storage,
+     * has to be called after every change made by the application
+     */
+    void refresh(Long ownerId, String filename);
+
+}
@@ -1,22 +1,94 @@
 package com.n3lx.minidrive.service.contract;
 
+import com.n3lx.minidrive.dto.FileMetadataDTO;
 import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.List;
 
 public interface FileStorageService {
 
     boolean store(MultipartFile file, Long ownerId);
 
+    boolean store(InputStream inputStream, String filename, Long ownerId);
+
+    /**
+     * Stores a file with contents that are already present on the server without receiving them again.
+     * Contents are looked up among files of the owner and, if configured, among all stored contents
+     *
+     * @param checksum SHA-256 checksum of file contents as hexadecimal digits
+     * @param size     Size of file contents in bytes
+     * @return True if the file has been stored, false if contents are not known and have to be uploaded
+     */
+    boolean storeExisting(String filename, String checksum, Long size, Long ownerId);
+
+    /**
+     * Moves a fully written file into the owner's storage, source file has to be located on the same file system
+     */
+    boolean importFile(Path sourceFile, String filename, Long ownerId);
+
+    /**
+     * Variant of {@link #importFile(Path, String, Long)} that atomically replaces the current version of a file
+     *
+     * @param checksum SHA-256 checksum of the source file as hexadecimal digits
+     */
+    boolean replaceFile(Path sourceFile, String filename, String checksum, Long ownerId);
+
+    boolean exists(String filename, Long ownerId);
+
+    /**
+     * Loads a file to be downloaded, contents of small files are served from and added to the read cache
+     */
     Resource load(String filename, Long ownerId);
 
+    /**
+     * Resolves a file without using the read cache, meant for callers that access the file itself
+     */
+    Resource resolve(String filename, Long ownerId);
+
     Resource loadMultiple(List<String> filenames, Long ownerId);
 
+    /**
+     * Streaming variant of {@link #loadMultiple(List, Long)}, all files are resolved before returning
+     * and the archive is generated while the returned body is being written to the client
+     */
+    StreamingResponseBody loadMultipleAsStream(List<String> filenames, Long ownerId);
+
     List<String> listAllFiles(Long ownerId);
 
     List<String> listFiles(Long ownerId, Integer pageNumber, Integer pageSize);
 
+    /**
+     * Keyset variant of {@link #listFiles(Long, Integer, Integer)}, pages do not shift when files are added
+     * or removed and each page costs the same regardless of its position
+     *
+     * @param after Name of the last file of the previous page, null for the first page
+     * @param limit Page size, capped at {@link com.n3lx.minidrive.utils.PropertiesUtil#maxListingLimit}
+     * @return Names of files following a given name, sorted by name
+     */
+    List<String> listFilesAfter(Long ownerId, String after, Integer limit);
+
+    /**
+     * Lists files together with their metadata, filters and sorting are applied before pagination
+     *
+     * @param sortBy     One of name, size, date, defaults to name
+     * @param order      Either asc or desc, defaults to asc
+     * @param prefix     Only files with names starting with a given prefix are listed, optional
+     * @param extensions Only files with one of given extensions are listed (case-insensitive), optional
+     * @param pageNumber Page number starting at 1, all files are listed if page number or page size is missing
+     * @param pageSize   Page size
+     */
+    List<FileMetadataDTO> listFileDetails(Long ownerId, String sortBy, String order, String prefix,
+                                          List<String> extensions, Integer pageNumber, Integer pageSize);
+
+    /**
+     * @return Version of the owner's file listing, changes whenever a file is added, removed or modified
+     */
+    String getListingVersion(Long ownerId);
+
     boolean delete(String filename, Long ownerId);
 
     boolean rename(String currentFilename, String newFileName, Long ownerId);
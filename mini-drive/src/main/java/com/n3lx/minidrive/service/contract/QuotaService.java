@@ -0,0 +1,47 @@
+package com.n3lx.minidrive.service.contract;
+
+import com.n3lx.minidrive.dto.StorageUsageDTO;
+
+public interface QuotaService {
+
+    /**
+     * @param additionalBytes Number of bytes that are about to be stored
+     * @throws com.n3lx.minidrive.service.exception.QuotaExceededException If the quota would be exceeded
+     */
+    void checkQuota(Long ownerId, long additionalBytes);
+
+    /**
+     * Checks the quota and reserves the bytes in one step, so that concurrent uploads can not exceed it together.
+     * Every reservation has to be released once the bytes are recorded or are not going to be stored.
+     *
+     * @param additionalBytes Number of bytes that are about to be stored
+     * @throws com.n3lx.minidrive.service.exception.QuotaExceededException If the quota would be exceeded
+     */
+    void reserveQuota(Long ownerId, long additionalBytes);
+
+    /**
+     * @param reservedBytes Number of bytes reserved by {@link #reserveQuota(Long, long)}
+     */
+    void releaseQuota(Long ownerId, long reservedBytes);
+
+    /**
+     * Makes sure current usage of a user is known, has to be called before files of the user are changed
+     * without checking the quota, otherwise the change might be counted twice
+     */
+    void loadUsage(Long ownerId);
+
+    /**
+     * @param deltaBytes Change of used storage, negative when files were removed
+     */
+    void recordUsage(Long ownerId, long deltaBytes);
+
+    StorageUsageDTO getUsage(Long ownerId);
+
+    /**
+     * Quota of a user is cached together with their usage, it has to be invalidated whenever the user changes
+     */
+    void invalidateQuota(Long ownerId);
+
+    void flushUsage();
+
+}
@@ -0,0 +1,9 @@
+package com.n3lx.minidrive.service.exception;
+
+public class ArchiveJobNotFoundException extends RuntimeException {
+
+    public ArchiveJobNotFoundException(String jobId) {
+        super("Archive job " + jobId + " does not exist");
+    }
+
+}
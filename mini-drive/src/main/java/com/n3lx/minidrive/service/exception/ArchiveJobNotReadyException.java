@@ -0,0 +1,9 @@
+package com.n3lx.minidrive.service.exception;
+
+public class ArchiveJobNotReadyException extends RuntimeException {
+
+    public ArchiveJobNotReadyException(String message) {
+        super(message);
+    }
+
+}
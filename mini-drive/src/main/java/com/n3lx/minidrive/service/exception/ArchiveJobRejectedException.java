@@ -0,0 +1,18 @@
+package com.n3lx.minidrive.service.exception;
+
+import lombok.Getter;
+
+/**
+ * Thrown when the archive job queue is full, the client is expected to retry after a given time
+ */
+@Getter
+public class ArchiveJobRejectedException extends RuntimeException {
+
+    private final int retryAfterInSeconds;
+
+    public ArchiveJobRejectedException(int retryAfterInSeconds) {
+        super("Too many archive jobs are waiting, try again later");
+        this.retryAfterInSeconds = retryAfterInSeconds;
+    }
+
+}
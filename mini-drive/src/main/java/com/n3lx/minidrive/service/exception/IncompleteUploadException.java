@@ -0,0 +1,9 @@
+package com.n3lx.minidrive.service.exception;
+
+public class IncompleteUploadException extends RuntimeException {
+
+    public IncompleteUploadException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,9 @@
+package com.n3lx.minidrive.service.exception;
+
+public class InvalidInstantUploadException extends RuntimeException {
+
+    public InvalidInstantUploadException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,9 @@
+package com.n3lx.minidrive.service.exception;
+
+public class InvalidListingParameterException extends RuntimeException {
+
+    public InvalidListingParameterException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,9 @@
+package com.n3lx.minidrive.service.exception;
+
+public class InvalidUploadChunkException extends RuntimeException {
+
+    public InvalidUploadChunkException(String message) {
+        super(message);
+    }
+
+}
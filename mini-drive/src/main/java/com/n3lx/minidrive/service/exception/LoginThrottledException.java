@@ -0,0 +1,19 @@
+package com.n3lx.minidrive.service.exception;
+
+import lombok.Getter;
+
+/**
+ * Thrown when a login is attempted for a username or from an address with too many recent failures,
+ * the client is expected to retry after a given time
+ */
+@Getter
+public class LoginThrottledException extends RuntimeException {
+
+    private final int retryAfterInSeconds;
+
+    public LoginThrottledException(int retryAfterInSeconds) {
+        super("Too many failed login attempts, try again later");
+        this.retryAfterInSeconds = retryAfterInSeconds;
+    }
+
+}
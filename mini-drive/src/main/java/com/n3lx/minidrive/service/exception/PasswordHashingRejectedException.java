@@ -0,0 +1,18 @@
+package com.n3lx.minidrive.service.exception;
+
+import lombok.Getter;
+
+/**
+ * Thrown when too many passwords are waiting to be hashed, the client is expected to retry after a given time
+ */
+@Getter
+public class PasswordHashingRejectedException extends RuntimeException {
+
+    private final int retryAfterInSeconds;
+
+    public PasswordHashingRejectedException(int retryAfterInSeconds) {
+        super("Too many authentication requests, try again later");
+        this.retryAfterInSeconds = retryAfterInSeconds;
+    }
+
+}
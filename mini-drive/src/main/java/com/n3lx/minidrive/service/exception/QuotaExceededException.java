@@ -0,0 +1,9 @@
+package com.n3lx.minidrive.service.exception;
+
+public class QuotaExceededException extends RuntimeException {
+
+    public QuotaExceededException(long quotaInBytes) {
+        super("Storage quota of " + quotaInBytes + " bytes would be exceeded");
+    }
+
+}
@@ -0,0 +1,9 @@
+package com.n3lx.minidrive.service.exception;
+
+public class UploadSessionNotFoundException extends RuntimeException {
+
+    public UploadSessionNotFoundException(String sessionId) {
+        super("Upload session " + sessionId + " does not exist");
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.n3lx.minidrive.service.index;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+
+/**
+ * Keeps SHA-256 checksums of stored files in user defined file attributes, so they survive restarts and renames
+ * without being recomputed.
+ * <p>
+ * Size and modification time of the file are saved together with the checksum, a checksum is ignored once
+ * the file has been modified by anything other than the application. File systems without user defined
+ * attributes simply do not provide checksums.
+ */
+@Slf4j
+public final class ChecksumAttributes {
+
+    private static final String attributeName = "minidrive.sha256";
+
+    private ChecksumAttributes() {
+    }
+
+    public static void write(Path filePath, String checksum) {
+        try {
+            var attributeView = Files.getFileAttributeView(filePath, UserDefinedFileAttributeView.class);
+            if (attributeView == null) {
+                return;
+            }
+            var attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+            var value = attributes.size() + ":" + attributes.lastModifiedTime().toMillis() + ":" + checksum;
+            attributeView.write(attributeName, StandardCharsets.US_ASCII.encode(value));
+        } catch (IOException | UnsupportedOperationException e) {
+            log.debug("Could not save checksum of " + filePath, e);
+        }
+    }
+
+    /**
+     * @return Checksum of the file or null if it is not known or no longer valid
+     */
+    public static String read(Path filePath, BasicFileAttributes attributes) {
+        try {
+            var attributeView = Files.getFileAttributeView(filePath, UserDefinedFileAttributeView.class);
+            if (attributeView == null) {
+                return null;
+            }
+            //Missing attribute is reported as an exception, which avoids listing attributes of every file
+            var buffer = ByteBuffer.allocate(attributeView.size(attributeName));
+            attributeView.read(attributeName, buffer);
+            buffer.flip();
+            var value = StandardCharsets.US_ASCII.decode(buffer).toString().split(":");
+            if (value.length != 3
+                    || Long.parseLong(value[0]) != attributes.size()
+                    || Long.parseLong(value[1]) != attributes.lastModifiedTime().toMillis()) {
+                return null;
+            }
+            return value[2];
+        } catch (IOException | UnsupportedOperationException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+}
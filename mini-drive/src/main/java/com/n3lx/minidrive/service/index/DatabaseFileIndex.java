@@ -0,0 +1,210 @@
+package com.n3lx.minidrive.service.index;
+
+import com.n3lx.minidrive.entity.StoredFile;
+import com.n3lx.minidrive.repository.StoredFileRepository;
+import com.n3lx.minidrive.repository.UserRepository;
+import com.n3lx.minidrive.service.contract.FileIndex;
+import com.n3lx.minidrive.service.storage.StorageLayout;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.Predicate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File index kept in the files table, listings, pagination and searches are executed as indexed queries.
+ * <p>
+ * Unlike {@link WatchingFileIndex} this index does not observe the file system, every change has to be made through
+ * the application. Listing versions are stored with the owners and increased by the statements that change the table,
+ * so that all instances report the same version. Files stored before the index was enabled are imported on startup
+ * while the table is empty.
+ */
+@Component
+@ConditionalOnProperty(name = "app.fileStorage.index.type", havingValue = "database")
+@Slf4j
+public class DatabaseFileIndex implements FileIndex {
+
+    @Autowired
+    StoredFileRepository storedFileRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    StorageLayout storageLayout;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @PostConstruct
+    private void init() {
+        if (storedFileRepository.count() > 0) {
+            return;
+        }
+        var rootPath = storageLayout.getRootDirectory();
+        if (!Files.isDirectory(rootPath)) {
+            return;
+        }
+
+        var importedFiles = 0;
+        try (var userDirectoryPaths = Files.newDirectoryStream(rootPath, Files::isDirectory)) {
+            for (var userDirectoryPath : userDirectoryPaths) {
+                var ownerId = parseOwnerId(userDirectoryPath.getFileName().toString());
+                if (ownerId == null || !userRepository.existsById(ownerId)) {
+                    continue;
+                }
+                for (var filePath : storageLayout.listFiles(ownerId)) {
+                    refresh(ownerId, filePath.getFileName().toString());
+                    importedFiles++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not import existing files into the file index", e);
+        }
+        log.info("Imported " + importedFiles + " existing files into the file index");
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<IndexedFile> listFiles(Long ownerId) {
+        return storedFileRepository.findByOwnerIdOrderByNameAsc(ownerId).stream()
+                .map(this::mapToIndexedFile)
+                .toList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<IndexedFile> listFilesAfter(Long ownerId, String after, int limit) {
+        var pageRequest = PageRequest.of(0, limit, Sort.by("name"));
+        var storedFiles = after != null
+                ? storedFileRepository.findByOwnerIdAndNameGreaterThan(ownerId, after, pageRequest)
+                : storedFileRepository.findByOwnerId(ownerId, pageRequest);
+        return storedFiles.stream()
+                .map(this::mapToIndexedFile)
+                .toList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<IndexedFile> search(Long ownerId, FileQuery query) {
+        if (query.isPaginated() && (query.pageNumber() < 1 || query.pageSize() < 1)) {
+            return List.of();
+        }
+
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(StoredFile.class);
+        var storedFile = criteriaQuery.from(StoredFile.class);
+
+        var name = storedFile.<String>get("name");
+        var predicates = new ArrayList<Predicate>();
+        predicates.add(criteriaBuilder.equal(storedFile.get("ownerId"), ownerId));
+        if (query.prefix() != null) {
+            predicates.add(criteriaBuilder.like(name, escapeLikePattern(query.prefix()) + "%", '\\'));
+        }
+        if (!query.extensions().isEmpty()) {
+            var extensionPredicates = query.extensions().stream()
+                    .map(extension -> criteriaBuilder.like(criteriaBuilder.lower(name),
+                            "%." + escapeLikePattern(extension), '\\'))
+                    .toArray(Predicate[]::new);
+            predicates.add(criteriaBuilder.or(extensionPredicates));
+        }
+        criteriaQuery.where(predicates.toArray(Predicate[]::new));
+
+        var sortAttribute = switch (query.sortField()) {
+            case NAME -> "name";
+            case SIZE -> "size";
+            case DATE -> "lastModified";
+        };
+        if (query.descending()) {
+            criteriaQuery.orderBy(criteriaBuilder.desc(storedFile.get(sortAttribute)),
+                    criteriaBuilder.desc(name));
+        } else {
+            criteriaQuery.orderBy(criteriaBuilder.asc(storedFile.get(sortAttribute)),
+                    criteriaBuilder.asc(name));
+        }
+
+        var typedQuery = entityManager.createQuery(criteriaQuery);
+        if (query.isPaginated()) {
+            typedQuery
+                    .setFirstResult((query.pageNumber() - 1) * query.pageSize())
+                    .setMaxResults(query.pageSize());
+        }
+        return typedQuery.getResultStream()
+                .map(this::mapToIndexedFile)
+                .toList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public IndexedFile findByChecksum(Long ownerId, String checksum) {
+        return storedFileRepository.findFirstByOwnerIdAndChecksum(ownerId, checksum)
+                .map(this::mapToIndexedFile)
+                .orElse(null);
+    }
+
+    /**
+     * Version is read on every call, changes made by other instances are reported right away
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public String getVersion(Long ownerId) {
+        return storedFileRepository.findListingVersion(ownerId)
+                .map(String::valueOf)
+                .orElse("0");
+    }
+
+    @Override
+    public void refresh(Long ownerId, String filename) {
+        var userDirectoryPath = storageLayout.getUserDirectory(ownerId);
+        if (!userDirectoryPath.equals(userDirectoryPath.resolve(filename).getParent())) {
+            return;
+        }
+        var filePath = storageLayout.resolve(ownerId, filename);
+
+        try {
+            var attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+            storedFileRepository.upsert(ownerId, filename, attributes.size(),
+                    new Timestamp(attributes.lastModifiedTime().toMillis()),
+                    ChecksumAttributes.read(filePath, attributes),
+                    storageLayout.getRootDirectory().relativize(filePath).toString());
+        } catch (NoSuchFileException e) {
+            storedFileRepository.deleteByOwnerIdAndName(ownerId, filename);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private IndexedFile mapToIndexedFile(StoredFile storedFile) {
+        return new IndexedFile(storedFile.getName(), storedFile.getSize(),
+                storedFile.getLastModified().getTime(), storedFile.getChecksum());
+    }
+
+    private String escapeLikePattern(String value) {
+        return value
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+
+    private Long parseOwnerId(String directoryName) {
+        try {
+            return Long.valueOf(directoryName);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+}
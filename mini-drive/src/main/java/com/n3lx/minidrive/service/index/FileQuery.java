@@ -0,0 +1,26 @@
+package com.n3lx.minidrive.service.index;
+
+import java.util.Set;
+
+/**
+ * Filters, sorting and pagination of a file listing, filters are applied before pagination
+ *
+ * @param prefix     Name prefix, null to list all names
+ * @param extensions Lower case extensions, empty to list all extensions
+ * @param sortField  Field by which files are sorted, files with equal values are sorted by name
+ * @param descending Whether files are sorted in descending order
+ * @param pageNumber Page number starting at 1, null to list all files
+ * @param pageSize   Page size, null to list all files
+ */
+public record FileQuery(String prefix, Set<String> extensions, SortField sortField, boolean descending,
+                        Integer pageNumber, Integer pageSize) {
+
+    public enum SortField {
+        NAME, SIZE, DATE
+    }
+
+    public boolean isPaginated() {
+        return pageNumber != null && pageSize != null;
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.n3lx.minidrive.service.index;
+
+/**
+ * File metadata kept by a {@link com.n3lx.minidrive.service.contract.FileIndex}
+ *
+ * @param name                  File name
+ * @param size                  Size in bytes
+ * @param lastModifiedTimestamp Modification time in milliseconds since epoch
+ * @param checksum              Hex encoded SHA-256 of file contents, null if not known
+ */
+public record IndexedFile(String name, long size, long lastModifiedTimestamp, String checksum) {
+}
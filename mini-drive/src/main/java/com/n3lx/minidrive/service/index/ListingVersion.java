@@ -0,0 +1,22 @@
+package com.n3lx.minidrive.service.index;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates listing versions reported by {@link com.n3lx.minidrive.service.contract.FileIndex#getVersion(Long)}.
+ * Versions are never reused, not even by an index that has been rebuilt or by another run of the application
+ */
+public final class ListingVersion {
+
+    private static final String startupId = Long.toHexString(System.currentTimeMillis());
+
+    private static final AtomicLong sequence = new AtomicLong();
+
+    private ListingVersion() {
+    }
+
+    public static String next() {
+        return startupId + "-" + Long.toHexString(sequence.incrementAndGet());
+    }
+
+}
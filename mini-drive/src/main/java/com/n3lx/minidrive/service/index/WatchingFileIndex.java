@@ -0,0 +1,382 @@
+package com.n3lx.minidrive.service.index;
+
+import com.n3lx.minidrive.service.contract.FileIndex;
+import com.n3lx.minidrive.service.storage.StorageLayout;
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory file index, built lazily for each owner when their files are listed for the first time.
+ * <p>
+ * Changes made by the application are applied through {@link #refresh(Long, String)}, changes made directly
+ * in the file system are picked up by a {@link WatchService} registered for every indexed directory and its shard
+ * directories. Indexes are dropped whenever events might have been lost and rebuilt on the next listing. Number
+ * of indexed owners is bounded, least recently listed indexes are dropped first.
+ */
+@Component
+@ConditionalOnProperty(name = "app.fileStorage.index.type", havingValue = "memory", matchIfMissing = true)
+@Slf4j
+public class WatchingFileIndex implements FileIndex {
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    @Autowired
+    StorageLayout storageLayout;
+
+    private final Map<Long, OwnerIndex> ownerIndexes = new ConcurrentHashMap<>();
+
+    private final Map<WatchKey, OwnerIndex> ownerIndexesByWatchKey = new ConcurrentHashMap<>();
+
+    private WatchService watchService;
+
+    private Thread watchThread;
+
+    @PostConstruct
+    private void init() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        watchThread = new Thread(this::processEvents, "file-index-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    @PreDestroy
+    private void shutdown() throws IOException {
+        watchThread.interrupt();
+        watchService.close();
+    }
+
+    @Override
+    public List<IndexedFile> listFiles(Long ownerId) {
+        var ownerIndex = getOwnerIndex(ownerId);
+        if (ownerIndex == null) {
+            return List.of();
+        }
+        return new ArrayList<>(ownerIndex.files.values());
+    }
+
+    @Override
+    public List<IndexedFile> listFilesAfter(Long ownerId, String after, int limit) {
+        var ownerIndex = getOwnerIndex(ownerId);
+        if (ownerIndex == null) {
+            return List.of();
+        }
+        var remainingFiles = after != null ? ownerIndex.files.tailMap(after, false) : ownerIndex.files;
+        return remainingFiles.values().stream()
+                .limit(limit)
+                .toList();
+    }
+
+    @Override
+    public List<IndexedFile> search(Long ownerId, FileQuery query) {
+        var ownerIndex = getOwnerIndex(ownerId);
+        if (ownerIndex == null || (query.isPaginated() && (query.pageNumber() < 1 || query.pageSize() < 1))) {
+            return List.of();
+        }
+
+        Comparator<IndexedFile> comparator = switch (query.sortField()) {
+            case NAME -> Comparator.comparing(IndexedFile::name);
+            case SIZE -> Comparator.comparingLong(IndexedFile::size).thenComparing(IndexedFile::name);
+            case DATE -> Comparator.comparingLong(IndexedFile::lastModifiedTimestamp).thenComparing(IndexedFile::name);
+        };
+        if (query.descending()) {
+            comparator = comparator.reversed();
+        }
+        //Files are already sorted by name, a prefix selects a continuous range of them
+        var candidates = query.prefix() != null
+                ? ownerIndex.files.tailMap(query.prefix(), true).values().stream()
+                .takeWhile(file -> file.name().startsWith(query.prefix()))
+                : ownerIndex.files.values().stream();
+        var files = candidates
+                .filter(file -> query.extensions().isEmpty() || query.extensions().contains(getExtension(file.name())))
+                .sorted(comparator);
+        if (query.isPaginated()) {
+            files = files.skip((long) (query.pageNumber() - 1) * query.pageSize()).limit(query.pageSize());
+        }
+        return files.toList();
+    }
+
+    @Override
+    public IndexedFile findByChecksum(Long ownerId, String checksum) {
+        var ownerIndex = getOwnerIndex(ownerId);
+        return ownerIndex != null ? ownerIndex.findByChecksum(checksum) : null;
+    }
+
+    /**
+     * Index of the owner is built if necessary, as changes are only observed while the index exists.
+     * Rebuilt index starts with a new version, since changes made while it did not exist are not known
+     */
+    @Override
+    public String getVersion(Long ownerId) {
+        var ownerIndex = getOwnerIndex(ownerId);
+        return ownerIndex != null ? ownerIndex.version : "";
+    }
+
+    @Override
+    public void refresh(Long ownerId, String filename) {
+        var ownerIndex = ownerIndexes.get(ownerId);
+        if (ownerIndex != null) {
+            ownerIndex.refresh(filename);
+        }
+    }
+
+    private OwnerIndex getOwnerIndex(Long ownerId) {
+        var ownerIndex = ownerIndexes.get(ownerId);
+        if (ownerIndex == null) {
+            ownerIndex = ownerIndexes.computeIfAbsent(ownerId, this::buildIndex);
+            if (ownerIndex == null) {
+                return null;
+            }
+            evictOverLimit();
+        }
+        ownerIndex.touch();
+        return ownerIndex;
+    }
+
+    /**
+     * Registers directories for changes before reading them, so that no change made in the meantime is lost.
+     * Called at most once at a time for a given owner, so a directory is never registered twice
+     *
+     * @return Index of the owner or null if the owner has no directory yet
+     */
+    private OwnerIndex buildIndex(Long ownerId) {
+        var userDirectoryPath = storageLayout.getUserDirectory(ownerId);
+        if (!Files.isDirectory(userDirectoryPath)) {
+            return null;
+        }
+
+        var ownerIndex = new OwnerIndex(ownerId, userDirectoryPath);
+        try {
+            ownerIndex.build();
+        } catch (IOException | ClosedWatchServiceException e) {
+            log.debug("Could not index directory " + userDirectoryPath, e);
+            ownerIndex.discard();
+            return null;
+        }
+        log.debug("Indexed " + ownerIndex.files.size() + " files of user " + ownerId);
+        return ownerIndex;
+    }
+
+    private void evictOverLimit() {
+        var overLimit = ownerIndexes.size() - propertiesUtil.getMaxIndexedOwners();
+        if (overLimit <= 0) {
+            return;
+        }
+        ownerIndexes.values().stream()
+                .sorted(Comparator.comparingLong(ownerIndex -> ownerIndex.lastAccessTimestamp))
+                .limit(overLimit)
+                .forEach(this::invalidate);
+    }
+
+    private void invalidate(OwnerIndex ownerIndex) {
+        ownerIndexes.remove(ownerIndex.ownerId, ownerIndex);
+        ownerIndex.discard();
+    }
+
+    private void processEvents() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey watchKey;
+            try {
+                watchKey = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            var ownerIndex = ownerIndexesByWatchKey.get(watchKey);
+            if (ownerIndex == null) {
+                //Index is not registered yet, its directory has not been read so the events can be skipped
+                watchKey.pollEvents();
+                watchKey.reset();
+                continue;
+            }
+
+            var directoryPath = (Path) watchKey.watchable();
+            for (var event : watchKey.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    log.debug("File index of user " + ownerIndex.ownerId + " lost events and will be rebuilt");
+                    invalidate(ownerIndex);
+                    break;
+                }
+                var entryPath = directoryPath.resolve((Path) event.context());
+                if (storageLayout.isShardDirectory(ownerIndex.directoryPath, entryPath)) {
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        ownerIndex.addDirectory(entryPath);
+                    }
+                } else if (storageLayout.containsFiles(ownerIndex.directoryPath, directoryPath)) {
+                    ownerIndex.refresh(event.context().toString());
+                }
+            }
+            if (!watchKey.reset()) {
+                if (directoryPath.equals(ownerIndex.directoryPath)) {
+                    //Directory is no longer accessible, most likely it has been removed
+                    invalidate(ownerIndex);
+                } else {
+                    //Removed shard directory, its files have already been reported as deleted
+                    ownerIndex.watchKeys.remove(watchKey);
+                    ownerIndexesByWatchKey.remove(watchKey);
+                }
+            }
+        }
+    }
+
+    private String getExtension(String filename) {
+        var extension = StringUtils.getFilenameExtension(filename);
+        return extension != null ? extension.toLowerCase(Locale.ROOT) : "";
+    }
+
+    private class OwnerIndex {
+
+        private final Long ownerId;
+
+        private final Path directoryPath;
+
+        private final ConcurrentSkipListMap<String, IndexedFile> files = new ConcurrentSkipListMap<>();
+
+        /**
+         * Names of files with a given checksum, kept in sync with files by {@link #update(String)}
+         */
+        private final Map<String, Set<String>> namesByChecksum = new ConcurrentHashMap<>();
+
+        private final Set<WatchKey> watchKeys = ConcurrentHashMap.newKeySet();
+
+        private volatile long lastAccessTimestamp = System.currentTimeMillis();
+
+        private volatile String version = ListingVersion.next();
+
+        OwnerIndex(Long ownerId, Path directoryPath) {
+            this.ownerId = ownerId;
+            this.directoryPath = directoryPath;
+        }
+
+        void touch() {
+            lastAccessTimestamp = System.currentTimeMillis();
+        }
+
+        /**
+         * Entries are read and written under the same lock as refreshes triggered by events,
+         * so a file removed while the directory is being read can not be added back afterwards
+         */
+        synchronized void build() throws IOException {
+            register(directoryPath);
+            for (var filePath : storageLayout.listFiles(directoryPath, directoryPath)) {
+                update(filePath.getFileName().toString());
+            }
+        }
+
+        /**
+         * Registers a newly created shard directory and indexes files that were created in it before registration
+         */
+        synchronized void addDirectory(Path shardDirectoryPath) {
+            try {
+                register(shardDirectoryPath);
+                for (var filePath : storageLayout.listFiles(directoryPath, shardDirectoryPath)) {
+                    update(filePath.getFileName().toString());
+                }
+            } catch (IOException | ClosedWatchServiceException e) {
+                log.debug("Could not index directory " + shardDirectoryPath + ", file index of user "
+                        + ownerId + " will be rebuilt", e);
+                invalidate(this);
+            }
+        }
+
+        /**
+         * Registers a directory and its shard directories
+         */
+        private void register(Path startDirectoryPath) throws IOException {
+            for (var registeredPath : storageLayout.listDirectories(directoryPath, startDirectoryPath)) {
+                var watchKey = registeredPath.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watchKeys.add(watchKey);
+                ownerIndexesByWatchKey.put(watchKey, this);
+            }
+        }
+
+        synchronized void refresh(String filename) {
+            try {
+                update(filename);
+            } catch (IOException e) {
+                log.debug("Could not read attributes of " + filename + ", file index of user "
+                        + ownerId + " will be rebuilt", e);
+                invalidate(this);
+            }
+        }
+
+        IndexedFile findByChecksum(String checksum) {
+            var names = namesByChecksum.get(checksum);
+            if (names == null) {
+                return null;
+            }
+            //Both maps are read without the lock, a file may have changed after its name was found
+            for (var name : names) {
+                var file = files.get(name);
+                if (file != null && checksum.equals(file.checksum())) {
+                    return file;
+                }
+            }
+            return null;
+        }
+
+        private void update(String filename) throws IOException {
+            if (!directoryPath.equals(directoryPath.resolve(filename).getParent())) {
+                return;
+            }
+            var filePath = storageLayout.resolve(ownerId, filename);
+            try {
+                var attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+                var file = new IndexedFile(filename, attributes.size(),
+                        attributes.lastModifiedTime().toMillis(), ChecksumAttributes.read(filePath, attributes));
+                var previousFile = files.put(filename, file);
+                if (!file.equals(previousFile)) {
+                    removeChecksum(previousFile);
+                    if (file.checksum() != null) {
+                        namesByChecksum.computeIfAbsent(file.checksum(), checksum -> ConcurrentHashMap.newKeySet())
+                                .add(filename);
+                    }
+                    version = ListingVersion.next();
+                }
+            } catch (NoSuchFileException e) {
+                var previousFile = files.remove(filename);
+                if (previousFile != null) {
+                    removeChecksum(previousFile);
+                    version = ListingVersion.next();
+                }
+            }
+        }
+
+        private void removeChecksum(IndexedFile file) {
+            if (file == null || file.checksum() == null) {
+                return;
+            }
+            namesByChecksum.computeIfPresent(file.checksum(), (checksum, names) -> {
+                names.remove(file.name());
+                return names.isEmpty() ? null : names;
+            });
+        }
+
+        void discard() {
+            for (var watchKey : watchKeys) {
+                watchKey.cancel();
+                ownerIndexesByWatchKey.remove(watchKey);
+            }
+        }
+
+    }
+
+}
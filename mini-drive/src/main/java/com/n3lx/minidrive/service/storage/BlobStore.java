@@ -0,0 +1,281 @@
+package com.n3lx.minidrive.service.storage;
+
+import com.n3lx.minidrive.service.index.ChecksumAttributes;
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Content addressed store that keeps a single copy of identical files.
+ * <p>
+ * Every unique content is kept once as a blob named after its SHA-256 checksum, files of users are hard links
+ * to their blobs. Links are the mapping between file names and blobs and the link count of a blob is its reference
+ * count, so deleting or renaming a file needs no bookkeeping. Blobs no longer linked by any file are removed
+ * by a periodic garbage collection. The application never modifies files in place, but files can be changed
+ * directly in the file system, which changes the blob and every file linked to it. A blob is therefore only trusted
+ * while its checksum attribute is still valid, a modified blob is removed from the store before anything else is
+ * linked to it.
+ * <p>
+ * Requires a file system with hard links and the unix attribute view, deduplication is disabled otherwise.
+ */
+@Component
+@Slf4j
+public class BlobStore {
+
+    private static final String linkCountAttribute = "unix:nlink";
+
+    private static final String temporaryDirName = "tmp";
+
+    private static final int shardNameLength = 2;
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    /**
+     * Guards blobs being removed by the garbage collection against links being created to them at the same time
+     */
+    private final ReadWriteLock blobLock = new ReentrantReadWriteLock();
+
+    private volatile boolean isEnabled;
+
+    @PostConstruct
+    private void init() {
+        isEnabled = propertiesUtil.isBlobStoreEnabled()
+                && FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+        if (propertiesUtil.isBlobStoreEnabled() && !isEnabled) {
+            log.warn("File system does not support hard links, files will not be deduplicated");
+        }
+
+        //Links left behind by a previous run are not referenced by any file
+        var temporaryDirectoryPath = generatePathToTemporaryDirectory();
+        if (Files.isDirectory(temporaryDirectoryPath)) {
+            try (var linkPaths = Files.newDirectoryStream(temporaryDirectoryPath)) {
+                for (var linkPath : linkPaths) {
+                    Files.deleteIfExists(linkPath);
+                }
+            } catch (IOException e) {
+                log.warn("Could not remove temporary links from " + temporaryDirectoryPath, e);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     * Replaces a newly written file with a link to an existing blob with the same contents, or registers the file
+     * as a new blob. Failures are not propagated, the file simply keeps its own copy of the contents
+     *
+     * @param filePath Path of a file that has just been stored, it is replaced atomically so readers see either
+     *                 its own copy or the blob with the same contents
+     * @param checksum SHA-256 checksum of the file as a hexadecimal string
+     * @return Whether the file has been replaced with a link to an existing blob, in which case it has taken over
+     * attributes of the blob such as its modification time
+     */
+    public boolean deduplicate(Path filePath, String checksum) {
+        if (!isEnabled || !isValidChecksum(checksum)) {
+            return false;
+        }
+        var blobPath = generateBlobPath(checksum);
+        blobLock.readLock().lock();
+        try {
+            if (linkToExistingBlob(filePath, blobPath, checksum)) {
+                log.debug("File " + filePath + " linked to existing blob " + checksum);
+                return true;
+            }
+            Files.createDirectories(blobPath.getParent());
+            try {
+                Files.createLink(blobPath, filePath);
+                return false;
+            } catch (FileAlreadyExistsException e) {
+                //Same contents stored concurrently
+                return linkToExistingBlob(filePath, blobPath, checksum);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            log.debug("Could not deduplicate file " + filePath, e);
+            return false;
+        } finally {
+            blobLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Creates a file linked to an existing blob, so that contents already known to the store are not transferred again
+     *
+     * @param targetPath Path of a file that does not exist yet
+     * @return Whether the file has been created, false if there is no blob with a given checksum and size
+     */
+    public boolean linkBlob(String checksum, long size, Path targetPath) throws IOException {
+        if (!isEnabled || !isValidChecksum(checksum)) {
+            return false;
+        }
+        var blobPath = generateBlobPath(checksum);
+        blobLock.readLock().lock();
+        try {
+            var blobAttributes = readValidBlobAttributes(blobPath, checksum);
+            if (blobAttributes == null || blobAttributes.size() != size) {
+                return false;
+            }
+            Files.createLink(targetPath, blobPath);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } finally {
+            blobLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes blobs that are not linked by any file
+     *
+     * @return Number of removed blobs
+     */
+    @Scheduled(fixedRate = PropertiesUtil.blobGarbageCollectionIntervalInSeconds * 1000)
+    public int collectGarbage() {
+        var blobDirectoryPath = generatePathToBlobDirectory();
+        if (!isEnabled || !Files.isDirectory(blobDirectoryPath)) {
+            return 0;
+        }
+
+        var removedBlobs = 0;
+        try (var shardDirectoryPaths = Files.newDirectoryStream(blobDirectoryPath, this::isShardDirectory)) {
+            for (var shardDirectoryPath : shardDirectoryPaths) {
+                try (var nestedShardDirectoryPaths = Files.newDirectoryStream(shardDirectoryPath,
+                        this::isShardDirectory)) {
+                    for (var nestedShardDirectoryPath : nestedShardDirectoryPaths) {
+                        removedBlobs += collectGarbage(nestedShardDirectoryPath);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not collect unreferenced blobs", e);
+        }
+        log.info("Blob garbage collection complete, removed blob count: " + removedBlobs);
+        return removedBlobs;
+    }
+
+    private int collectGarbage(Path shardDirectoryPath) throws IOException {
+        var removedBlobs = 0;
+        try (var blobPaths = Files.newDirectoryStream(shardDirectoryPath)) {
+            for (var blobPath : blobPaths) {
+                blobLock.writeLock().lock();
+                try {
+                    if ((int) Files.getAttribute(blobPath, linkCountAttribute, LinkOption.NOFOLLOW_LINKS) <= 1) {
+                        Files.delete(blobPath);
+                        removedBlobs++;
+                    }
+                } catch (NoSuchFileException ignored) {
+                } finally {
+                    blobLock.writeLock().unlock();
+                }
+            }
+        }
+        return removedBlobs;
+    }
+
+    /**
+     * The blob is linked under a temporary name first and then moved over the file, so the file is replaced
+     * atomically and its own copy is kept if the blob has just been removed
+     *
+     * @return Whether the file has been replaced with a link to the blob
+     */
+    private boolean linkToExistingBlob(Path filePath, Path blobPath, String checksum) throws IOException {
+        var blobAttributes = readValidBlobAttributes(blobPath, checksum);
+        if (blobAttributes == null || blobAttributes.size() != Files.size(filePath)) {
+            return false;
+        }
+        var temporaryDirectoryPath = generatePathToTemporaryDirectory();
+        Files.createDirectories(temporaryDirectoryPath);
+        var linkPath = temporaryDirectoryPath.resolve(UUID.randomUUID().toString());
+        try {
+            Files.createLink(linkPath, blobPath);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        try {
+            Files.move(linkPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(linkPath);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * @return Attributes of the blob, null if there is no blob or it no longer has the given checksum
+     */
+    private BasicFileAttributes readValidBlobAttributes(Path blobPath, String checksum) throws IOException {
+        BasicFileAttributes blobAttributes;
+        try {
+            blobAttributes = Files.readAttributes(blobPath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (checksum.equals(ChecksumAttributes.read(blobPath, blobAttributes))) {
+            return blobAttributes;
+        }
+        evict(blobPath, blobAttributes);
+        return null;
+    }
+
+    /**
+     * Removes a modified blob from the store, files linked to it keep their contents. A blob registered again
+     * in the meantime is a different file and is kept
+     */
+    private void evict(Path blobPath, BasicFileAttributes blobAttributes) throws IOException {
+        try {
+            var currentAttributes = Files.readAttributes(blobPath, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            if (Objects.equals(currentAttributes.fileKey(), blobAttributes.fileKey())) {
+                Files.delete(blobPath);
+                log.warn("Blob " + blobPath.getFileName() + " no longer matches its checksum and has been removed");
+            }
+        } catch (NoSuchFileException ignored) {
+        }
+    }
+
+    private boolean isValidChecksum(String checksum) {
+        try {
+            return checksum != null && checksum.length() == 64 && HexFormat.of().parseHex(checksum) != null;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private boolean isShardDirectory(Path path) {
+        return path.getFileName().toString().length() == shardNameLength && Files.isDirectory(path);
+    }
+
+    private Path generateBlobPath(String checksum) {
+        return generatePathToBlobDirectory()
+                .resolve(checksum.substring(0, shardNameLength))
+                .resolve(checksum.substring(shardNameLength, 2 * shardNameLength))
+                .resolve(checksum);
+    }
+
+    private Path generatePathToTemporaryDirectory() {
+        return generatePathToBlobDirectory().resolve(temporaryDirName);
+    }
+
+    private Path generatePathToBlobDirectory() {
+        return Paths
+                .get(propertiesUtil.getRootDirAbsolutePath())
+                .normalize()
+                .resolve(propertiesUtil.getBlobDirName())
+                .toAbsolutePath();
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.n3lx.minidrive.service.storage;
+
+import org.springframework.core.io.UrlResource;
+
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * File resource served from {@link FileContentCache}. The file itself can still be accessed through
+ * {@link #getFile()}, contents, size and modification time are taken from the cache without touching the file system
+ */
+public class CachedFileResource extends UrlResource {
+
+    private final ByteBuffer contents;
+
+    private final BasicFileAttributes attributes;
+
+    CachedFileResource(Path filePath, ByteBuffer contents, BasicFileAttributes attributes) {
+        super(toUrl(filePath));
+        this.contents = contents;
+        this.attributes = attributes;
+    }
+
+    /**
+     * @return Read-only view of file contents, positioned at the start of the file
+     */
+    public ByteBuffer getContents() {
+        return contents.duplicate();
+    }
+
+    /**
+     * @return Attributes of the file at the time it was cached
+     */
+    public BasicFileAttributes getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return contents.capacity();
+    }
+
+    @Override
+    public long lastModified() {
+        return attributes.lastModifiedTime().toMillis();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        var buffer = getContents();
+        return new InputStream() {
+
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) {
+                if (length == 0) {
+                    return 0;
+                }
+                if (!buffer.hasRemaining()) {
+                    return -1;
+                }
+                var readBytes = Math.min(length, buffer.remaining());
+                buffer.get(bytes, offset, readBytes);
+                return readBytes;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+
+        };
+    }
+
+    private static URL toUrl(Path filePath) {
+        try {
+            return filePath.toUri().toURL();
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+package com.n3lx.minidrive.service.storage;
+
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Makes files written to a temporary location visible under their final names, so that an interrupted write
+ * never leaves a truncated file in the owner's storage.
+ * <p>
+ * Durability of committed files depends on the configured mode:
+ * <ul>
+ *     <li>none - contents are left in the page cache and written out by the operating system</li>
+ *     <li>file - contents of every file are flushed before it is moved and its directory is flushed afterwards</li>
+ *     <li>group - same guarantees as file, contents are flushed by the committing threads concurrently, but
+ *     directory flushes are performed by a single thread. Commits arriving while a directory flush is running
+ *     are collected and share the next flush, each directory is flushed once per flush regardless of the number
+ *     of files moved into it</li>
+ * </ul>
+ * Callers are blocked until their commit is durable in both file and group mode.
+ */
+@Component
+@Slf4j
+public class FileCommitter {
+
+    private static final String noneMode = "none";
+
+    private static final String fileMode = "file";
+
+    private static final String groupMode = "group";
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    private final BlockingQueue<PendingSync> pendingSyncs = new LinkedBlockingQueue<>();
+
+    private String mode;
+
+    private boolean isLinkSupported;
+
+    private Thread syncThread;
+
+    @PostConstruct
+    private void init() {
+        mode = propertiesUtil.getDurabilityMode().toLowerCase(Locale.ROOT);
+        if (!List.of(noneMode, fileMode, groupMode).contains(mode)) {
+            throw new IllegalStateException("Unknown durability mode " + propertiesUtil.getDurabilityMode()
+                    + ", expected one of none, file, group");
+        }
+        isLinkSupported = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+        if (groupMode.equals(mode)) {
+            syncThread = new Thread(this::processSyncs, "file-sync");
+            syncThread.setDaemon(true);
+            syncThread.start();
+        }
+        log.info("Files are committed with durability mode " + mode);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        if (syncThread != null) {
+            syncThread.interrupt();
+        }
+    }
+
+    /**
+     * Flushes contents of a temporary file and moves it to its final location on the same file system, other users
+     * never see a partially written file
+     *
+     * @param replaceExisting Whether an existing file is replaced, commit fails with
+     *                        {@link FileAlreadyExistsException} otherwise
+     */
+    public void commit(Path temporaryPath, Path targetPath, boolean replaceExisting) throws IOException {
+        if (!noneMode.equals(mode)) {
+            //Flush applies to the file itself, not only to the data written through a given channel
+            try (var fileChannel = FileChannel.open(temporaryPath, StandardOpenOption.READ)) {
+                fileChannel.force(true);
+            }
+        }
+        Files.createDirectories(targetPath.getParent());
+        if (replaceExisting) {
+            Files.move(temporaryPath, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else if (isLinkSupported) {
+            //Atomic rename replaces existing files, a hard link is created only if the name is free
+            Files.createLink(targetPath, temporaryPath);
+            Files.delete(temporaryPath);
+        } else {
+            if (Files.exists(targetPath, LinkOption.NOFOLLOW_LINKS)) {
+                throw new FileAlreadyExistsException(targetPath.toString());
+            }
+            Files.move(temporaryPath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+        }
+        syncDirectory(targetPath.getParent());
+    }
+
+    /**
+     * Flushes a directory after an entry has been created or moved into it
+     */
+    public void syncDirectory(Path directoryPath) throws IOException {
+        switch (mode) {
+            case fileMode -> forceDirectory(directoryPath);
+            case groupMode -> awaitSync(directoryPath);
+        }
+    }
+
+    private void awaitSync(Path directoryPath) throws IOException {
+        var pendingSync = new PendingSync(directoryPath, new CompletableFuture<>());
+        pendingSyncs.add(pendingSync);
+        try {
+            pendingSync.result().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a flush");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void processSyncs() {
+        var batch = new ArrayList<PendingSync>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(pendingSyncs.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            //Requests that arrived during the previous flush share this one
+            pendingSyncs.drainTo(batch);
+
+            var directoryResults = new LinkedHashMap<Path, List<CompletableFuture<Void>>>();
+            for (var pendingSync : batch) {
+                directoryResults.computeIfAbsent(pendingSync.directoryPath(), path -> new ArrayList<>())
+                        .add(pendingSync.result());
+            }
+            for (var entry : directoryResults.entrySet()) {
+                try {
+                    forceDirectory(entry.getKey());
+                    entry.getValue().forEach(result -> result.complete(null));
+                } catch (IOException | RuntimeException e) {
+                    entry.getValue().forEach(result -> result.completeExceptionally(e));
+                }
+            }
+            log.trace("Flushed " + directoryResults.size() + " directories for " + batch.size() + " commits at once");
+            batch.clear();
+        }
+
+        //Waiting callers are released so that shutdown is not blocked
+        pendingSyncs.drainTo(batch);
+        batch.forEach(pendingSync -> pendingSync.result()
+                .completeExceptionally(new InterruptedIOException("File sync has been stopped")));
+    }
+
+    /**
+     * Some platforms do not allow directories to be opened or flushed, entries are then made durable
+     * by the file system itself
+     */
+    private void forceDirectory(Path directoryPath) throws IOException {
+        try (var directoryChannel = FileChannel.open(directoryPath, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (AccessDeniedException | UnsupportedOperationException e) {
+            log.trace("Directory " + directoryPath + " can not be flushed", e);
+        }
+    }
+
+    private record PendingSync(Path directoryPath, CompletableFuture<Void> result) {
+    }
+
+}
@@ -0,0 +1,250 @@
+package com.n3lx.minidrive.service.storage;
+
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps contents of small, frequently downloaded files in direct buffers outside of the heap, so that repeated
+ * downloads neither open nor read the file and cached contents do not add to garbage collection work.
+ * <p>
+ * Total size of cached contents is bounded, least recently used files are evicted first. Entries are invalidated
+ * by the storage service whenever a file is written, replaced, renamed or deleted. Changes made directly in the file
+ * system are noticed by comparing size, modification time and file key of the file with the cached ones on every
+ * hit, which costs a single stat instead of opening and reading the file. Hits, misses, evictions and the cached
+ * size are published as metrics.
+ * <p>
+ * Buffers of evicted entries are only freed once the garbage collector finds them unreachable, so the limit applies
+ * to all allocated buffers rather than to cached ones. Files are not cached while memory of evicted entries
+ * has not been freed yet.
+ */
+@Component
+@Slf4j
+public class FileContentCache {
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /**
+     * Releases accounted memory of buffers that have been collected
+     */
+    private static final Cleaner cleaner = Cleaner.create();
+
+    private final LinkedHashMap<CacheKey, CachedContents> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Contents read while a file was being invalidated might be outdated, they are not cached if this counter
+     * changes while they are being read
+     */
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private long cachedBytes;
+
+    /**
+     * Size of all buffers that have not been freed yet, including buffers of evicted entries
+     */
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    @PostConstruct
+    private void init() {
+        FunctionCounter.builder("minidrive.read.cache.requests", hits, LongAdder::sum)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("minidrive.read.cache.requests", misses, LongAdder::sum)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("minidrive.read.cache.evictions", evictions, LongAdder::sum)
+                .register(meterRegistry);
+        Gauge.builder("minidrive.read.cache.size", this, FileContentCache::getCachedBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("minidrive.read.cache.allocated", allocatedBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return Cached contents of a file or null if the file is not cached or has changed since it was cached
+     */
+    public CachedFileResource get(Long ownerId, String filename) {
+        if (!propertiesUtil.isReadCacheEnabled()) {
+            return null;
+        }
+        var cacheKey = new CacheKey(ownerId, filename);
+        CachedContents contents;
+        synchronized (this) {
+            contents = entries.get(cacheKey);
+        }
+        if (contents != null && !isUnchanged(contents)) {
+            synchronized (this) {
+                if (entries.remove(cacheKey, contents)) {
+                    cachedBytes -= contents.buffer().capacity();
+                }
+            }
+            contents = null;
+        }
+        if (contents == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new CachedFileResource(contents.filePath(), contents.buffer(), contents.attributes());
+    }
+
+    /**
+     * Reads a file into the cache if it is small enough
+     *
+     * @return Cached contents of the file or null if the file is not cached
+     */
+    public CachedFileResource put(Long ownerId, String filename, Path filePath) {
+        if (!propertiesUtil.isReadCacheEnabled()) {
+            return null;
+        }
+        var expectedInvalidationCount = invalidationCount.get();
+        ByteBuffer buffer;
+        BasicFileAttributes attributes;
+        try {
+            //Files that are too large are not opened
+            attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+            if (attributes.size() > propertiesUtil.getReadCacheMaxFileSizeInBytes()) {
+                return null;
+            }
+            synchronized (this) {
+                evictOverflow(attributes.size());
+            }
+            buffer = allocate((int) attributes.size());
+            if (buffer == null) {
+                return null;
+            }
+            try (var fileChannel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+                while (buffer.hasRemaining()) {
+                    if (fileChannel.read(buffer) < 0) {
+                        //File has been truncated in the meantime
+                        return null;
+                    }
+                }
+                if (fileChannel.size() != attributes.size()) {
+                    //File has grown in the meantime
+                    return null;
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Could not read file " + filePath + " into the read cache", e);
+            return null;
+        }
+        var contents = new CachedContents(filePath, buffer.flip().asReadOnlyBuffer(), attributes);
+
+        synchronized (this) {
+            if (invalidationCount.get() == expectedInvalidationCount) {
+                var previousContents = entries.put(new CacheKey(ownerId, filename), contents);
+                if (previousContents != null) {
+                    cachedBytes -= previousContents.buffer().capacity();
+                }
+                cachedBytes += buffer.capacity();
+                evictOverflow(0);
+            }
+        }
+        return new CachedFileResource(filePath, contents.buffer(), attributes);
+    }
+
+    public void invalidate(Long ownerId, String filename) {
+        invalidationCount.incrementAndGet();
+        synchronized (this) {
+            var contents = entries.remove(new CacheKey(ownerId, filename));
+            if (contents != null) {
+                cachedBytes -= contents.buffer().capacity();
+            }
+        }
+    }
+
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    /**
+     * @return Whether the file still has the size, modification time and identity it had when it was cached
+     */
+    private boolean isUnchanged(CachedContents contents) {
+        try {
+            var attributes = Files.readAttributes(contents.filePath(), BasicFileAttributes.class);
+            var cachedAttributes = contents.attributes();
+            return attributes.size() == cachedAttributes.size()
+                    && attributes.lastModifiedTime().equals(cachedAttributes.lastModifiedTime())
+                    && Objects.equals(attributes.fileKey(), cachedAttributes.fileKey());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Allocates a buffer only if all buffers that have not been freed yet leave room for it
+     *
+     * @return Direct buffer of a given size or null if there is no room for it
+     */
+    private ByteBuffer allocate(int size) {
+        var maxSize = propertiesUtil.getReadCacheMaxSizeInBytes();
+        long currentSize;
+        do {
+            currentSize = allocatedBytes.get();
+            if (currentSize + size > maxSize) {
+                log.debug("Buffers of evicted read cache entries have not been freed yet, file is not cached");
+                return null;
+            }
+        } while (!allocatedBytes.compareAndSet(currentSize, currentSize + size));
+        var buffer = ByteBuffer.allocateDirect(size);
+        //Memory is freed together with the buffer, views of the buffer keep it reachable
+        cleaner.register(buffer, () -> allocatedBytes.addAndGet(-size));
+        return buffer;
+    }
+
+    /**
+     * Buffers of evicted entries are released by the garbage collector once no download uses them anymore
+     *
+     * @param additionalBytes Size of contents that are about to be cached
+     */
+    private void evictOverflow(long additionalBytes) {
+        var iterator = entries.values().iterator();
+        while (cachedBytes + additionalBytes > propertiesUtil.getReadCacheMaxSizeInBytes() && iterator.hasNext()) {
+            cachedBytes -= iterator.next().buffer().capacity();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private record CacheKey(Long ownerId, String filename) {
+    }
+
+    /**
+     * @param attributes Attributes of the file at the time it was read
+     */
+    private record CachedContents(Path filePath, ByteBuffer buffer, BasicFileAttributes attributes) {
+    }
+
+}
@@ -0,0 +1,231 @@
+package com.n3lx.minidrive.service.storage;
+
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Maps file names to their locations in the storage.
+ * <p>
+ * In the flat layout every file of a user is stored directly in their directory. In the sharded layout files
+ * are spread over nested subdirectories named after consecutive two character prefixes of a hash of the file name
+ * (e.g. {@code <root>/<ownerId>/3f/a2/<filename>}), so that no directory grows large enough to slow down lookups.
+ * Files are always looked up in both locations, files stored in the other layout remain accessible
+ * until they are migrated. Only regular files are accepted in the other location, a file may be named
+ * like a shard directory.
+ */
+@Component
+@Slf4j
+public class StorageLayout {
+
+    private static final String shardedLayoutType = "sharded";
+
+    private static final int shardNameLength = 2;
+
+    /**
+     * Hash of a file name has 8 hexadecimal digits which limits the number of levels
+     */
+    private static final int maxShardLevels = 4;
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    private boolean isSharded;
+
+    private int shardLevels;
+
+    @PostConstruct
+    private void init() {
+        isSharded = shardedLayoutType.equals(propertiesUtil.getStorageLayoutType());
+        shardLevels = propertiesUtil.getStorageLayoutShardLevels();
+        if (shardLevels < 1 || shardLevels > maxShardLevels) {
+            throw new IllegalStateException("Number of shard levels has to be between 1 and " + maxShardLevels);
+        }
+        log.info("Using " + (isSharded ? "sharded storage layout with " + shardLevels + " levels" : "flat storage layout"));
+    }
+
+    public boolean isSharded() {
+        return isSharded;
+    }
+
+    public Path getRootDirectory() {
+        return Paths
+                .get(propertiesUtil.getRootDirAbsolutePath())
+                .normalize()
+                .toAbsolutePath();
+    }
+
+    public Path getUserDirectory(Long ownerId) {
+        return getRootDirectory().resolve(ownerId.toString());
+    }
+
+    /**
+     * @return Location of a file in the configured layout, new files are stored there
+     */
+    public Path getTargetPath(Long ownerId, String filename) {
+        return isSharded ? getShardedPath(ownerId, filename) : getFlatPath(ownerId, filename);
+    }
+
+    /**
+     * @return Current location of a file, or its location in the configured layout if it does not exist
+     */
+    public Path resolve(Long ownerId, String filename) {
+        var targetPath = getTargetPath(ownerId, filename);
+        if (Files.exists(targetPath, LinkOption.NOFOLLOW_LINKS)) {
+            return targetPath;
+        }
+        var alternativePath = getAlternativePath(ownerId, filename);
+        return Files.isRegularFile(alternativePath, LinkOption.NOFOLLOW_LINKS) ? alternativePath : targetPath;
+    }
+
+    /**
+     * @return Whether a file exists in any of the layouts
+     */
+    public boolean exists(Long ownerId, String filename) {
+        return Files.exists(getTargetPath(ownerId, filename), LinkOption.NOFOLLOW_LINKS)
+                || Files.isRegularFile(getAlternativePath(ownerId, filename), LinkOption.NOFOLLOW_LINKS);
+    }
+
+    public Path getFlatPath(Long ownerId, String filename) {
+        return getUserDirectory(ownerId).resolve(filename);
+    }
+
+    /**
+     * Names that do not denote a single file in the user directory are resolved as in the flat layout,
+     * so that they are rejected by path validation in the same way
+     */
+    public Path getShardedPath(Long ownerId, String filename) {
+        var userDirectoryPath = getUserDirectory(ownerId);
+        var flatPath = userDirectoryPath.resolve(filename);
+        if (!userDirectoryPath.equals(flatPath.getParent())) {
+            return flatPath;
+        }
+
+        var crc = new CRC32C();
+        crc.update(filename.getBytes(StandardCharsets.UTF_8));
+        var hash = String.format("%08x", crc.getValue());
+        var shardDirectoryPath = userDirectoryPath;
+        for (var level = 0; level < shardLevels; level++) {
+            shardDirectoryPath = shardDirectoryPath.resolve(
+                    hash.substring(level * shardNameLength, (level + 1) * shardNameLength));
+        }
+        return shardDirectoryPath.resolve(filename);
+    }
+
+    /**
+     * @return Location of a file in the layout that is not configured
+     */
+    private Path getAlternativePath(Long ownerId, String filename) {
+        return isSharded ? getFlatPath(ownerId, filename) : getShardedPath(ownerId, filename);
+    }
+
+    /**
+     * @return Whether the directory is a shard directory of any level within a given user directory
+     */
+    public boolean isShardDirectory(Path userDirectoryPath, Path directoryPath) {
+        return getShardLevel(userDirectoryPath, directoryPath) > 0;
+    }
+
+    /**
+     * @return Whether files of a given directory belong to the user, which is the case for the user directory itself
+     * and for shard directories of the last level
+     */
+    public boolean containsFiles(Path userDirectoryPath, Path directoryPath) {
+        var shardLevel = getShardLevel(userDirectoryPath, directoryPath);
+        return shardLevel == 0 || shardLevel == shardLevels;
+    }
+
+    /**
+     * Lists files of a user stored in both layouts, other entries of the user directory are skipped
+     *
+     * @return Paths of all files of a user, empty if the user has no directory
+     */
+    public List<Path> listFiles(Long ownerId) throws IOException {
+        var userDirectoryPath = getUserDirectory(ownerId);
+        if (!Files.isDirectory(userDirectoryPath)) {
+            return new ArrayList<>();
+        }
+        return listFiles(userDirectoryPath, userDirectoryPath);
+    }
+
+    /**
+     * @return Paths of files stored in a given directory of the user and in shard directories nested in it
+     */
+    public List<Path> listFiles(Path userDirectoryPath, Path startDirectoryPath) throws IOException {
+        var filePaths = new ArrayList<Path>();
+        for (var directoryPath : listDirectories(userDirectoryPath, startDirectoryPath)) {
+            if (!containsFiles(userDirectoryPath, directoryPath)) {
+                continue;
+            }
+            try (var entryPaths = Files.newDirectoryStream(directoryPath,
+                    entryPath -> !isShardDirectory(userDirectoryPath, entryPath)
+                            || !Files.isDirectory(entryPath, LinkOption.NOFOLLOW_LINKS))) {
+                entryPaths.forEach(filePaths::add);
+            } catch (NoSuchFileException ignored) {
+                //Shard directory removed while the listing is in progress
+            }
+        }
+        return filePaths;
+    }
+
+    /**
+     * Only entries with shard names are checked for being directories, so files of the user are not read
+     *
+     * @return Given directory and shard directories nested in it
+     */
+    public List<Path> listDirectories(Path userDirectoryPath, Path startDirectoryPath) throws IOException {
+        var directoryPaths = new ArrayList<Path>();
+        directoryPaths.add(startDirectoryPath);
+        if (getShardLevel(userDirectoryPath, startDirectoryPath) >= shardLevels) {
+            return directoryPaths;
+        }
+        try (var entryPaths = Files.newDirectoryStream(startDirectoryPath,
+                entryPath -> isShardDirectory(userDirectoryPath, entryPath)
+                        && Files.isDirectory(entryPath, LinkOption.NOFOLLOW_LINKS))) {
+            for (var entryPath : entryPaths) {
+                directoryPaths.addAll(listDirectories(userDirectoryPath, entryPath));
+            }
+        } catch (NoSuchFileException ignored) {
+            //Shard directory removed while the listing is in progress
+        }
+        return directoryPaths;
+    }
+
+    /**
+     * @return 0 for the user directory, level of a shard directory or -1 if the directory is neither of them
+     */
+    private int getShardLevel(Path userDirectoryPath, Path directoryPath) {
+        if (!directoryPath.startsWith(userDirectoryPath)) {
+            return -1;
+        }
+        var relativePath = userDirectoryPath.relativize(directoryPath);
+        if (relativePath.toString().isEmpty()) {
+            return 0;
+        }
+        if (relativePath.getNameCount() > shardLevels) {
+            return -1;
+        }
+        for (var name : relativePath) {
+            if (!isShardName(name.toString())) {
+                return -1;
+            }
+        }
+        return relativePath.getNameCount();
+    }
+
+    private boolean isShardName(String name) {
+        return name.length() == shardNameLength
+                && name.chars().allMatch(character -> (character >= '0' && character <= '9')
+                || (character >= 'a' && character <= 'f'));
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.n3lx.minidrive.service.storage;
+
+import com.n3lx.minidrive.service.contract.FileIndex;
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.UUID;
+
+/**
+ * Moves files stored in the flat layout into shard directories while the application is running.
+ * <p>
+ * Every run moves a limited number of files so that storage stays responsive, files are renamed within the same
+ * file system and remain accessible at any point of the migration. Runs only when the sharded layout is configured.
+ * <p>
+ * Files named like shard directories are moved first, as they block shard directories of other files.
+ * A file whose own shard directory would replace it is moved aside for the duration of the move.
+ */
+@Component
+@Slf4j
+public class StorageLayoutMigrator {
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    @Autowired
+    StorageLayout storageLayout;
+
+    @Autowired
+    FileIndex fileIndex;
+
+    @Autowired
+    FileContentCache fileContentCache;
+
+    /**
+     * @return Number of migrated files
+     */
+    @Scheduled(fixedRate = PropertiesUtil.storageLayoutMigrationIntervalInSeconds * 1000)
+    public int migrate() {
+        if (!storageLayout.isSharded()) {
+            return 0;
+        }
+        var rootPath = storageLayout.getRootDirectory();
+        if (!Files.isDirectory(rootPath)) {
+            return 0;
+        }
+
+        var batchSize = propertiesUtil.getStorageLayoutMigrationBatchSize();
+        var migratedFiles = 0;
+        try (var userDirectoryPaths = Files.newDirectoryStream(rootPath, Files::isDirectory)) {
+            for (var userDirectoryPath : userDirectoryPaths) {
+                var ownerId = parseOwnerId(userDirectoryPath.getFileName().toString());
+                if (ownerId == null) {
+                    continue;
+                }
+                migratedFiles += migrateFiles(ownerId, userDirectoryPath, true, batchSize - migratedFiles);
+                migratedFiles += migrateFiles(ownerId, userDirectoryPath, false, batchSize - migratedFiles);
+                if (migratedFiles >= batchSize) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not migrate files into the sharded storage layout", e);
+        }
+
+        if (migratedFiles > 0) {
+            log.info("Storage layout migration run complete, moved file count: " + migratedFiles);
+        }
+        return migratedFiles;
+    }
+
+    /**
+     * @param shardNamed Whether to migrate only files named like shard directories, or only the other files
+     * @return Number of migrated files
+     */
+    private int migrateFiles(Long ownerId, Path userDirectoryPath, boolean shardNamed, int maxFiles)
+            throws IOException {
+        var migratedFiles = 0;
+        try (var filePaths = Files.newDirectoryStream(userDirectoryPath,
+                entryPath -> !Files.isDirectory(entryPath, LinkOption.NOFOLLOW_LINKS)
+                        && storageLayout.isShardDirectory(userDirectoryPath, entryPath) == shardNamed)) {
+            for (var filePath : filePaths) {
+                if (migratedFiles >= maxFiles) {
+                    break;
+                }
+                if (migrateFile(ownerId, filePath)) {
+                    migratedFiles++;
+                }
+            }
+        }
+        return migratedFiles;
+    }
+
+    private boolean migrateFile(Long ownerId, Path flatFilePath) {
+        var filename = flatFilePath.getFileName().toString();
+        var shardedFilePath = storageLayout.getShardedPath(ownerId, filename);
+        try {
+            if (shardedFilePath.startsWith(flatFilePath)) {
+                moveThroughShardDirectory(flatFilePath, shardedFilePath);
+            } else {
+                Files.createDirectories(shardedFilePath.getParent());
+                //Not an atomic move, as it would silently replace an existing file on some platforms
+                Files.move(flatFilePath, shardedFilePath);
+            }
+        } catch (NoSuchFileException e) {
+            //File removed in the meantime
+            return false;
+        } catch (IOException e) {
+            log.warn("Could not move file " + flatFilePath + " to " + shardedFilePath, e);
+            return false;
+        }
+
+        //Cached contents are still valid, but they refer to the previous location
+        fileContentCache.invalidate(ownerId, filename);
+        try {
+            fileIndex.refresh(ownerId, filename);
+        } catch (RuntimeException e) {
+            log.debug("Could not refresh index entry of migrated file " + shardedFilePath, e);
+        }
+        return true;
+    }
+
+    /**
+     * Shard directory of the file has its name, the file is not accessible until it is moved into the directory
+     */
+    private void moveThroughShardDirectory(Path flatFilePath, Path shardedFilePath) throws IOException {
+        var temporaryFilePath = generateTemporaryFilePath();
+        Files.move(flatFilePath, temporaryFilePath);
+        try {
+            Files.createDirectories(shardedFilePath.getParent());
+            Files.move(temporaryFilePath, shardedFilePath);
+        } catch (IOException e) {
+            Files.move(temporaryFilePath, flatFilePath);
+            throw e;
+        }
+    }
+
+    private Path generateTemporaryFilePath() throws IOException {
+        var uploadDirectoryPath = storageLayout.getRootDirectory().resolve(propertiesUtil.getUploadDirName());
+        Files.createDirectories(uploadDirectoryPath);
+        return uploadDirectoryPath.resolve(UUID.randomUUID() + ".part");
+    }
+
+    private Long parseOwnerId(String directoryName) {
+        try {
+            return Long.valueOf(directoryName);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.n3lx.minidrive.service.sync;
+
+import com.n3lx.minidrive.service.index.ChecksumAttributes;
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Chunk lists of stored files, computed on first use and kept in the manifest directory.
+ * <p>
+ * Manifests are named after the checksum of the whole file, so they are shared by all files with the same contents
+ * and never become stale. Manifests that were not used for the configured time are removed.
+ */
+@Component
+@Slf4j
+public class ChunkManifestStore {
+
+    private static final String manifestExtension = ".manifest";
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    /**
+     * @return Checksum of the file together with its chunks
+     */
+    public ChunkManifest getManifest(Path filePath) throws IOException {
+        var attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+        var checksum = ChecksumAttributes.read(filePath, attributes);
+        if (checksum != null) {
+            var manifest = readManifest(checksum);
+            if (manifest != null) {
+                return manifest;
+            }
+        }
+
+        var fileDigest = ContentDefinedChunker.createDigest();
+        List<ContentDefinedChunker.Chunk> chunks;
+        try (var inputStream = new BufferedInputStream(Files.newInputStream(filePath))) {
+            chunks = ContentDefinedChunker.split(inputStream, fileDigest);
+        }
+        var manifest = new ChunkManifest(HexFormat.of().formatHex(fileDigest.digest()), chunks);
+        if (checksum == null || !checksum.equals(manifest.checksum())) {
+            log.debug("Checksum of file " + filePath + " was not known or outdated, file has been read again");
+        }
+        writeManifest(manifest);
+        return manifest;
+    }
+
+    /**
+     * Removes manifests that were not used within the configured time
+     *
+     * @return Number of removed manifests
+     */
+    @Scheduled(fixedRate = PropertiesUtil.chunkManifestCleanupIntervalInSeconds * 1000)
+    public int cleanupManifests() {
+        var manifestDirectoryPath = generatePathToManifestDirectory();
+        if (!Files.isDirectory(manifestDirectoryPath)) {
+            return 0;
+        }
+        var expirationTimestamp = System.currentTimeMillis()
+                - propertiesUtil.getChunkManifestRetentionInSeconds() * 1000L;
+        var removedManifests = 0;
+        try (var manifestPaths = Files.newDirectoryStream(manifestDirectoryPath)) {
+            for (var manifestPath : manifestPaths) {
+                try {
+                    if (Files.getLastModifiedTime(manifestPath).toMillis() < expirationTimestamp) {
+                        Files.delete(manifestPath);
+                        removedManifests++;
+                    }
+                } catch (NoSuchFileException ignored) {
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not remove unused chunk manifests", e);
+        }
+        log.info("Chunk manifest cleanup complete, removed manifest count: " + removedManifests);
+        return removedManifests;
+    }
+
+    /**
+     * Manifest consists of lines with checksum and length of every chunk
+     *
+     * @return Manifest or null if it has not been computed yet
+     */
+    private ChunkManifest readManifest(String checksum) {
+        var manifestPath = generatePathToManifestDirectory().resolve(checksum + manifestExtension);
+        try {
+            var lines = Files.readAllLines(manifestPath, StandardCharsets.US_ASCII);
+            var chunks = new ArrayList<ContentDefinedChunker.Chunk>(lines.size());
+            long offset = 0;
+            for (var line : lines) {
+                var values = line.split(" ");
+                var length = Integer.parseInt(values[1]);
+                chunks.add(new ContentDefinedChunker.Chunk(values[0], offset, length));
+                offset += length;
+            }
+            //Modification time marks the last use
+            Files.setLastModifiedTime(manifestPath, FileTime.fromMillis(System.currentTimeMillis()));
+            return new ChunkManifest(checksum, chunks);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not read chunk manifest " + manifestPath, e);
+            return null;
+        }
+    }
+
+    private void writeManifest(ChunkManifest manifest) {
+        var manifestDirectoryPath = generatePathToManifestDirectory();
+        var manifestPath = manifestDirectoryPath.resolve(manifest.checksum() + manifestExtension);
+        var temporaryPath = manifestDirectoryPath.resolve(UUID.randomUUID() + ".tmp");
+        var contents = new StringBuilder();
+        for (var chunk : manifest.chunks()) {
+            contents.append(chunk.checksum()).append(' ').append(chunk.length()).append('\n');
+        }
+        try {
+            Files.createDirectories(manifestDirectoryPath);
+            Files.writeString(temporaryPath, contents, StandardCharsets.US_ASCII);
+            Files.move(temporaryPath, manifestPath, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.debug("Could not save chunk manifest " + manifestPath, e);
+            try {
+                Files.deleteIfExists(temporaryPath);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private Path generatePathToManifestDirectory() {
+        return Paths
+                .get(propertiesUtil.getRootDirAbsolutePath())
+                .normalize()
+                .resolve(propertiesUtil.getManifestDirName())
+                .toAbsolutePath();
+    }
+
+    /**
+     * @param checksum SHA-256 checksum of the whole file
+     */
+    public record ChunkManifest(String checksum, List<ContentDefinedChunker.Chunk> chunks) {
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.n3lx.minidrive.service.sync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Splits contents into chunks at positions determined by the contents themselves, so that an insertion or removal
+ * only changes chunks around the edit while the remaining ones keep their boundaries and checksums.
+ * <p>
+ * Boundaries are found with a polynomial rolling hash over the last {@link #windowSize} bytes of a chunk:
+ * {@code hash = hash * 31 + in - out * 31^windowSize}, computed on unsigned bytes in 32-bit arithmetic and reset
+ * at the start of every chunk. A chunk ends after a byte for which {@code (hash & boundaryMask) == 0} once it is
+ * at least {@link #minChunkSize} bytes long, or when it reaches {@link #maxChunkSize} bytes. Clients have to
+ * split files in the same way to find chunks the server already has.
+ */
+public final class ContentDefinedChunker {
+
+    public static final String algorithm = "polynomial-31";
+
+    public static final int windowSize = 48;
+
+    public static final int minChunkSize = 16 * 1024;
+
+    public static final int maxChunkSize = 256 * 1024;
+
+    /**
+     * Boundary probability of 1 in 65536 bytes, average chunk is roughly 80 KiB long
+     */
+    public static final int boundaryMask = 0xFFFF;
+
+    private static final int readBufferSize = 1024 * 1024;
+
+    private static final int removedByteFactor = pow(31, windowSize);
+
+    private ContentDefinedChunker() {
+    }
+
+    /**
+     * Reads the stream to its end, stream is not closed
+     *
+     * @param fileDigest Digest updated with all contents, may be null
+     * @return Chunks in order of their offsets
+     */
+    public static List<Chunk> split(InputStream inputStream, MessageDigest fileDigest) throws IOException {
+        var chunks = new ArrayList<Chunk>();
+        var chunkDigest = createDigest();
+        var window = new byte[windowSize];
+        var buffer = new byte[readBufferSize];
+
+        long chunkOffset = 0;
+        var chunkLength = 0;
+        var hash = 0;
+        int readBytes;
+        while ((readBytes = inputStream.read(buffer)) >= 0) {
+            var sliceStart = 0;
+            for (var position = 0; position < readBytes; position++) {
+                var incomingByte = buffer[position] & 0xFF;
+                var windowPosition = chunkLength % windowSize;
+                hash = hash * 31 + incomingByte;
+                if (chunkLength >= windowSize) {
+                    hash -= (window[windowPosition] & 0xFF) * removedByteFactor;
+                }
+                window[windowPosition] = (byte) incomingByte;
+                chunkLength++;
+
+                if ((chunkLength >= minChunkSize && (hash & boundaryMask) == 0) || chunkLength == maxChunkSize) {
+                    chunkDigest.update(buffer, sliceStart, position + 1 - sliceStart);
+                    chunks.add(new Chunk(HexFormat.of().formatHex(chunkDigest.digest()), chunkOffset, chunkLength));
+                    sliceStart = position + 1;
+                    chunkOffset += chunkLength;
+                    chunkLength = 0;
+                    hash = 0;
+                }
+            }
+            chunkDigest.update(buffer, sliceStart, readBytes - sliceStart);
+            if (fileDigest != null) {
+                fileDigest.update(buffer, 0, readBytes);
+            }
+        }
+        if (chunkLength > 0) {
+            chunks.add(new Chunk(HexFormat.of().formatHex(chunkDigest.digest()), chunkOffset, chunkLength));
+        }
+        return chunks;
+    }
+
+    public static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int pow(int base, int exponent) {
+        var result = 1;
+        for (var i = 0; i < exponent; i++) {
+            result *= base;
+        }
+        return result;
+    }
+
+    /**
+     * @param checksum SHA-256 checksum of chunk contents as lowercase hexadecimal digits
+     */
+    public record Chunk(String checksum, long offset, int length) {
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.n3lx.minidrive.utils;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct buffers used for moving file contents between channels.
+ * <p>
+ * Amount of direct memory is bounded by pool size multiplied by buffer size, once all pooled buffers are in use
+ * callers receive short-lived heap buffers instead of waiting
+ */
+@Component
+public class DirectBufferPool {
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    private BlockingQueue<ByteBuffer> availableBuffers;
+
+    private final AtomicInteger allocatedBuffers = new AtomicInteger();
+
+    @PostConstruct
+    private void init() {
+        availableBuffers = new ArrayBlockingQueue<>(propertiesUtil.getBufferPoolSize());
+    }
+
+    public ByteBuffer acquire() {
+        var buffer = availableBuffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        if (allocatedBuffers.incrementAndGet() <= propertiesUtil.getBufferPoolSize()) {
+            return ByteBuffer.allocateDirect(propertiesUtil.getBufferSizeInBytes());
+        }
+        allocatedBuffers.decrementAndGet();
+        return ByteBuffer.allocate(propertiesUtil.getBufferSizeInBytes());
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.isDirect()) {
+            buffer.clear();
+            availableBuffers.offer(buffer);
+        }
+    }
+
+}
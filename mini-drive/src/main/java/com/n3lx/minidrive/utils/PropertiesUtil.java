@@ -21,7 +21,30 @@ public class PropertiesUtil {
      */
     public static final int usernameMaxLength = 16;
 
-    public static final int tempDirArchiveRetentionInSeconds = 600;
+    public static final int archiveCacheCleanupIntervalInSeconds = 600;
+
+    public static final int archiveJobCleanupIntervalInSeconds = 600;
+
+    public static final int blobGarbageCollectionIntervalInSeconds = 3600;
+
+    public static final int chunkManifestCleanupIntervalInSeconds = 3600;
+
+    public static final int defaultListingLimit = 100;
+
+    public static final int maxListingLimit = 1000;
+
+    public static final int storageLayoutMigrationIntervalInSeconds = 60;
+
+    public static final int quotaUsageFlushIntervalInSeconds = 10;
+
+    public static final int uploadSessionRetentionInSeconds = 86400;
+
+    public static final int uploadSessionCleanupIntervalInSeconds = 600;
+
+    /**
+     * Interval of reloading revoked tokens, revocations made by other instances take effect within this time
+     */
+    public static final int tokenRevocationRefreshIntervalInSeconds = 30;
 
     @Getter
     @Value("${app.fileStorage.rootDirAbsolutePath}")
@@ -31,4 +54,181 @@ public class PropertiesUtil {
     @Value("${app.fileStorage.tempDirName}")
     private String tempDirName;
 
+    @Getter
+    @Value("${app.fileStorage.uploadDirName}")
+    private String uploadDirName;
+
+    @Getter
+    @Value("${app.fileStorage.blobDirName}")
+    private String blobDirName;
+
+    @Getter
+    @Value("${app.fileStorage.manifestDirName}")
+    private String manifestDirName;
+
+    @Getter
+    @Value("${app.fileStorage.chunkedUpload.defaultChunkSizeInBytes}")
+    private int defaultChunkSizeInBytes;
+
+    @Getter
+    @Value("${app.fileStorage.chunkedUpload.maxChunkSizeInBytes}")
+    private int maxChunkSizeInBytes;
+
+    @Getter
+    @Value("${app.fileStorage.bufferSizeInBytes}")
+    private int bufferSizeInBytes;
+
+    @Getter
+    @Value("${app.fileStorage.bufferPoolSize}")
+    private int bufferPoolSize;
+
+    /**
+     * Number of threads compressing archives, values lower than 1 use all available processors
+     */
+    @Getter
+    @Value("${app.fileStorage.archive.parallelism}")
+    private int archiveParallelism;
+
+    @Getter
+    @Value("${app.fileStorage.archive.maxParallelismPerRequest}")
+    private int archiveMaxParallelismPerRequest;
+
+    @Getter
+    @Value("${app.fileStorage.archive.blockSizeInBytes}")
+    private int archiveBlockSizeInBytes;
+
+    @Getter
+    @Value("${app.fileStorage.archive.compressionLevel}")
+    private int archiveCompressionLevel;
+
+    /**
+     * Whether already compressed content (images, videos, archives...) is stored in archives without compression
+     */
+    @Getter
+    @Value("${app.fileStorage.archive.storeIncompressible}")
+    private boolean archiveStoreIncompressible;
+
+    @Getter
+    @Value("${app.fileStorage.archive.cache.maxSizeInBytes}")
+    private long archiveCacheMaxSizeInBytes;
+
+    /**
+     * Time after which an archive that was not accessed is removed from the cache
+     */
+    @Getter
+    @Value("${app.fileStorage.archive.cache.ttlInSeconds}")
+    private int archiveCacheTtlInSeconds;
+
+    /**
+     * Number of threads generating archives of asynchronous jobs, separate from request handling threads
+     */
+    @Getter
+    @Value("${app.fileStorage.archive.jobs.threadCount}")
+    private int archiveJobThreadCount;
+
+    /**
+     * Maximum number of jobs waiting for a thread, jobs submitted over this limit are rejected
+     */
+    @Getter
+    @Value("${app.fileStorage.archive.jobs.queueCapacity}")
+    private int archiveJobQueueCapacity;
+
+    /**
+     * Time for which finished jobs can be polled and downloaded
+     */
+    @Getter
+    @Value("${app.fileStorage.archive.jobs.retentionInSeconds}")
+    private int archiveJobRetentionInSeconds;
+
+    @Getter
+    @Value("${app.fileStorage.archive.jobs.retryAfterInSeconds}")
+    private int archiveJobRetryAfterInSeconds;
+
+    /**
+     * Maximum number of owners whose files are indexed in memory, least recently listed owners are dropped first
+     */
+    @Getter
+    @Value("${app.fileStorage.index.maxIndexedOwners}")
+    private int maxIndexedOwners;
+
+    /**
+     * Quota of users without an individual quota, negative values disable the limit
+     */
+    @Getter
+    @Value("${app.fileStorage.quota.defaultQuotaInBytes}")
+    private long defaultQuotaInBytes;
+
+    /**
+     * Either flat or sharded, see {@link com.n3lx.minidrive.service.storage.StorageLayout}
+     */
+    @Getter
+    @Value("${app.fileStorage.layout.type}")
+    private String storageLayoutType;
+
+    /**
+     * Number of nested shard directories, from 1 to 4, each level splits files into 256 directories
+     */
+    @Getter
+    @Value("${app.fileStorage.layout.shardLevels}")
+    private int storageLayoutShardLevels;
+
+    /**
+     * Maximum number of files moved into the sharded layout by a single migration run
+     */
+    @Getter
+    @Value("${app.fileStorage.layout.migrationBatchSize}")
+    private int storageLayoutMigrationBatchSize;
+
+    /**
+     * Whether identical files are stored once and shared through hard links,
+     * see {@link com.n3lx.minidrive.service.storage.BlobStore}
+     */
+    @Getter
+    @Value("${app.fileStorage.blobStore.enabled}")
+    private boolean blobStoreEnabled;
+
+    /**
+     * Whether instant uploads may use contents stored by other users, which lets anyone who knows checksum and size
+     * of a file obtain its contents. Requires the blob store, only contents of the owner are used otherwise
+     */
+    @Getter
+    @Value("${app.fileStorage.instantUpload.global}")
+    private boolean instantUploadGlobal;
+
+    /**
+     * Time after which chunk manifests that were not used for delta synchronization are removed
+     */
+    @Getter
+    @Value("${app.fileStorage.sync.manifestRetentionInSeconds}")
+    private int chunkManifestRetentionInSeconds;
+
+    /**
+     * Either none, file or group, see {@link com.n3lx.minidrive.service.storage.FileCommitter}
+     */
+    @Getter
+    @Value("${app.fileStorage.durability.mode}")
+    private String durabilityMode;
+
+    /**
+     * Whether contents of small files are kept in memory, see {@link com.n3lx.minidrive.service.storage.FileContentCache}
+     */
+    @Getter
+    @Value("${app.fileStorage.readCache.enabled}")
+    private boolean readCacheEnabled;
+
+    /**
+     * Files larger than this are always read from the file system
+     */
+    @Getter
+    @Value("${app.fileStorage.readCache.maxFileSizeInBytes}")
+    private int readCacheMaxFileSizeInBytes;
+
+    /**
+     * Total size of buffers of the read cache including those of evicted entries that have not been freed yet,
+     * allocated outside of the heap so it has to fit within the direct memory limit
+     */
+    @Getter
+    @Value("${app.fileStorage.readCache.maxSizeInBytes}")
+    private long readCacheMaxSizeInBytes;
+
 }
@@ -0,0 +1,49 @@
+package com.n3lx.minidrive.web.controller;
+
+import com.n3lx.minidrive.entity.User;
+import com.n3lx.minidrive.service.contract.ArchiveJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Asynchronous variant of /api/storage/loadmultiple - a job is submitted for a list of files,
+ * its progress is polled and the archive is downloaded once the job is completed
+ */
+@RestController
+@RequestMapping("/api/storage/archivejobs")
+public class ArchiveJobController {
+
+    @Autowired
+    ArchiveJobService archiveJobService;
+
+    /**
+     * @return Queued job, 503 with Retry-After header if too many jobs are already waiting
+     */
+    @RequestMapping(value = "", method = RequestMethod.POST)
+    public ResponseEntity<?> submit(@RequestBody List<String> fileNames, @AuthenticationPrincipal User user) {
+        var job = archiveJobService.submit(fileNames, user.getId());
+        return ResponseEntity
+                .accepted()
+                .location(URI.create("/api/storage/archivejobs/" + job.getJobId()))
+                .body(job);
+    }
+
+    /**
+     * @return Job status with the number of processed files and bytes and estimated time remaining
+     */
+    @RequestMapping(value = "/{jobId}", method = RequestMethod.GET)
+    public ResponseEntity<?> getJob(@PathVariable String jobId, @AuthenticationPrincipal User user) {
+        return ResponseEntity.ok(archiveJobService.getJob(jobId, user.getId()));
+    }
+
+    @RequestMapping(value = "/{jobId}/download", method = RequestMethod.GET)
+    public ResponseEntity<?> download(@PathVariable String jobId, @AuthenticationPrincipal User user) {
+        return ResponseEntity.ok(archiveJobService.loadResult(jobId, user.getId()));
+    }
+
+}
@@ -2,16 +2,22 @@ package com.n3lx.minidrive.web.controller;
 
 import com.n3lx.minidrive.dto.UserDTO;
 import com.n3lx.minidrive.entity.User;
+import com.n3lx.minidrive.security.LoginThrottle;
 import com.n3lx.minidrive.web.support.payload.AuthRequest;
 import com.n3lx.minidrive.web.support.payload.AuthResponse;
 import com.n3lx.minidrive.security.jwt.JWTUtil;
+import com.n3lx.minidrive.security.jwt.TokenRevocationList;
+import com.n3lx.minidrive.security.jwt.VerifiedToken;
 import com.n3lx.minidrive.service.UserService;
 import com.n3lx.minidrive.web.support.exception.RestErrorMessage;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
@@ -31,6 +37,12 @@ public class AuthenticationController {
     @Autowired
     JWTUtil jwtUtil;
 
+    @Autowired
+    LoginThrottle loginThrottle;
+
+    @Autowired
+    TokenRevocationList tokenRevocationList;
+
     @RequestMapping(value = "/register", method = RequestMethod.POST)
     public ResponseEntity<?> register(@RequestBody AuthRequest request) throws Exception {
         var newUser = UserDTO.builder()
@@ -42,9 +54,17 @@ public class AuthenticationController {
     }
 
     @RequestMapping(value = "/login", method = RequestMethod.POST)
-    public ResponseEntity<?> login(@RequestBody AuthRequest request) {
-        var authentication = authenticationManager
-                .authenticate(new UsernamePasswordAuthenticationToken(request.getUsername(), request.getPassword()));
+    public ResponseEntity<?> login(@RequestBody AuthRequest request, HttpServletRequest httpRequest) {
+        //Throttled attempts are rejected before the password is hashed
+        loginThrottle.checkAllowed(request.getUsername(), httpRequest.getRemoteAddr());
+        Authentication authentication;
+        try {
+            authentication = authenticationManager
+                    .authenticate(new UsernamePasswordAuthenticationToken(request.getUsername(), request.getPassword()));
+        } catch (BadCredentialsException e) {
+            loginThrottle.recordFailure(request.getUsername(), httpRequest.getRemoteAddr());
+            throw e;
+        }
 
         User user = (User) authentication.getPrincipal();
         String token = jwtUtil.generateToken(user);
@@ -52,6 +72,21 @@ public class AuthenticationController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Revokes the token the request has been authenticated with, other tokens of the user stay valid
+     */
+    @RequestMapping(value = "/logout", method = RequestMethod.POST)
+    public ResponseEntity<?> logout(Authentication authentication) {
+        if (authentication != null && authentication.getCredentials() instanceof VerifiedToken verifiedToken) {
+            tokenRevocationList.revokeToken(verifiedToken);
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(RestErrorMessage.builder()
+                .timestamp(Timestamp.from(Instant.now()))
+                .message("Unauthenticated user")
+                .build());
+    }
+
     @RequestMapping(value = "/whoami", method = RequestMethod.GET)
     public ResponseEntity<?> whoami(@AuthenticationPrincipal User user) {
         if (user != null) {
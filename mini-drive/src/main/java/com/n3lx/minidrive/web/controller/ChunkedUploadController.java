@@ -0,0 +1,78 @@
+package com.n3lx.minidrive.web.controller;
+
+import com.n3lx.minidrive.entity.User;
+import com.n3lx.minidrive.service.contract.ChunkedUploadService;
+import com.n3lx.minidrive.web.support.payload.UploadSessionRequest;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Resumable uploads - a session is created for a file, its chunks are uploaded (possibly in parallel and
+ * over multiple connections) and the session is committed once all chunks have been received
+ */
+@RestController
+@RequestMapping("/api/storage/upload/sessions")
+public class ChunkedUploadController {
+
+    @Autowired
+    ChunkedUploadService chunkedUploadService;
+
+    @RequestMapping(value = "", method = RequestMethod.POST)
+    public ResponseEntity<?> createSession(@RequestBody UploadSessionRequest request,
+                                           @AuthenticationPrincipal User user) {
+        var session = chunkedUploadService.createSession(
+                request.getFileName(), request.getFileSize(), request.getChunkSize(), user.getId());
+        return ResponseEntity
+                .created(URI.create("/api/storage/upload/sessions/" + session.getSessionId()))
+                .body(session);
+    }
+
+    /**
+     * Allows to resume an interrupted upload
+     *
+     * @return Session details including the list of chunks that were not received yet
+     */
+    @RequestMapping(value = "/{sessionId}", method = RequestMethod.GET)
+    public ResponseEntity<?> getSession(@PathVariable String sessionId, @AuthenticationPrincipal User user) {
+        return ResponseEntity.ok(chunkedUploadService.getSession(sessionId, user.getId()));
+    }
+
+    /**
+     * @param chunkNumber Chunk number, starts at 0
+     * @param offset      Optional offset of the chunk in bytes, has to match chunk number multiplied by chunk size
+     */
+    @RequestMapping(value = "/{sessionId}/chunks/{chunkNumber}", method = RequestMethod.PUT,
+            consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> uploadChunk(@PathVariable String sessionId,
+                                         @PathVariable Integer chunkNumber,
+                                         @RequestParam(required = false) Long offset,
+                                         HttpServletRequest request,
+                                         @AuthenticationPrincipal User user) throws IOException {
+        chunkedUploadService.writeChunk(sessionId, chunkNumber, offset, request.getInputStream(), user.getId());
+        return ResponseEntity.noContent().build();
+    }
+
+    @RequestMapping(value = "/{sessionId}/commit", method = RequestMethod.POST)
+    public ResponseEntity<?> commit(@PathVariable String sessionId, @AuthenticationPrincipal User user) {
+        var commitResult = chunkedUploadService.commit(sessionId, user.getId());
+        if (commitResult) {
+            return ResponseEntity.created(URI.create("/api/storage/load")).build();
+        } else {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @RequestMapping(value = "/{sessionId}", method = RequestMethod.DELETE)
+    public ResponseEntity<?> abort(@PathVariable String sessionId, @AuthenticationPrincipal User user) {
+        chunkedUploadService.abort(sessionId, user.getId());
+        return ResponseEntity.noContent().build();
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.n3lx.minidrive.web.controller;
+
+import com.n3lx.minidrive.entity.User;
+import com.n3lx.minidrive.service.contract.DeltaSyncService;
+import com.n3lx.minidrive.service.contract.FileStorageService;
+import com.n3lx.minidrive.web.support.payload.SyncSessionRequest;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Delta synchronization - client fetches the chunk manifest of a stored file, creates a session with chunks of
+ * the new version, uploads chunks reported as missing and commits the session to replace the stored file
+ */
+@RestController
+@RequestMapping("/api/storage/sync")
+public class DeltaSyncController {
+
+    @Autowired
+    DeltaSyncService deltaSyncService;
+
+    @Autowired
+    FileStorageService fileStorageService;
+
+    @RequestMapping(value = "/manifest", method = RequestMethod.GET)
+    public ResponseEntity<?> getManifest(@RequestParam String fileName, @AuthenticationPrincipal User user) {
+        if (!fileStorageService.exists(fileName, user.getId())) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(deltaSyncService.getManifest(fileName, user.getId()));
+    }
+
+    /**
+     * @return Session details including checksums of chunks that have to be uploaded
+     */
+    @RequestMapping(value = "/sessions", method = RequestMethod.POST)
+    public ResponseEntity<?> createSession(@RequestBody SyncSessionRequest request,
+                                           @AuthenticationPrincipal User user) {
+        var session = deltaSyncService.createSession(
+                request.getFileName(), request.getBaseFileName(), request.getChunks(), user.getId());
+        return ResponseEntity
+                .created(URI.create("/api/storage/sync/sessions/" + session.getSessionId()))
+                .body(session);
+    }
+
+    @RequestMapping(value = "/sessions/{sessionId}", method = RequestMethod.GET)
+    public ResponseEntity<?> getSession(@PathVariable String sessionId, @AuthenticationPrincipal User user) {
+        return ResponseEntity.ok(deltaSyncService.getSession(sessionId, user.getId()));
+    }
+
+    @RequestMapping(value = "/sessions/{sessionId}/chunks/{checksum}", method = RequestMethod.PUT,
+            consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> uploadChunk(@PathVariable String sessionId,
+                                         @PathVariable String checksum,
+                                         HttpServletRequest request,
+                                         @AuthenticationPrincipal User user) throws IOException {
+        deltaSyncService.writeChunk(sessionId, checksum, request.getInputStream(), user.getId());
+        return ResponseEntity.noContent().build();
+    }
+
+    @RequestMapping(value = "/sessions/{sessionId}/commit", method = RequestMethod.POST)
+    public ResponseEntity<?> commit(@PathVariable String sessionId, @AuthenticationPrincipal User user) {
+        var commitResult = deltaSyncService.commit(sessionId, user.getId());
+        if (commitResult) {
+            return ResponseEntity.created(URI.create("/api/storage/load")).build();
+        } else {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @RequestMapping(value = "/sessions/{sessionId}", method = RequestMethod.DELETE)
+    public ResponseEntity<?> abort(@PathVariable String sessionId, @AuthenticationPrincipal User user) {
+        deltaSyncService.abort(sessionId, user.getId());
+        return ResponseEntity.noContent().build();
+    }
+
+}
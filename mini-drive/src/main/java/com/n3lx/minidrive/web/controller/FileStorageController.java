@@ -2,12 +2,21 @@ package com.n3lx.minidrive.web.controller;
 
 import com.n3lx.minidrive.entity.User;
 import com.n3lx.minidrive.service.contract.FileStorageService;
+import com.n3lx.minidrive.service.contract.QuotaService;
+import com.n3lx.minidrive.web.support.download.ResourceRangeWriter;
+import com.n3lx.minidrive.web.support.payload.InstantUploadRequest;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.List;
 
@@ -18,6 +27,12 @@ public class FileStorageController {
     @Autowired
     FileStorageService fileStorageService;
 
+    @Autowired
+    ResourceRangeWriter resourceRangeWriter;
+
+    @Autowired
+    QuotaService quotaService;
+
     @RequestMapping(value = "/upload", method = RequestMethod.POST)
     public ResponseEntity<?> upload(@RequestBody MultipartFile file, @AuthenticationPrincipal User user) {
         if (file == null) {
@@ -32,12 +47,99 @@ public class FileStorageController {
         }
     }
 
+    /**
+     * Variant of /upload endpoint that accepts raw file contents as a request body,
+     * bytes are written straight to the storage without being spooled to a temporary file first
+     *
+     * @param fileName Name under which the file will be stored
+     * @param request  Request with file contents as a body
+     * @param user     resource owner
+     */
+    @RequestMapping(value = "/upload/stream", method = RequestMethod.POST,
+            consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> uploadStream(@RequestParam String fileName,
+                                          HttpServletRequest request,
+                                          @AuthenticationPrincipal User user) throws IOException {
+        var uploadResult = fileStorageService.store(request.getInputStream(), fileName, user.getId());
+        if (uploadResult) {
+            return ResponseEntity.created(URI.create("/api/storage/load")).build();
+        } else {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Pre-upload handshake, stores the file without receiving its contents if the server already has them
+     *
+     * @param request Name of the file together with SHA-256 checksum and size of its contents
+     * @param user    resource owner
+     * @return 201 if the file has been stored, 404 if its contents are not known and have to be uploaded
+     */
+    @RequestMapping(value = "/upload/instant", method = RequestMethod.POST)
+    public ResponseEntity<?> uploadInstant(@RequestBody InstantUploadRequest request,
+                                           @AuthenticationPrincipal User user) {
+        var uploadResult = fileStorageService.storeExisting(request.getFileName(), request.getChecksum(),
+                request.getFileSize(), user.getId());
+        if (uploadResult) {
+            return ResponseEntity.created(URI.create("/api/storage/load")).build();
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Lists all files, or a single page of them when any of the cursor parameters is present
+     *
+     * @param after Name of the last file of the previous page, omit for the first page
+     * @param limit Page size, defaults to 100 and can not exceed 1000
+     * @param user  resource owner
+     * @return A list of file names sorted by name, 304 if the listing has not changed since the version sent
+     * in If-None-Match
+     */
     @RequestMapping(value = "/listfiles", method = RequestMethod.GET)
-    public ResponseEntity<?> listFiles(@AuthenticationPrincipal User user) {
+    public ResponseEntity<?> listFiles(@RequestParam(required = false) String after,
+                                       @RequestParam(required = false) Integer limit,
+                                       WebRequest webRequest,
+                                       @AuthenticationPrincipal User user) {
+        if (webRequest.checkNotModified(generateListingEntityTag(user))) {
+            return null;
+        }
+        if (after != null || limit != null) {
+            return ResponseEntity.ok(fileStorageService.listFilesAfter(user.getId(), after, limit));
+        }
         var fileList = fileStorageService.listAllFiles(user.getId());
         return ResponseEntity.ok(fileList);
     }
 
+    /**
+     * Variant of /listfiles endpoint that lists names together with size, modification time, content type
+     * and checksum of every file
+     *
+     * @param sortBy     name, size or date, defaults to name
+     * @param order      asc or desc, defaults to asc
+     * @param prefix     Only files with names starting with the prefix are listed
+     * @param extension  Only files with given extensions are listed, can be repeated
+     * @param pageNumber Page number, starts at 1, all matching files are listed when omitted
+     * @param pageSize   Page size
+     * @param user       resource owner
+     */
+    @RequestMapping(value = "/listfiles/details", method = RequestMethod.GET)
+    public ResponseEntity<?> listFileDetails(@RequestParam(required = false) String sortBy,
+                                             @RequestParam(required = false) String order,
+                                             @RequestParam(required = false) String prefix,
+                                             @RequestParam(required = false) List<String> extension,
+                                             @RequestParam(required = false) Integer pageNumber,
+                                             @RequestParam(required = false) Integer pageSize,
+                                             WebRequest webRequest,
+                                             @AuthenticationPrincipal User user) {
+        if (webRequest.checkNotModified(generateListingEntityTag(user))) {
+            return null;
+        }
+        var fileList = fileStorageService.listFileDetails(user.getId(), sortBy, order, prefix, extension,
+                pageNumber, pageSize);
+        return ResponseEntity.ok(fileList);
+    }
+
     /**
      * Variant of /listFiles endpoint with pagination
      *
@@ -47,15 +149,32 @@ public class FileStorageController {
      * @return A list of files owned by owner, if no results are found an empty list will be returned
      */
     @RequestMapping(value = "/listfiles/{pageNumber}/{pageSize}", method = RequestMethod.GET)
-    public ResponseEntity<?> listFiles(@PathVariable Integer pageNumber, @PathVariable Integer pageSize, @AuthenticationPrincipal User user) {
+    public ResponseEntity<?> listFiles(@PathVariable Integer pageNumber, @PathVariable Integer pageSize, WebRequest webRequest, @AuthenticationPrincipal User user) {
+        if (webRequest.checkNotModified(generateListingEntityTag(user))) {
+            return null;
+        }
         var fileList = fileStorageService.listFiles(user.getId(), pageNumber, pageSize);
         return ResponseEntity.ok(fileList);
     }
 
+    /**
+     * Sends file contents, supports byte range requests so that downloads can be resumed or split into segments.
+     * Conditional requests are answered with 304 when the client's copy is still up to date
+     *
+     * @param fileName Name of the file, can be sent either as a query parameter or as a multipart form field
+     * @param user     resource owner
+     */
     @RequestMapping(value = "/load", method = RequestMethod.GET)
-    public ResponseEntity<?> load(@RequestPart String fileName, @AuthenticationPrincipal User user) {
-        var resource = fileStorageService.load(fileName, user.getId());
-        return ResponseEntity.ok(resource);
+    public void load(@RequestParam String fileName,
+                     HttpServletRequest request,
+                     HttpServletResponse response,
+                     @AuthenticationPrincipal User user) throws IOException {
+        //Validators are checked before loading, an up to date copy is answered without reading or caching the file
+        var resource = fileStorageService.resolve(fileName, user.getId());
+        if (resourceRangeWriter.checkNotModified(resource, request, response)) {
+            return;
+        }
+        resourceRangeWriter.write(fileStorageService.load(fileName, user.getId()), request, response);
     }
 
     @RequestMapping(value = "/loadmultiple", method = RequestMethod.GET)
@@ -64,6 +183,27 @@ public class FileStorageController {
         return ResponseEntity.ok(resource);
     }
 
+    /**
+     * Variant of /loadmultiple endpoint that sends the archive while it is being generated,
+     * no temporary archive is created on the server
+     */
+    @RequestMapping(value = "/loadmultiple/stream", method = RequestMethod.GET)
+    public ResponseEntity<StreamingResponseBody> loadMultipleAsStream(@RequestBody List<String> fileNames,
+                                                                      @AuthenticationPrincipal User user) {
+        var body = fileStorageService.loadMultipleAsStream(fileNames, user.getId());
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .body(body);
+    }
+
+    /**
+     * @return Storage used by the user and their quota, quota is omitted when storage is not limited
+     */
+    @RequestMapping(value = "/usage", method = RequestMethod.GET)
+    public ResponseEntity<?> usage(@AuthenticationPrincipal User user) {
+        return ResponseEntity.ok(quotaService.getUsage(user.getId()));
+    }
+
     @RequestMapping(value = "/delete", method = RequestMethod.DELETE)
     public ResponseEntity<?> delete(@RequestPart String fileName, @AuthenticationPrincipal User user) {
         fileStorageService.delete(fileName, user.getId());
@@ -78,4 +218,11 @@ public class FileStorageController {
         return ResponseEntity.created(URI.create("/api/storage/load")).build();
     }
 
+    /**
+     * Listings of all endpoints share the version of the owner's files
+     */
+    private String generateListingEntityTag(User user) {
+        return "\"" + fileStorageService.getListingVersion(user.getId()) + "\"";
+    }
+
 }
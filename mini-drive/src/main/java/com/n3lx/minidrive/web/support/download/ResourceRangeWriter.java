@@ -0,0 +1,280 @@
+package com.n3lx.minidrive.web.support.download;
+
+import com.n3lx.minidrive.service.storage.CachedFileResource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes file resources to the response with support for byte range requests (RFC 7233).
+ * <p>
+ * Whenever the servlet container supports it, a full file or a single range is handed over to the container
+ * as a sendfile request so that it is copied from the page cache to the socket without passing through the JVM.
+ * Remaining cases are served with {@link FileChannel#transferTo}. Contents of cached files are written straight
+ * from memory without opening the file.
+ */
+@Component
+public class ResourceRangeWriter {
+
+    private static final String sendfileSupportAttribute = "org.apache.tomcat.sendfile.support";
+
+    private static final String sendfileFilenameAttribute = "org.apache.tomcat.sendfile.filename";
+
+    private static final String sendfileStartAttribute = "org.apache.tomcat.sendfile.start";
+
+    private static final String sendfileEndAttribute = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * Answers conditional requests, validators are derived from current file attributes so the file is not opened.
+     * Attributes are read from the file system even for cached files, validators always describe the file on disk
+     *
+     * @return Whether the client's copy is up to date, response status is set to 304 in that case
+     */
+    public boolean checkNotModified(Resource resource, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        var attributes = Files.readAttributes(resource.getFile().toPath(), BasicFileAttributes.class);
+        return new ServletWebRequest(request, response)
+                .checkNotModified(generateEntityTag(attributes), attributes.lastModifiedTime().toMillis());
+    }
+
+    public void write(Resource resource, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (resource instanceof CachedFileResource cachedResource) {
+            write(cachedResource, request, response);
+            return;
+        }
+        var filePath = resource.getFile().toPath().toAbsolutePath();
+        var fileLength = resource.contentLength();
+        var mediaType = MediaTypeFactory.getMediaType(resource).orElse(MediaType.APPLICATION_OCTET_STREAM);
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        var ranges = isRangeApplicable(resource, request)
+                ? parseRanges(request.getHeader(HttpHeaders.RANGE), fileLength)
+                : null;
+        if (ranges == null) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(mediaType.toString());
+            writeRegion(filePath, 0, fileLength, request, response);
+        } else if (ranges.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + fileLength);
+        } else if (ranges.size() == 1) {
+            var range = ranges.get(0);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType(mediaType.toString());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, formatContentRange(range, fileLength));
+            writeRegion(filePath, range.start, range.length(), request, response);
+        } else {
+            writeMultipleRanges(filePath, fileLength, mediaType, ranges, response);
+        }
+    }
+
+    private void write(CachedFileResource resource, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        var contents = resource.getContents();
+        var fileLength = resource.contentLength();
+        var mediaType = MediaTypeFactory.getMediaType(resource).orElse(MediaType.APPLICATION_OCTET_STREAM);
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        var ranges = isRangeApplicable(resource, request)
+                ? parseRanges(request.getHeader(HttpHeaders.RANGE), fileLength)
+                : null;
+        if (ranges == null) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(mediaType.toString());
+            response.setContentLengthLong(fileLength);
+            write(contents, 0, fileLength, Channels.newChannel(response.getOutputStream()));
+        } else if (ranges.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + fileLength);
+        } else if (ranges.size() == 1) {
+            var range = ranges.get(0);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType(mediaType.toString());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, formatContentRange(range, fileLength));
+            response.setContentLengthLong(range.length());
+            write(contents, range.start, range.length(), Channels.newChannel(response.getOutputStream()));
+        } else {
+            var boundary = MimeTypeUtils.generateMultipartBoundaryString();
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType("multipart/byteranges; boundary=" + boundary);
+
+            var outputStream = response.getOutputStream();
+            var outputChannel = Channels.newChannel(outputStream);
+            for (var range : ranges) {
+                outputStream.write(formatPartHeader(boundary, mediaType, range, fileLength));
+                write(contents, range.start, range.length(), outputChannel);
+            }
+            outputStream.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * Range is applied only if the client's copy is still current, a client resuming a download of a file changed
+     * in the meantime receives the whole file instead of parts of two versions (RFC 7233 section 3.2)
+     */
+    private boolean isRangeApplicable(Resource resource, HttpServletRequest request) throws IOException {
+        var ifRangeHeader = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRangeHeader == null) {
+            return true;
+        }
+        var attributes = Files.readAttributes(resource.getFile().toPath(), BasicFileAttributes.class);
+        if (ifRangeHeader.startsWith("\"")) {
+            return ifRangeHeader.equals(generateEntityTag(attributes));
+        }
+        if (ifRangeHeader.startsWith("W/")) {
+            //Weak entity tags never match, strong comparison is required
+            return false;
+        }
+        try {
+            //Dates have a precision of one second
+            var ifRangeTimestamp = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return ifRangeTimestamp / 1000 == attributes.lastModifiedTime().toMillis() / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Entity tag combines size, modification time and identity of the file, it changes whenever the file
+     * is written or replaced
+     */
+    private String generateEntityTag(BasicFileAttributes attributes) {
+        return "\"" + Long.toHexString(attributes.size())
+                + "-" + Long.toHexString(attributes.lastModifiedTime().toMillis())
+                + (attributes.fileKey() != null ? "-" + Integer.toHexString(attributes.fileKey().hashCode()) : "")
+                + "\"";
+    }
+
+    /**
+     * @return Null when the whole file should be sent, otherwise a list of satisfiable ranges
+     */
+    private List<ByteRange> parseRanges(String rangeHeader, long fileLength) {
+        if (rangeHeader == null) {
+            return null;
+        }
+        List<HttpRange> httpRanges;
+        try {
+            httpRanges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            //Malformed range header is ignored as per RFC 7233 section 3.1
+            return null;
+        }
+
+        var ranges = new ArrayList<ByteRange>();
+        long totalLength = 0;
+        for (var httpRange : httpRanges) {
+            try {
+                var range = new ByteRange(httpRange.getRangeStart(fileLength), httpRange.getRangeEnd(fileLength));
+                if (range.end() < range.start()) {
+                    //Suffix range of an empty file, it selects no bytes
+                    continue;
+                }
+                ranges.add(range);
+                totalLength += range.length();
+            } catch (IllegalArgumentException ignored) {
+                //Unsatisfiable range, remaining ones can still be served
+            }
+        }
+        //Overlapping ranges requesting more than the whole file are answered with the whole file
+        if (totalLength > fileLength) {
+            return null;
+        }
+        return ranges;
+    }
+
+    private void writeRegion(Path filePath, long position, long count,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentLengthLong(count);
+        if (count == 0) {
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(sendfileSupportAttribute))) {
+            request.setAttribute(sendfileFilenameAttribute, filePath.toString());
+            request.setAttribute(sendfileStartAttribute, position);
+            request.setAttribute(sendfileEndAttribute, position + count);
+            return;
+        }
+        try (var fileChannel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            transfer(fileChannel, position, count, Channels.newChannel(response.getOutputStream()));
+        }
+    }
+
+    private void writeMultipleRanges(Path filePath, long fileLength, MediaType mediaType,
+                                     List<ByteRange> ranges, HttpServletResponse response) throws IOException {
+        var boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+
+        var outputStream = response.getOutputStream();
+        var outputChannel = Channels.newChannel(outputStream);
+        try (var fileChannel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            for (var range : ranges) {
+                outputStream.write(formatPartHeader(boundary, mediaType, range, fileLength));
+                transfer(fileChannel, range.start, range.length(), outputChannel);
+            }
+        }
+        outputStream.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void transfer(FileChannel fileChannel, long position, long count, WritableByteChannel target)
+            throws IOException {
+        var transferredBytes = 0L;
+        while (transferredBytes < count) {
+            var bytes = fileChannel.transferTo(position + transferredBytes, count - transferredBytes, target);
+            if (bytes <= 0) {
+                throw new IOException("File has been truncated while being sent");
+            }
+            transferredBytes += bytes;
+        }
+    }
+
+    private void write(ByteBuffer contents, long position, long count, WritableByteChannel target)
+            throws IOException {
+        var region = contents.slice((int) position, (int) count);
+        while (region.hasRemaining()) {
+            target.write(region);
+        }
+    }
+
+    private byte[] formatPartHeader(String boundary, MediaType mediaType, ByteRange range, long fileLength) {
+        var partHeader = "\r\n--" + boundary + "\r\n"
+                + HttpHeaders.CONTENT_TYPE + ": " + mediaType + "\r\n"
+                + HttpHeaders.CONTENT_RANGE + ": " + formatContentRange(range, fileLength) + "\r\n\r\n";
+        return partHeader.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private String formatContentRange(ByteRange range, long fileLength) {
+        return "bytes " + range.start + "-" + range.end + "/" + fileLength;
+    }
+
+    private record ByteRange(long start, long end) {
+
+        long length() {
+            return end - start + 1;
+        }
+
+    }
+
+}
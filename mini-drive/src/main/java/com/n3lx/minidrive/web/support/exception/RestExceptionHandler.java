@@ -1,7 +1,19 @@
 package com.n3lx.minidrive.web.support.exception;
 
+import com.n3lx.minidrive.service.exception.ArchiveJobNotFoundException;
+import com.n3lx.minidrive.service.exception.ArchiveJobNotReadyException;
+import com.n3lx.minidrive.service.exception.ArchiveJobRejectedException;
+import com.n3lx.minidrive.service.exception.IncompleteUploadException;
+import com.n3lx.minidrive.service.exception.InvalidInstantUploadException;
+import com.n3lx.minidrive.service.exception.InvalidListingParameterException;
+import com.n3lx.minidrive.service.exception.InvalidUploadChunkException;
+import com.n3lx.minidrive.service.exception.LoginThrottledException;
+import com.n3lx.minidrive.service.exception.PasswordHashingRejectedException;
+import com.n3lx.minidrive.service.exception.QuotaExceededException;
+import com.n3lx.minidrive.service.exception.UploadSessionNotFoundException;
 import jakarta.validation.ConstraintViolationException;
 import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -95,4 +107,120 @@ public class RestExceptionHandler {
         return new ResponseEntity<>(errorMessage, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(UploadSessionNotFoundException.class)
+    public ResponseEntity<Object> handleUploadSessionNotFoundException(UploadSessionNotFoundException exception) {
+        var errorMessage = RestErrorMessage.builder()
+                .timestamp(Timestamp.from(Instant.now()))
+                .message(exception.getMessage())
+                .build();
+
+        return new ResponseEntity<>(errorMessage, HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(InvalidUploadChunkException.class)
+    public ResponseEntity<Object> handleInvalidUploadChunkException(InvalidUploadChunkException exception) {
+        var errorMessage = RestErrorMessage.builder()
+                .timestamp(Timestamp.from(Instant.now()))
+                .message(exception.getMessage())
+                .build();
+
+        return new ResponseEntity<>(errorMessage, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidListingParameterException.class)
+    public ResponseEntity<Object> handleInvalidListingParameterException(InvalidListingParameterException exception) {
+        var errorMessage = RestErrorMessage.builder()
+                .timestamp(Timestamp.from(Instant.now()))
+                .message(exception.getMessage())
+                .build();
+
+        return new ResponseEntity<>(errorMessage, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidInstantUploadException.class)
+    public ResponseEntity<Object> handleInvalidInstantUploadException(InvalidInstantUploadException exception) {
+        var errorMessage = RestErrorMessage.builder()
+                .timestamp(Timestamp.from(Instant.now()))
+                .message(exception.getMessage())
+                .build();
+
+        return new ResponseEntity<>(errorMessage, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(IncompleteUploadException.class)
+    public ResponseEntity<Object> handleIncompleteUploadException(IncompleteUploadException exception) {
+        var errorMessage = RestErrorMessage.builder()
+                .timestamp(Timestamp.from(Instant.now()))
+                .message(exception.getMessage())
+                .build();
+
+        return new ResponseEntity<>(errorMessage, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<Object> handleQuotaExceededException(QuotaExceededException exception) {
+        var errorMessage = RestErrorMessage.builder()
+                .timestamp(Timestamp.from(Instant.now()))
+                .message(exception.getMessage())
+                .build();
+
+        return new ResponseEntity<>(errorMessage, HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    @ExceptionHandler(ArchiveJobNotFoundException.class)
+    public ResponseEntity<Object> handleArchiveJobNotFoundException(ArchiveJobNotFoundException exception) {
+        var errorMessage = RestErrorMessage.builder()
+                .timestamp(Timestamp.from(Instant.now()))
+                .message(exception.getMessage())
+                .build();
+
+        return new ResponseEntity<>(errorMessage, HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(ArchiveJobNotReadyException.class)
+    public ResponseEntity<Object> handleArchiveJobNotReadyException(ArchiveJobNotReadyException exception) {
+        var errorMessage = RestErrorMessage.builder()
+                .timestamp(Timestamp.from(Instant.now()))
+                .message(exception.getMessage())
+                .build();
+
+        return new ResponseEntity<>(errorMessage, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(ArchiveJobRejectedException.class)
+    public ResponseEntity<Object> handleArchiveJobRejectedException(ArchiveJobRejectedException exception) {
+        var errorMessage = RestErrorMessage.builder()
+                .timestamp(Timestamp.from(Instant.now()))
+                .message(exception.getMessage())
+                .build();
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(exception.getRetryAfterInSeconds()))
+                .body(errorMessage);
+    }
+
+    @ExceptionHandler(PasswordHashingRejectedException.class)
+    public ResponseEntity<Object> handlePasswordHashingRejectedException(PasswordHashingRejectedException exception) {
+        var errorMessage = RestErrorMessage.builder()
+                .timestamp(Timestamp.from(Instant.now()))
+                .message(exception.getMessage())
+                .build();
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(exception.getRetryAfterInSeconds()))
+                .body(errorMessage);
+    }
+
+    @ExceptionHandler(LoginThrottledException.class)
+    public ResponseEntity<Object> handleLoginThrottledException(LoginThrottledException exception) {
+        var errorMessage = RestErrorMessage.builder()
+                .timestamp(Timestamp.from(Instant.now()))
+                .message(exception.getMessage())
+                .build();
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(exception.getRetryAfterInSeconds()))
+                .body(errorMessage);
+    }
+
 }
@@ -0,0 +1,16 @@
+package com.n3lx.minidrive.web.support.payload;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public class InstantUploadRequest {
+
+    private final String fileName;
+
+    private final String checksum;
+
+    private final Long fileSize;
+
+}
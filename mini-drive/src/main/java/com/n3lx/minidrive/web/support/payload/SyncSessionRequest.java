@@ -0,0 +1,19 @@
+package com.n3lx.minidrive.web.support.payload;
+
+import com.n3lx.minidrive.dto.ChunkDTO;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@AllArgsConstructor
+@Getter
+public class SyncSessionRequest {
+
+    private final String fileName;
+
+    private final String baseFileName;
+
+    private final List<ChunkDTO> chunks;
+
+}
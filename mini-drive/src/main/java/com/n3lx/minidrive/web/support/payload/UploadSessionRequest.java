@@ -0,0 +1,16 @@
+package com.n3lx.minidrive.web.support.payload;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public class UploadSessionRequest {
+
+    private final String fileName;
+
+    private final Long fileSize;
+
+    private final Integer chunkSize;
+
+}
@@ -0,0 +1,32 @@
+package com.n3lx.minidrive.web.support.quota;
+
+import com.n3lx.minidrive.entity.User;
+import com.n3lx.minidrive.service.contract.QuotaService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Rejects uploads that would exceed the quota of their owner before the request body is read,
+ * based on the declared content length. Uploads without a declared length are checked once they are stored.
+ */
+@Component
+public class QuotaInterceptor implements HandlerInterceptor {
+
+    @Autowired
+    QuotaService quotaService;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        var contentLength = request.getContentLengthLong();
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (contentLength > 0 && authentication != null && authentication.getPrincipal() instanceof User user) {
+            quotaService.checkQuota(user.getId(), contentLength);
+        }
+        return true;
+    }
+
+}
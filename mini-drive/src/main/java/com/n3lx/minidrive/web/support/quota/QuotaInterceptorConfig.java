@@ -0,0 +1,20 @@
+package com.n3lx.minidrive.web.support.quota;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class QuotaInterceptorConfig implements WebMvcConfigurer {
+
+    @Autowired
+    QuotaInterceptor quotaInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(quotaInterceptor)
+                .addPathPatterns("/api/storage/upload", "/api/storage/upload/stream");
+    }
+
+}
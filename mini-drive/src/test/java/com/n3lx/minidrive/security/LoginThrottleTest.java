@@ -0,0 +1,48 @@
+package com.n3lx.minidrive.security;
+
+import com.n3lx.minidrive.service.exception.LoginThrottledException;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoginThrottleTest {
+
+    LoginThrottle createLoginThrottle() {
+        var loginThrottle = new LoginThrottle();
+        ReflectionTestUtils.setField(loginThrottle, "enabled", true);
+        ReflectionTestUtils.setField(loginThrottle, "sketchWidth", 1024);
+        ReflectionTestUtils.setField(loginThrottle, "windowInSeconds", 900);
+        ReflectionTestUtils.setField(loginThrottle, "maxFailuresPerUsernameAndAddress", 5);
+        ReflectionTestUtils.setField(loginThrottle, "maxFailuresPerUsername", 20);
+        ReflectionTestUtils.setField(loginThrottle, "maxFailuresPerAddress", 50);
+        ReflectionTestUtils.setField(loginThrottle, "initialBackoffInSeconds", 60);
+        ReflectionTestUtils.setField(loginThrottle, "maxBackoffInSeconds", 900);
+        ReflectionTestUtils.invokeMethod(loginThrottle, "init");
+        return loginThrottle;
+    }
+
+    @Test
+    public void checkAllowed_failuresFromOneAddress_usernameAllowedFromOtherAddresses() {
+        var loginThrottle = createLoginThrottle();
+        for (int i = 0; i < 5; i++) {
+            loginThrottle.recordFailure("testUser", "192.168.0.1");
+        }
+
+        assertThrows(LoginThrottledException.class, () -> loginThrottle.checkAllowed("testUser", "192.168.0.1"));
+        assertDoesNotThrow(() -> loginThrottle.checkAllowed("testUser", "192.168.0.2"));
+        assertDoesNotThrow(() -> loginThrottle.checkAllowed("otherUser", "192.168.0.1"));
+    }
+
+    @Test
+    public void checkAllowed_failuresFromManyAddresses_usernameBlockedOnEveryAddress() {
+        var loginThrottle = createLoginThrottle();
+        for (int i = 0; i < 20; i++) {
+            loginThrottle.recordFailure("testUser", "192.168.0." + i);
+        }
+
+        assertThrows(LoginThrottledException.class, () -> loginThrottle.checkAllowed("testUser", "192.168.1.1"));
+        assertDoesNotThrow(() -> loginThrottle.checkAllowed("otherUser", "192.168.1.1"));
+    }
+
+}
@@ -1,9 +1,14 @@
 package com.n3lx.minidrive.security;
 
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
 
+import java.util.Date;
+
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.Matchers.*;
 
@@ -141,4 +146,21 @@ public class SecurityFilterChainTest {
                 .statusCode(not(403));
     }
 
+    @Test
+    public void listFiles_tokenSignedWithDifferentKey_forbiddenStatus() {
+        var token = Jwts.builder()
+                .setSubject("testUser")
+                .setExpiration(new Date(System.currentTimeMillis() + 60000))
+                .signWith(Keys.secretKeyFor(SignatureAlgorithm.HS512), SignatureAlgorithm.HS512)
+                .compact();
+
+        given()
+                .port(port)
+                .auth().oauth2(token)
+                .when()
+                .get("/api/storage/listfiles")
+                .then()
+                .statusCode(403);
+    }
+
 }
@@ -0,0 +1,49 @@
+package com.n3lx.minidrive.security.jwt;
+
+import com.n3lx.minidrive.entity.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class TokenRevocationListTest {
+
+    @Autowired
+    JWTUtil jwtUtil;
+
+    @Autowired
+    TokenRevocationList tokenRevocationList;
+
+    User getTestUser(String username) {
+        return User.builder()
+                .id(1L)
+                .username(username)
+                .roles(Set.of("ROLE_USER"))
+                .build();
+    }
+
+    @Test
+    public void isRevoked_tokenIssuedRightBeforeUserRevocation_isRevoked() {
+        var verifiedToken = jwtUtil.verifyToken(jwtUtil.generateToken(getTestUser("revokedUser")));
+
+        tokenRevocationList.revokeUserTokens("revokedUser");
+
+        assertTrue(tokenRevocationList.isRevoked(verifiedToken));
+    }
+
+    @Test
+    public void isRevoked_revokedTokenId_onlyThatTokenRevoked() {
+        var revokedToken = jwtUtil.verifyToken(jwtUtil.generateToken(getTestUser("loggedOutUser")));
+        var otherToken = jwtUtil.verifyToken(jwtUtil.generateToken(getTestUser("loggedOutUser")));
+
+        tokenRevocationList.revokeToken(revokedToken);
+
+        assertTrue(tokenRevocationList.isRevoked(revokedToken));
+        assertFalse(tokenRevocationList.isRevoked(otherToken));
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.n3lx.minidrive.service.archive;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ParallelZipWriterTest {
+
+    private static final int blockSize = 64 * 1024;
+
+    private final ForkJoinPool compressionPool = new ForkJoinPool(4);
+
+    @AfterAll
+    void shutdownPool() {
+        compressionPool.shutdownNow();
+    }
+
+    byte[] writeArchive(Map<String, byte[]> entries) throws IOException {
+        var outputStream = new ByteArrayOutputStream();
+        try (var zipWriter = new ParallelZipWriter(outputStream, compressionPool, 3, blockSize, 6, 8192)) {
+            for (var entry : entries.entrySet()) {
+                zipWriter.putEntry(entry.getKey(), System.currentTimeMillis(),
+                        () -> new ByteArrayInputStream(entry.getValue()));
+            }
+            zipWriter.finish();
+        }
+        return outputStream.toByteArray();
+    }
+
+    Map<String, byte[]> readArchive(byte[] archive) throws IOException {
+        var entries = new LinkedHashMap<String, byte[]>();
+        try (var zipInputStream = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry zipEntry;
+            while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+                entries.put(zipEntry.getName(), zipInputStream.readAllBytes());
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    public void putEntry_entriesSpanningMultipleBlocks_archiveContainsOriginalContents() throws IOException {
+        var random = new Random(0);
+        var text = new byte[5 * blockSize + 123];
+        for (var i = 0; i < text.length; i++) {
+            text[i] = (byte) ('a' + random.nextInt(8));
+        }
+        var randomBytes = new byte[3 * blockSize];
+        random.nextBytes(randomBytes);
+
+        var entries = new LinkedHashMap<String, byte[]>();
+        entries.put("empty.txt", new byte[0]);
+        entries.put("text.txt", text);
+        entries.put("exactly two blocks.txt", new byte[2 * blockSize]);
+        entries.put("random.bin", randomBytes);
+        entries.put("small.txt", "Bee Movie".getBytes(StandardCharsets.UTF_8));
+
+        var actualEntries = readArchive(writeArchive(entries));
+
+        assertEquals(entries.keySet().stream().toList(), actualEntries.keySet().stream().toList());
+        for (var entry : entries.entrySet()) {
+            assertArrayEquals(entry.getValue(), actualEntries.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void finish_noEntries_writesEmptyArchive() throws IOException {
+        var actualEntries = readArchive(writeArchive(Map.of()));
+
+        assertTrue(actualEntries.isEmpty());
+    }
+
+    @Test
+    public void putEntry_incompressibleContent_entryIsStored(@TempDir Path tempDir) throws IOException {
+        var randomBytes = new byte[2 * blockSize + 17];
+        new Random(0).nextBytes(randomBytes);
+        var text = "Bee Movie ".repeat(10000).getBytes(StandardCharsets.UTF_8);
+        var jpegHeader = new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0};
+
+        var archivePath = tempDir.resolve("archive.zip");
+        try (var zipWriter = new ParallelZipWriter(new FileOutputStream(archivePath.toFile()), compressionPool,
+                3, blockSize, 6, 8192, true)) {
+            zipWriter.putEntry("random.bin", System.currentTimeMillis(), () -> new ByteArrayInputStream(randomBytes));
+            zipWriter.putEntry("text.txt", System.currentTimeMillis(), () -> new ByteArrayInputStream(text));
+            zipWriter.putEntry("photo", System.currentTimeMillis(), () -> new ByteArrayInputStream(jpegHeader));
+            zipWriter.finish();
+        }
+
+        try (var zipFile = new ZipFile(archivePath.toFile())) {
+            var randomEntry = zipFile.getEntry("random.bin");
+            assertEquals(ZipEntry.STORED, randomEntry.getMethod());
+            assertArrayEquals(randomBytes, zipFile.getInputStream(randomEntry).readAllBytes());
+
+            var textEntry = zipFile.getEntry("text.txt");
+            assertEquals(ZipEntry.DEFLATED, textEntry.getMethod());
+            assertArrayEquals(text, zipFile.getInputStream(textEntry).readAllBytes());
+
+            var photoEntry = zipFile.getEntry("photo");
+            assertEquals(ZipEntry.STORED, photoEntry.getMethod());
+            assertArrayEquals(jpegHeader, zipFile.getInputStream(photoEntry).readAllBytes());
+        }
+    }
+
+    @Test
+    public void putEntry_incompressibleContent_archiveIsReadableAsStream() throws IOException {
+        var randomBytes = new byte[2 * blockSize + 17];
+        new Random(0).nextBytes(randomBytes);
+        var text = "Bee Movie ".repeat(10000).getBytes(StandardCharsets.UTF_8);
+
+        var outputStream = new ByteArrayOutputStream();
+        try (var zipWriter = new ParallelZipWriter(outputStream, compressionPool, 3, blockSize, 6, 8192, true)) {
+            zipWriter.putEntry("random.bin", System.currentTimeMillis(), () -> new ByteArrayInputStream(randomBytes));
+            zipWriter.putEntry("text.txt", System.currentTimeMillis(), () -> new ByteArrayInputStream(text));
+            zipWriter.putEntry("empty.bin", System.currentTimeMillis(), () -> new ByteArrayInputStream(new byte[0]));
+            zipWriter.finish();
+        }
+        var actualEntries = readArchive(outputStream.toByteArray());
+
+        assertArrayEquals(randomBytes, actualEntries.get("random.bin"));
+        assertArrayEquals(text, actualEntries.get("text.txt"));
+        assertArrayEquals(new byte[0], actualEntries.get("empty.bin"));
+    }
+
+    @Test
+    public void putEntry_storedContentChangedWhileBeingRead_throwsException() throws IOException {
+        var random = new Random(0);
+        var outputStream = new ByteArrayOutputStream();
+        try (var zipWriter = new ParallelZipWriter(outputStream, compressionPool, 3, blockSize, 6, 8192, true)) {
+            assertThrows(IOException.class, () -> zipWriter.putEntry("random.bin", System.currentTimeMillis(), () -> {
+                var randomBytes = new byte[blockSize + 17];
+                random.nextBytes(randomBytes);
+                return new ByteArrayInputStream(randomBytes);
+            }));
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.n3lx.minidrive.service.index;
+
+import com.n3lx.minidrive.entity.User;
+import com.n3lx.minidrive.mapper.UserMapper;
+import com.n3lx.minidrive.repository.StoredFileRepository;
+import com.n3lx.minidrive.service.UserService;
+import com.n3lx.minidrive.service.contract.FileStorageService;
+import com.n3lx.minidrive.service.storage.StorageLayout;
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "app.fileStorage.index.type=database")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class DatabaseFileIndexTest {
+
+    @Autowired
+    UserService userService;
+
+    @Autowired
+    UserMapper userMapper;
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    @Autowired
+    FileStorageService fileStorageService;
+
+    @Autowired
+    StorageLayout storageLayout;
+
+    @Autowired
+    DatabaseFileIndex fileIndex;
+
+    @Autowired
+    StoredFileRepository storedFileRepository;
+
+    @BeforeEach
+    @AfterEach
+    void clearRootDirectory() throws IOException {
+        var rootDirPath = Paths.get(propertiesUtil.getRootDirAbsolutePath());
+        if (!Files.isDirectory(rootDirPath)) {
+            return;
+        }
+        try (var filePaths = Files.walk(rootDirPath)) {
+            filePaths
+                    .filter(path -> !path.equals(rootDirPath))
+                    .forEach(path -> FileSystemUtils.deleteRecursively(new File(path.toUri())));
+        }
+    }
+
+    @BeforeEach
+    void createTestUser() {
+        try {
+            userService.create(userMapper.mapToDTO(getTestUser()));
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @AfterEach
+    void deleteTestUser() {
+        userService.delete(getTestUserId());
+    }
+
+    @AfterAll
+    void delete() {
+        FileSystemUtils.deleteRecursively(new File(propertiesUtil.getRootDirAbsolutePath()));
+    }
+
+    User getTestUser() {
+        return User.builder()
+                .username("testUser")
+                .password("12345678")
+                .build();
+    }
+
+    Long getTestUserId() {
+        return userService.getByUsername(getTestUser().getUsername()).getId();
+    }
+
+    void storeFile(String filename, String contents, Long ownerId) {
+        fileStorageService.store(new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)),
+                filename, ownerId);
+    }
+
+    List<String> getNames(List<IndexedFile> indexedFiles) {
+        return indexedFiles.stream()
+                .map(IndexedFile::name)
+                .toList();
+    }
+
+    @Test
+    public void listFilesAfter_storedFiles_returnsPageSortedByName() {
+        var ownerId = getTestUserId();
+        storeFile("c.txt", "Bee", ownerId);
+        storeFile("a.txt", "Bee Movie", ownerId);
+        storeFile("b.txt", "Bee Movie Transcript", ownerId);
+
+        assertEquals(List.of("a.txt", "b.txt", "c.txt"), getNames(fileIndex.listFiles(ownerId)));
+        assertEquals(List.of("a.txt", "b.txt"), getNames(fileIndex.listFilesAfter(ownerId, null, 2)));
+        assertEquals(List.of("c.txt"), getNames(fileIndex.listFilesAfter(ownerId, "b.txt", 2)));
+        assertEquals(List.of(), getNames(fileIndex.listFilesAfter(ownerId, "c.txt", 2)));
+    }
+
+    @Test
+    public void refresh_fileChangedOnDisk_updatesIndexedFileAndVersion() throws IOException {
+        var ownerId = getTestUserId();
+        storeFile("a.txt", "Bee", ownerId);
+        var filePath = storageLayout.resolve(ownerId, "a.txt");
+        Files.writeString(filePath, "Bee Movie Transcript");
+        var previousVersion = fileIndex.getVersion(ownerId);
+
+        fileIndex.refresh(ownerId, "a.txt");
+
+        var indexedFiles = fileIndex.listFiles(ownerId);
+        assertEquals(1, indexedFiles.size());
+        assertEquals(Files.size(filePath), indexedFiles.get(0).size());
+        assertNotEquals(previousVersion, fileIndex.getVersion(ownerId));
+    }
+
+    @Test
+    public void refresh_fileDeletedOnDisk_removesIndexedFile() throws IOException {
+        var ownerId = getTestUserId();
+        storeFile("a.txt", "Bee", ownerId);
+        storeFile("b.txt", "Bee Movie", ownerId);
+        Files.delete(storageLayout.resolve(ownerId, "a.txt"));
+
+        fileIndex.refresh(ownerId, "a.txt");
+
+        assertEquals(List.of("b.txt"), getNames(fileIndex.listFiles(ownerId)));
+    }
+
+    @Test
+    public void getVersion_filesChangedByOtherInstance_returnsNewVersion() {
+        var ownerId = getTestUserId();
+        var initialVersion = fileIndex.getVersion(ownerId);
+
+        //Made directly in the table, as another instance sharing the database would
+        storedFileRepository.upsert(ownerId, "a.txt", 3, new Timestamp(System.currentTimeMillis()), null, "a.txt");
+        var versionAfterUpsert = fileIndex.getVersion(ownerId);
+        storedFileRepository.deleteByOwnerIdAndName(ownerId, "a.txt");
+        var versionAfterDelete = fileIndex.getVersion(ownerId);
+
+        assertNotEquals(initialVersion, versionAfterUpsert);
+        assertNotEquals(versionAfterUpsert, versionAfterDelete);
+        assertNotEquals(initialVersion, versionAfterDelete);
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.n3lx.minidrive.service.storage;
+
+import com.n3lx.minidrive.entity.User;
+import com.n3lx.minidrive.mapper.UserMapper;
+import com.n3lx.minidrive.service.UserService;
+import com.n3lx.minidrive.service.contract.FileStorageService;
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "app.fileStorage.layout.type=sharded")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class StorageLayoutMigratorTest {
+
+    @Autowired
+    UserService userService;
+
+    @Autowired
+    UserMapper userMapper;
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    @Autowired
+    FileStorageService fileStorageService;
+
+    @Autowired
+    StorageLayout storageLayout;
+
+    @Autowired
+    StorageLayoutMigrator storageLayoutMigrator;
+
+    @BeforeEach
+    @AfterEach
+    void clearRootDirectory() throws IOException {
+        var rootDirPath = Paths.get(propertiesUtil.getRootDirAbsolutePath());
+        try (var filePaths = Files.walk(rootDirPath)) {
+            filePaths
+                    .filter(path -> !path.equals(rootDirPath))
+                    .forEach(path -> FileSystemUtils.deleteRecursively(new File(path.toUri())));
+        }
+    }
+
+    @BeforeEach
+    void createTestUser() {
+        try {
+            userService.create(userMapper.mapToDTO(getTestUser()));
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @AfterEach
+    void deleteTestUser() {
+        userService.delete(getTestUserId());
+    }
+
+    @AfterAll
+    void delete() {
+        FileSystemUtils.deleteRecursively(new File(propertiesUtil.getRootDirAbsolutePath()));
+    }
+
+    User getTestUser() {
+        return User.builder()
+                .username("testUser")
+                .password("12345678")
+                .build();
+    }
+
+    Long getTestUserId() {
+        return userService.getByUsername(getTestUser().getUsername()).getId();
+    }
+
+    /**
+     * @return Name of the first level shard directory of a given file
+     */
+    String getShardName(Long ownerId, String filename) {
+        var userDirectoryPath = storageLayout.getUserDirectory(ownerId);
+        return userDirectoryPath.relativize(storageLayout.getShardedPath(ownerId, filename)).getName(0).toString();
+    }
+
+    Path getTestFilePath() {
+        return Paths.get("src/test/resources/Bee Movie Transcript.txt").toAbsolutePath().normalize();
+    }
+
+    @Test
+    public void migrate_fileInFlatLayout_movesFileIntoShardDirectory() throws IOException {
+        var ownerId = getTestUserId();
+        var filename = getTestFilePath().getFileName().toString();
+        var flatFilePath = storageLayout.getFlatPath(ownerId, filename);
+        Files.createDirectories(flatFilePath.getParent());
+        Files.copy(getTestFilePath(), flatFilePath);
+        assertTrue(fileStorageService.exists(filename, ownerId));
+
+        storageLayoutMigrator.migrate();
+
+        var shardedFilePath = storageLayout.getShardedPath(ownerId, filename);
+        assertFalse(Files.exists(flatFilePath));
+        assertEquals(-1L, Files.mismatch(getTestFilePath(), shardedFilePath));
+        assertTrue(fileStorageService.listAllFiles(ownerId).contains(filename));
+        assertEquals(shardedFilePath, Paths.get(fileStorageService.load(filename, ownerId).getURI()));
+    }
+
+    @Test
+    public void migrate_fileNamedLikeShardDirectoryOfOtherFile_movesBothFiles() throws IOException {
+        var ownerId = getTestUserId();
+        var filename = getTestFilePath().getFileName().toString();
+        var shardName = getShardName(ownerId, filename);
+        var flatFilePath = storageLayout.getFlatPath(ownerId, filename);
+        var flatShardNamedFilePath = storageLayout.getFlatPath(ownerId, shardName);
+        Files.createDirectories(flatFilePath.getParent());
+        Files.copy(getTestFilePath(), flatFilePath);
+        Files.writeString(flatShardNamedFilePath, shardName);
+
+        storageLayoutMigrator.migrate();
+
+        assertEquals(-1L, Files.mismatch(getTestFilePath(), storageLayout.getShardedPath(ownerId, filename)));
+        assertEquals(shardName, Files.readString(storageLayout.getShardedPath(ownerId, shardName)));
+        assertTrue(Files.isDirectory(flatShardNamedFilePath));
+        assertTrue(fileStorageService.listAllFiles(ownerId).containsAll(List.of(filename, shardName)));
+    }
+
+    @Test
+    public void exists_shardDirectoryNamedLikeFile_fileCanBeStored() throws IOException {
+        var ownerId = getTestUserId();
+        var filename = getTestFilePath().getFileName().toString();
+        var shardName = getShardName(ownerId, filename);
+        try (var inputStream = Files.newInputStream(getTestFilePath())) {
+            fileStorageService.store(inputStream, filename, ownerId);
+        }
+        assertTrue(Files.isDirectory(storageLayout.getFlatPath(ownerId, shardName)));
+        assertFalse(fileStorageService.exists(shardName, ownerId));
+
+        try (var inputStream = new ByteArrayInputStream(shardName.getBytes(StandardCharsets.UTF_8))) {
+            fileStorageService.store(inputStream, shardName, ownerId);
+        }
+
+        assertTrue(fileStorageService.exists(shardName, ownerId));
+        assertEquals(storageLayout.getShardedPath(ownerId, shardName),
+                Paths.get(fileStorageService.load(shardName, ownerId).getURI()));
+    }
+
+}
@@ -0,0 +1,197 @@
+package com.n3lx.minidrive.web.controller;
+
+import com.n3lx.minidrive.entity.User;
+import com.n3lx.minidrive.mapper.UserMapper;
+import com.n3lx.minidrive.security.jwt.JWTUtil;
+import com.n3lx.minidrive.service.UserService;
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.ZipInputStream;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ArchiveJobControllerTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    UserService userService;
+
+    @Autowired
+    UserMapper userMapper;
+
+    @Autowired
+    JWTUtil jwtUtil;
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    @BeforeEach
+    @AfterEach
+    void clearRootDirectory() throws IOException {
+        var rootDirPath = Paths.get(propertiesUtil.getRootDirAbsolutePath());
+        try (var filePaths = Files.walk(rootDirPath)) {
+            filePaths
+                    .filter(path -> !path.equals(rootDirPath))
+                    .forEach(path -> FileSystemUtils.deleteRecursively(new File(path.toUri())));
+        }
+    }
+
+    @BeforeEach
+    void createTestUser() {
+        try {
+            userService.create(userMapper.mapToDTO(getTestUser()));
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @AfterEach
+    void deleteTestUser() {
+        var userId = userService.getByUsername(getTestUser().getUsername()).getId();
+        userService.delete(userId);
+    }
+
+    @AfterAll
+    void delete() {
+        FileSystemUtils.deleteRecursively(new File(propertiesUtil.getRootDirAbsolutePath()));
+    }
+
+    User getTestUser() {
+        return User.builder()
+                .username("testUser")
+                .password("12345678")
+                .build();
+    }
+
+    Path getTestUserDirectoryPath() {
+        var userDTO = userService.getByUsername("testUser");
+        return Paths.get(propertiesUtil.getRootDirAbsolutePath(), String.valueOf(userDTO.getId())).normalize();
+    }
+
+    Path getTestFilePath() {
+        return Paths.get("src/test/resources/Bee Movie Transcript.txt").toAbsolutePath().normalize();
+    }
+
+    void copyTestFileToTestUserDirectory() {
+        try {
+            getTestUserDirectoryPath().toFile().mkdir();
+            Files.copy(getTestFilePath(), getTestUserDirectoryPath().resolve(getTestFilePath().getFileName()));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    String waitForJobStatus(String jobId) throws InterruptedException {
+        for (var attempt = 0; attempt < 100; attempt++) {
+            String status = given()
+                    .port(port)
+                    .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                    .when()
+                    .get("/api/storage/archivejobs/" + jobId)
+                    .then()
+                    .statusCode(200)
+                    .extract()
+                    .path("status");
+            if (!status.equals("QUEUED") && !status.equals("RUNNING")) {
+                return status;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("Archive job " + jobId + " did not finish in time");
+    }
+
+    @Test
+    public void submit_listWithSingleValidFile_archiveCanBeDownloadedOnceCompleted()
+            throws IOException, InterruptedException {
+        copyTestFileToTestUserDirectory();
+
+        String jobId = given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/json")
+                .body("[\"Bee Movie Transcript.txt\"]")
+                .when()
+                .post("/api/storage/archivejobs")
+                .then()
+                .statusCode(202)
+                .header("Location", containsString("/api/storage/archivejobs/"))
+                .body("totalFiles", equalTo(1))
+                .body("totalBytes", equalTo((int) Files.size(getTestFilePath())))
+                .extract()
+                .path("jobId");
+
+        assertEquals("COMPLETED", waitForJobStatus(jobId));
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .when()
+                .get("/api/storage/archivejobs/" + jobId)
+                .then()
+                .statusCode(200)
+                .body("processedFiles", equalTo(1))
+                .body("processedBytes", equalTo((int) Files.size(getTestFilePath())))
+                .body("estimatedSecondsRemaining", equalTo(0));
+
+        var body = given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .when()
+                .get("/api/storage/archivejobs/" + jobId + "/download")
+                .then()
+                .statusCode(200)
+                .extract()
+                .asByteArray();
+
+        try (var zipInputStream = new ZipInputStream(new ByteArrayInputStream(body))) {
+            var zipEntry = zipInputStream.getNextEntry();
+            assertNotNull(zipEntry);
+            assertEquals("Bee Movie Transcript.txt", zipEntry.getName());
+            assertArrayEquals(Files.readAllBytes(getTestFilePath()), zipInputStream.readAllBytes());
+            assertNull(zipInputStream.getNextEntry());
+        }
+    }
+
+    @Test
+    public void submit_listOfSingleNonExistingFile_returnsBadRequest() {
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/json")
+                .body("[\"1.txt\"]")
+                .when()
+                .post("/api/storage/archivejobs")
+                .then()
+                .statusCode(400)
+                .body("message", equalTo("File 1.txt was not found in storage"))
+                .body("timestamp", notNullValue());
+    }
+
+    @Test
+    public void getJob_nonExistingJob_returnsNotFound() {
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .when()
+                .get("/api/storage/archivejobs/1")
+                .then()
+                .statusCode(404)
+                .body("message", equalTo("Archive job 1 does not exist"));
+    }
+
+}
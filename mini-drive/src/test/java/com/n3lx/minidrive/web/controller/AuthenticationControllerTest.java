@@ -1,6 +1,8 @@
 package com.n3lx.minidrive.web.controller;
 
 import com.n3lx.minidrive.dto.UserDTO;
+import com.n3lx.minidrive.security.jwt.JWTUtil;
+import com.n3lx.minidrive.service.UserService;
 import io.restassured.parsing.Parser;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -9,12 +11,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static io.restassured.RestAssured.*;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"app.passwordHashing.threadCount=1", "app.passwordHashing.queueCapacity=1"})
 public class AuthenticationControllerTest {
 
     @LocalServerPort
@@ -23,6 +32,15 @@ public class AuthenticationControllerTest {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private JWTUtil jwtUtil;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private UserService userService;
+
     @BeforeEach
     @AfterEach
     void clearTables() {
@@ -80,6 +98,36 @@ public class AuthenticationControllerTest {
                 .body("timestamp", notNullValue());
     }
 
+    @Test
+    public void login_repeatedFailuresForSameUsername_tooManyRequests() {
+        var request = UserDTO.builder()
+                .username("throttledUser")
+                .password("12345678")
+                .build();
+        for (int i = 0; i < 5; i++) {
+            given()
+                    .port(port)
+                    .contentType("application/json")
+                    .body(request)
+                    .when()
+                    .post("/api/auth/login")
+                    .then()
+                    .statusCode(403);
+        }
+
+        given()
+                .port(port)
+                .contentType("application/json")
+                .body(request)
+                .when()
+                .post("/api/auth/login")
+                .then()
+                .statusCode(429)
+                .header("Retry-After", notNullValue())
+                .defaultParser(Parser.JSON)
+                .body("timestamp", notNullValue());
+    }
+
     @Test
     public void login_correctCredentials_successfullyLoggedIn() {
         registerTestUser();
@@ -100,6 +148,100 @@ public class AuthenticationControllerTest {
                 .body("token", notNullValue());
     }
 
+    @Test
+    public void login_correctCredentials_tokenResolvesPrincipal() {
+        registerTestUser();
+
+        var token = given()
+                .port(port)
+                .contentType("application/json")
+                .body(UserDTO.builder()
+                        .username("testUser")
+                        .password("12345678")
+                        .build())
+                .when()
+                .post("/api/auth/login")
+                .then()
+                .statusCode(200)
+                .extract()
+                .<String>path("token");
+
+        var verifiedToken = jwtUtil.verifyToken(token);
+        assertNotNull(verifiedToken.userId());
+        assertTrue(verifiedToken.roles().contains("ROLE_USER"));
+
+        given()
+                .port(port)
+                .auth().oauth2(token)
+                .when()
+                .get("/api/auth/whoami")
+                .then()
+                .statusCode(200)
+                .body(equalTo("testUser"));
+    }
+
+    @Test
+    public void logout_authenticatedUser_tokenNoLongerAccepted() {
+        registerTestUser();
+        var token = given()
+                .port(port)
+                .contentType("application/json")
+                .body(UserDTO.builder()
+                        .username("testUser")
+                        .password("12345678")
+                        .build())
+                .when()
+                .post("/api/auth/login")
+                .then()
+                .statusCode(200)
+                .extract()
+                .<String>path("token");
+
+        given()
+                .port(port)
+                .auth().oauth2(token)
+                .when()
+                .post("/api/auth/logout")
+                .then()
+                .statusCode(204);
+
+        given()
+                .port(port)
+                .auth().oauth2(token)
+                .when()
+                .get("/api/auth/whoami")
+                .then()
+                .statusCode(401);
+    }
+
+    @Test
+    public void whoami_userDeletedAfterLogin_unauthorized() {
+        registerTestUser();
+        var token = given()
+                .port(port)
+                .contentType("application/json")
+                .body(UserDTO.builder()
+                        .username("testUser")
+                        .password("12345678")
+                        .build())
+                .when()
+                .post("/api/auth/login")
+                .then()
+                .statusCode(200)
+                .extract()
+                .<String>path("token");
+
+        userService.delete(userService.getByUsername("testUser").getId());
+
+        given()
+                .port(port)
+                .auth().oauth2(token)
+                .when()
+                .get("/api/auth/whoami")
+                .then()
+                .statusCode(401);
+    }
+
     @Test
     public void register_correctCredentials_successfullyRegistered() {
         given()
@@ -133,6 +275,41 @@ public class AuthenticationControllerTest {
                 .body("timestamp", notNullValue());
     }
 
+    @Test
+    public void register_passwordHashingSaturated_tooManyRequests() {
+        var hashingExecutor = (ThreadPoolExecutor) ReflectionTestUtils.getField(passwordEncoder, "hashingExecutor");
+        var release = new CountDownLatch(1);
+        Runnable blockingTask = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        //The only hashing thread and the only queue slot are both taken
+        hashingExecutor.execute(blockingTask);
+        hashingExecutor.execute(blockingTask);
+
+        try {
+            given()
+                    .port(port)
+                    .contentType("application/json")
+                    .body(UserDTO.builder()
+                            .username("testUser")
+                            .password("12345678")
+                            .build())
+                    .when()
+                    .post("/api/auth/register")
+                    .then()
+                    .statusCode(429)
+                    .header("Retry-After", notNullValue())
+                    .defaultParser(Parser.JSON)
+                    .body("timestamp", notNullValue());
+        } finally {
+            release.countDown();
+        }
+    }
+
     @Test
     public void register_alreadyRegisteredUsername_isForbidden() {
         registerTestUser();
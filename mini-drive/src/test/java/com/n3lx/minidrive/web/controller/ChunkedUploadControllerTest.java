@@ -0,0 +1,217 @@
+package com.n3lx.minidrive.web.controller;
+
+import com.n3lx.minidrive.entity.User;
+import com.n3lx.minidrive.mapper.UserMapper;
+import com.n3lx.minidrive.security.jwt.JWTUtil;
+import com.n3lx.minidrive.service.UserService;
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ChunkedUploadControllerTest {
+
+    private static final int chunkSize = 1024;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    UserService userService;
+
+    @Autowired
+    UserMapper userMapper;
+
+    @Autowired
+    JWTUtil jwtUtil;
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    @BeforeEach
+    @AfterEach
+    void clearRootDirectory() throws IOException {
+        var rootDirPath = Paths.get(propertiesUtil.getRootDirAbsolutePath());
+        try (var filePaths = Files.walk(rootDirPath)) {
+            filePaths
+                    .filter(path -> !path.equals(rootDirPath))
+                    .forEach(path -> FileSystemUtils.deleteRecursively(new File(path.toUri())));
+        }
+    }
+
+    @BeforeEach
+    void createTestUser() {
+        try {
+            userService.create(userMapper.mapToDTO(getTestUser()));
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @AfterEach
+    void deleteTestUser() {
+        var userId = userService.getByUsername(getTestUser().getUsername()).getId();
+        userService.delete(userId);
+    }
+
+    @AfterAll
+    void delete() {
+        FileSystemUtils.deleteRecursively(new File(propertiesUtil.getRootDirAbsolutePath()));
+    }
+
+    User getTestUser() {
+        return User.builder()
+                .username("testUser")
+                .password("12345678")
+                .build();
+    }
+
+    Path getTestUserDirectoryPath() {
+        var userDTO = userService.getByUsername("testUser");
+        return Paths.get(propertiesUtil.getRootDirAbsolutePath(), String.valueOf(userDTO.getId())).normalize();
+    }
+
+    Path getTestFilePath() {
+        return Paths.get("src/test/resources/Bee Movie Transcript.txt").toAbsolutePath().normalize();
+    }
+
+    String createSession() throws IOException {
+        return given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/json")
+                .body(Map.of(
+                        "fileName", getTestFilePath().getFileName().toString(),
+                        "fileSize", Files.size(getTestFilePath()),
+                        "chunkSize", chunkSize))
+                .when()
+                .post("/api/storage/upload/sessions")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("sessionId");
+    }
+
+    void uploadChunk(String sessionId, byte[] fileContents, int chunkNumber) {
+        var chunkStart = chunkNumber * chunkSize;
+        var chunkEnd = Math.min(chunkStart + chunkSize, fileContents.length);
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/octet-stream")
+                .body(Arrays.copyOfRange(fileContents, chunkStart, chunkEnd))
+                .when()
+                .put("/api/storage/upload/sessions/" + sessionId + "/chunks/" + chunkNumber)
+                .then()
+                .statusCode(204);
+    }
+
+    @Test
+    public void commit_allChunksUploadedOutOfOrder_fileWrittenToStorage() throws IOException {
+        var fileContents = Files.readAllBytes(getTestFilePath());
+        var chunkCount = (fileContents.length + chunkSize - 1) / chunkSize;
+        var sessionId = createSession();
+
+        for (var chunkNumber = chunkCount - 1; chunkNumber >= 0; chunkNumber--) {
+            uploadChunk(sessionId, fileContents, chunkNumber);
+        }
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .when()
+                .post("/api/storage/upload/sessions/" + sessionId + "/commit")
+                .then()
+                .statusCode(201);
+
+        var actualUploadedFilePath = getTestUserDirectoryPath().resolve(getTestFilePath().getFileName());
+        assertTrue(actualUploadedFilePath.toFile().exists());
+        assertEquals(-1L, Files.mismatch(getTestFilePath(), actualUploadedFilePath));
+    }
+
+    @Test
+    public void createSession_fileExceedsQuota_returnsPayloadTooLarge() {
+        var quotaInBytes = propertiesUtil.getDefaultQuotaInBytes();
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/json")
+                .body(Map.of(
+                        "fileName", getTestFilePath().getFileName().toString(),
+                        "fileSize", quotaInBytes + 1,
+                        "chunkSize", chunkSize * 1024))
+                .when()
+                .post("/api/storage/upload/sessions")
+                .then()
+                .statusCode(413);
+
+        assertFalse(getTestUserDirectoryPath().resolve(getTestFilePath().getFileName()).toFile().exists());
+    }
+
+    @Test
+    public void getSession_someChunksUploaded_returnsMissingChunks() throws IOException {
+        var fileContents = Files.readAllBytes(getTestFilePath());
+        var sessionId = createSession();
+
+        uploadChunk(sessionId, fileContents, 0);
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .when()
+                .get("/api/storage/upload/sessions/" + sessionId)
+                .then()
+                .statusCode(200)
+                .body("missingChunks", not(hasItem(0)))
+                .body("missingChunks", hasItem(1));
+    }
+
+    @Test
+    public void commit_missingChunks_returnsConflict() throws IOException {
+        var fileContents = Files.readAllBytes(getTestFilePath());
+        var sessionId = createSession();
+
+        uploadChunk(sessionId, fileContents, 0);
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .when()
+                .post("/api/storage/upload/sessions/" + sessionId + "/commit")
+                .then()
+                .statusCode(409)
+                .body("timestamp", notNullValue());
+
+        assertFalse(getTestUserDirectoryPath().resolve(getTestFilePath().getFileName()).toFile().exists());
+    }
+
+    @Test
+    public void getSession_notExistingSession_returnsNotFound() {
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .when()
+                .get("/api/storage/upload/sessions/1")
+                .then()
+                .statusCode(404)
+                .body("message", equalTo("Upload session 1 does not exist"));
+    }
+
+}
@@ -0,0 +1,230 @@
+package com.n3lx.minidrive.web.controller;
+
+import com.n3lx.minidrive.entity.User;
+import com.n3lx.minidrive.mapper.UserMapper;
+import com.n3lx.minidrive.security.jwt.JWTUtil;
+import com.n3lx.minidrive.service.UserService;
+import com.n3lx.minidrive.service.sync.ContentDefinedChunker;
+import com.n3lx.minidrive.utils.PropertiesUtil;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class DeltaSyncControllerTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    UserService userService;
+
+    @Autowired
+    UserMapper userMapper;
+
+    @Autowired
+    JWTUtil jwtUtil;
+
+    @Autowired
+    PropertiesUtil propertiesUtil;
+
+    @BeforeEach
+    @AfterEach
+    void clearRootDirectory() throws IOException {
+        var rootDirPath = Paths.get(propertiesUtil.getRootDirAbsolutePath());
+        try (var filePaths = Files.walk(rootDirPath)) {
+            filePaths
+                    .filter(path -> !path.equals(rootDirPath))
+                    .forEach(path -> FileSystemUtils.deleteRecursively(new File(path.toUri())));
+        }
+    }
+
+    @BeforeEach
+    void createTestUser() {
+        try {
+            userService.create(userMapper.mapToDTO(getTestUser()));
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @BeforeEach
+    void uploadTestFile() {
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/octet-stream")
+                .queryParam("fileName", getTestFilePath().getFileName().toString())
+                .body(getTestFilePath().toFile())
+                .when()
+                .post("/api/storage/upload/stream")
+                .then()
+                .statusCode(201);
+    }
+
+    @AfterEach
+    void deleteTestUser() {
+        var userId = userService.getByUsername(getTestUser().getUsername()).getId();
+        userService.delete(userId);
+    }
+
+    @AfterAll
+    void delete() {
+        FileSystemUtils.deleteRecursively(new File(propertiesUtil.getRootDirAbsolutePath()));
+    }
+
+    User getTestUser() {
+        return User.builder()
+                .username("testUser")
+                .password("12345678")
+                .build();
+    }
+
+    Path getTestUserDirectoryPath() {
+        var userDTO = userService.getByUsername("testUser");
+        return Paths.get(propertiesUtil.getRootDirAbsolutePath(), String.valueOf(userDTO.getId())).normalize();
+    }
+
+    Path getTestFilePath() {
+        return Paths.get("src/test/resources/Bee Movie Transcript.txt").toAbsolutePath().normalize();
+    }
+
+    byte[] getModifiedFileContents() throws IOException {
+        var fileContents = Files.readAllBytes(getTestFilePath());
+        var appendedContents = "\nThe end.".getBytes(StandardCharsets.UTF_8);
+        var modifiedFileContents = Arrays.copyOf(fileContents, fileContents.length + appendedContents.length);
+        System.arraycopy(appendedContents, 0, modifiedFileContents, fileContents.length, appendedContents.length);
+        return modifiedFileContents;
+    }
+
+    List<ContentDefinedChunker.Chunk> split(byte[] contents) throws IOException {
+        return ContentDefinedChunker.split(new ByteArrayInputStream(contents), null);
+    }
+
+    <T> T createSession(List<ContentDefinedChunker.Chunk> chunks, String responsePath) {
+        return given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/json")
+                .body(Map.of(
+                        "fileName", getTestFilePath().getFileName().toString(),
+                        "chunks", chunks.stream()
+                                .map(chunk -> Map.of("checksum", chunk.checksum(), "length", chunk.length()))
+                                .toList()))
+                .when()
+                .post("/api/storage/sync/sessions")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path(responsePath);
+    }
+
+    @Test
+    public void getManifest_storedFile_returnsChunksCoveringFile() throws IOException {
+        var expectedChunks = split(Files.readAllBytes(getTestFilePath()));
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("fileName", getTestFilePath().getFileName().toString())
+                .when()
+                .get("/api/storage/sync/manifest")
+                .then()
+                .statusCode(200)
+                .body("chunks.size()", equalTo(expectedChunks.size()))
+                .body("chunks[0].checksum", equalTo(expectedChunks.get(0).checksum()))
+                .body("maxChunkSize", equalTo(ContentDefinedChunker.maxChunkSize));
+    }
+
+    @Test
+    public void commit_appendedContents_onlyChangedChunkUploaded() throws IOException {
+        var modifiedFileContents = getModifiedFileContents();
+        var chunks = split(modifiedFileContents);
+        var sessionId = given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/json")
+                .body(Map.of(
+                        "fileName", getTestFilePath().getFileName().toString(),
+                        "chunks", chunks.stream()
+                                .map(chunk -> Map.of("checksum", chunk.checksum(), "length", chunk.length()))
+                                .toList()))
+                .when()
+                .post("/api/storage/sync/sessions")
+                .then()
+                .statusCode(201)
+                .body("missingChunks", not(hasItem(chunks.get(0).checksum())))
+                .body("missingChunks", hasItem(chunks.get(chunks.size() - 1).checksum()))
+                .extract()
+                .<String>path("sessionId");
+
+        var lastChunk = chunks.get(chunks.size() - 1);
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/octet-stream")
+                .body(Arrays.copyOfRange(modifiedFileContents, (int) lastChunk.offset(), modifiedFileContents.length))
+                .when()
+                .put("/api/storage/sync/sessions/" + sessionId + "/chunks/" + lastChunk.checksum())
+                .then()
+                .statusCode(204);
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .when()
+                .post("/api/storage/sync/sessions/" + sessionId + "/commit")
+                .then()
+                .statusCode(201);
+
+        var actualFilePath = getTestUserDirectoryPath().resolve(getTestFilePath().getFileName());
+        assertArrayEquals(modifiedFileContents, Files.readAllBytes(actualFilePath));
+    }
+
+    @Test
+    public void createSession_unchangedContents_noChunksMissing() throws IOException {
+        List<String> missingChunks = createSession(split(Files.readAllBytes(getTestFilePath())), "missingChunks");
+
+        assertTrue(missingChunks.isEmpty());
+    }
+
+    @Test
+    public void uploadChunk_contentsNotMatchingChecksum_returnsBadRequest() throws IOException {
+        var modifiedFileContents = getModifiedFileContents();
+        var chunks = split(modifiedFileContents);
+        var lastChunk = chunks.get(chunks.size() - 1);
+        String sessionId = createSession(chunks, "sessionId");
+        var corruptedChunk = Arrays.copyOfRange(modifiedFileContents, (int) lastChunk.offset(),
+                modifiedFileContents.length);
+        corruptedChunk[0]++;
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/octet-stream")
+                .body(corruptedChunk)
+                .when()
+                .put("/api/storage/sync/sessions/" + sessionId + "/chunks/" + lastChunk.checksum())
+                .then()
+                .statusCode(400)
+                .body("timestamp", notNullValue());
+    }
+
+}
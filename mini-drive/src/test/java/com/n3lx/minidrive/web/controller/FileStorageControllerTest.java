@@ -11,11 +11,19 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.util.FileSystemUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipInputStream;
 
 import static io.restassured.RestAssured.*;
 import static org.hamcrest.Matchers.*;
@@ -99,6 +107,19 @@ public class FileStorageControllerTest {
         }
     }
 
+    void uploadTestFileAs(String fileName) {
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/octet-stream")
+                .queryParam("fileName", fileName)
+                .body(getTestFilePath().toFile())
+                .when()
+                .post("/api/storage/upload/stream")
+                .then()
+                .statusCode(201);
+    }
+
     @Test
     public void upload_validPayload_fileWrittenToStorage() throws IOException {
         given()
@@ -143,6 +164,155 @@ public class FileStorageControllerTest {
                 .body("timestamp", notNullValue());
     }
 
+    @Test
+    public void uploadStream_validPayload_fileWrittenToStorage() throws IOException {
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/octet-stream")
+                .queryParam("fileName", getTestFilePath().getFileName().toString())
+                .body(getTestFilePath().toFile())
+                .when()
+                .post("/api/storage/upload/stream")
+                .then()
+                .statusCode(201);
+
+        var actualUploadedFilePath = getTestUserDirectoryPath().resolve(getTestFilePath().getFileName());
+        assertTrue(actualUploadedFilePath.toFile().exists());
+        assertEquals(-1L, Files.mismatch(getTestFilePath(), actualUploadedFilePath));
+    }
+
+    @Test
+    public void uploadStream_validPayload_noTemporaryFileLeftBehind() throws IOException {
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/octet-stream")
+                .queryParam("fileName", getTestFilePath().getFileName().toString())
+                .body(getTestFilePath().toFile())
+                .when()
+                .post("/api/storage/upload/stream")
+                .then()
+                .statusCode(201);
+
+        var uploadDirectoryPath = Paths.get(propertiesUtil.getRootDirAbsolutePath(), propertiesUtil.getUploadDirName());
+        try (var temporaryFilePaths = Files.list(uploadDirectoryPath)) {
+            assertEquals(0, temporaryFilePaths.count());
+        }
+    }
+
+    @Test
+    public void uploadStream_sameContentsUploadedTwice_filesShareStoredContents() throws IOException {
+        for (var fileName : List.of("first.txt", "second.txt")) {
+            given()
+                    .port(port)
+                    .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                    .contentType("application/octet-stream")
+                    .queryParam("fileName", fileName)
+                    .body(getTestFilePath().toFile())
+                    .when()
+                    .post("/api/storage/upload/stream")
+                    .then()
+                    .statusCode(201);
+        }
+
+        var firstFilePath = getTestUserDirectoryPath().resolve("first.txt");
+        var secondFilePath = getTestUserDirectoryPath().resolve("second.txt");
+        assertEquals(-1L, Files.mismatch(getTestFilePath(), secondFilePath));
+        assertTrue(Files.isSameFile(firstFilePath, secondFilePath));
+    }
+
+    @Test
+    public void uploadStream_storedFileModifiedOnDiskBeforeSameContentsUploaded_keepsUploadedContents()
+            throws IOException {
+        uploadTestFileAs("first.txt");
+        var firstFilePath = getTestUserDirectoryPath().resolve("first.txt");
+        //Modified in place with contents of the same size, the file keeps its inode
+        var modifiedContents = Files.readAllBytes(getTestFilePath());
+        Arrays.fill(modifiedContents, (byte) 'x');
+        Files.write(firstFilePath, modifiedContents);
+        //Modification time of a quick write may not differ from the upload at the millisecond precision
+        Files.setLastModifiedTime(firstFilePath,
+                FileTime.fromMillis(Files.getLastModifiedTime(firstFilePath).toMillis() + 1000));
+
+        uploadTestFileAs("second.txt");
+
+        var secondFilePath = getTestUserDirectoryPath().resolve("second.txt");
+        assertEquals(-1L, Files.mismatch(getTestFilePath(), secondFilePath));
+        assertFalse(Files.isSameFile(firstFilePath, secondFilePath));
+    }
+
+    @Test
+    public void uploadInstant_contentsAlreadyUploaded_fileCreatedWithoutTransfer() throws Exception {
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/octet-stream")
+                .queryParam("fileName", "first.txt")
+                .body(getTestFilePath().toFile())
+                .when()
+                .post("/api/storage/upload/stream")
+                .then()
+                .statusCode(201);
+
+        var checksum = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest(Files.readAllBytes(getTestFilePath())));
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/json")
+                .body(Map.of(
+                        "fileName", "second.txt",
+                        "checksum", checksum,
+                        "fileSize", Files.size(getTestFilePath())))
+                .when()
+                .post("/api/storage/upload/instant")
+                .then()
+                .statusCode(201);
+
+        assertEquals(-1L, Files.mismatch(getTestFilePath(), getTestUserDirectoryPath().resolve("second.txt")));
+    }
+
+    @Test
+    public void uploadInstant_unknownContents_returnsNotFound() {
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/json")
+                .body(Map.of(
+                        "fileName", "second.txt",
+                        "checksum", "0".repeat(64),
+                        "fileSize", 1))
+                .when()
+                .post("/api/storage/upload/instant")
+                .then()
+                .statusCode(404);
+
+        assertFalse(getTestUserDirectoryPath().resolve("second.txt").toFile().exists());
+    }
+
+    @Test
+    public void uploadStream_sameFileNameAlreadyInStore_returnsBadRequest() throws IOException {
+        copyTestFileToTestUserDirectory();
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/octet-stream")
+                .queryParam("fileName", getTestFilePath().getFileName().toString())
+                .body("different content")
+                .when()
+                .post("/api/storage/upload/stream")
+                .then()
+                .statusCode(400)
+                .body("message", equalTo("File \"" + getTestFilePath().getFileName().toString()
+                        + "\" already exists"))
+                .body("timestamp", notNullValue());
+
+        var existingFilePath = getTestUserDirectoryPath().resolve(getTestFilePath().getFileName());
+        assertEquals(-1L, Files.mismatch(getTestFilePath(), existingFilePath));
+    }
+
     @Test
     public void listFiles_noFileUploaded_returnsEmptyList() {
         given()
@@ -168,6 +338,152 @@ public class FileStorageControllerTest {
                 .body(equalTo("[\"" + getTestFilePath().getFileName() + "\"]"));
     }
 
+    @Test
+    public void listFiles_fileAddedAfterListing_returnsListWithAddedFile() throws InterruptedException {
+        getTestUserDirectoryPath().toFile().mkdir();
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .when()
+                .get("/api/storage/listfiles")
+                .then()
+                .statusCode(200)
+                .body(equalTo("[]"));
+
+        copyTestFileToTestUserDirectory();
+
+        var expectedBody = "[\"" + getTestFilePath().getFileName() + "\"]";
+        var actualBody = "";
+        for (var attempt = 0; attempt < 100 && !expectedBody.equals(actualBody); attempt++) {
+            Thread.sleep(100);
+            actualBody = given()
+                    .port(port)
+                    .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                    .when()
+                    .get("/api/storage/listfiles")
+                    .then()
+                    .statusCode(200)
+                    .extract()
+                    .asString();
+        }
+        assertEquals(expectedBody, actualBody);
+    }
+
+    @Test
+    public void listFiles_unchangedSinceLastListing_returnsNotModified() {
+        copyTestFileToTestUserDirectory();
+        var entityTag = given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .when()
+                .get("/api/storage/listfiles")
+                .then()
+                .statusCode(200)
+                .extract()
+                .header("ETag");
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .header("If-None-Match", entityTag)
+                .when()
+                .get("/api/storage/listfiles")
+                .then()
+                .statusCode(304);
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .multiPart("fileName", getTestFilePath().getFileName().toString())
+                .when()
+                .delete("/api/storage/delete")
+                .then()
+                .statusCode(204);
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .header("If-None-Match", entityTag)
+                .when()
+                .get("/api/storage/listfiles")
+                .then()
+                .statusCode(200)
+                .body(equalTo("[]"));
+    }
+
+    @Test
+    public void listFilesAfter_noCursor_returnsFirstPage() throws IOException {
+        getTestUserDirectoryPath().toFile().mkdir();
+        for (var fileName : List.of("c.txt", "a.txt", "b.txt")) {
+            Files.createFile(getTestUserDirectoryPath().resolve(fileName));
+        }
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("limit", 2)
+                .when()
+                .get("/api/storage/listfiles")
+                .then()
+                .statusCode(200)
+                .body(equalTo("[\"a.txt\",\"b.txt\"]"));
+    }
+
+    @Test
+    public void listFilesAfter_cursorAtFirstFile_returnsFollowingFiles() throws IOException {
+        getTestUserDirectoryPath().toFile().mkdir();
+        for (var fileName : List.of("c.txt", "a.txt", "b.txt")) {
+            Files.createFile(getTestUserDirectoryPath().resolve(fileName));
+        }
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("after", "a.txt")
+                .queryParam("limit", 5)
+                .when()
+                .get("/api/storage/listfiles")
+                .then()
+                .statusCode(200)
+                .body(equalTo("[\"b.txt\",\"c.txt\"]"));
+    }
+
+    @Test
+    public void listFileDetails_sortedBySizeAndFilteredByExtension_returnsMatchingFilesWithMetadata()
+            throws IOException {
+        getTestUserDirectoryPath().toFile().mkdir();
+        Files.writeString(getTestUserDirectoryPath().resolve("a.txt"), "aaa");
+        Files.writeString(getTestUserDirectoryPath().resolve("b.jpg"), "b");
+        Files.writeString(getTestUserDirectoryPath().resolve("c.TXT"), "cc");
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("sortBy", "size")
+                .queryParam("extension", "txt")
+                .when()
+                .get("/api/storage/listfiles/details")
+                .then()
+                .statusCode(200)
+                .body("name", contains("c.TXT", "a.txt"))
+                .body("size", contains(2, 3))
+                .body("[1].contentType", equalTo("text/plain"))
+                .body("[1].lastModified", notNullValue());
+    }
+
+    @Test
+    public void listFileDetails_invalidSortField_returnsBadRequest() {
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("sortBy", "owner")
+                .when()
+                .get("/api/storage/listfiles/details")
+                .then()
+                .statusCode(400)
+                .body("message", equalTo("Files can be sorted by name, size or date"));
+    }
+
     @Test
     public void listFilesWithPagination_fileInStore_returnsListOfOneFile() {
         copyTestFileToTestUserDirectory();
@@ -289,6 +605,270 @@ public class FileStorageControllerTest {
         assertFalse(getTestUserDirectoryPath().resolve(newFileName).toFile().exists());
     }
 
+    @Test
+    public void load_fileInStore_returnsWholeFile() throws IOException {
+        copyTestFileToTestUserDirectory();
+
+        var body = given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("fileName", getTestFilePath().getFileName().toString())
+                .when()
+                .get("/api/storage/load")
+                .then()
+                .statusCode(200)
+                .header("Accept-Ranges", equalTo("bytes"))
+                .extract()
+                .asByteArray();
+
+        assertArrayEquals(Files.readAllBytes(getTestFilePath()), body);
+    }
+
+    @Test
+    public void load_fileReplacedAfterBeingLoaded_returnsNewContents() {
+        copyTestFileToTestUserDirectory();
+        var fileName = getTestFilePath().getFileName().toString();
+        var newContents = "New contents".getBytes();
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("fileName", fileName)
+                .when()
+                .get("/api/storage/load")
+                .then()
+                .statusCode(200);
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .multiPart("fileName", fileName)
+                .when()
+                .delete("/api/storage/delete")
+                .then()
+                .statusCode(204);
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/octet-stream")
+                .queryParam("fileName", fileName)
+                .body(newContents)
+                .when()
+                .post("/api/storage/upload/stream")
+                .then()
+                .statusCode(201);
+
+        var body = given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("fileName", fileName)
+                .when()
+                .get("/api/storage/load")
+                .then()
+                .statusCode(200)
+                .extract()
+                .asByteArray();
+
+        assertArrayEquals(newContents, body);
+    }
+
+    @Test
+    public void usage_fileDeletedBeforeUsageWasCalculated_countedOnce() {
+        copyTestFileToTestUserDirectory();
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .multiPart("fileName", getTestFilePath().getFileName().toString())
+                .when()
+                .delete("/api/storage/delete")
+                .then()
+                .statusCode(204);
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .when()
+                .get("/api/storage/usage")
+                .then()
+                .statusCode(200)
+                .body("usedBytes", equalTo(0));
+    }
+
+    @Test
+    public void load_fileChangedDirectlyOnDiskAfterBeingLoaded_returnsNewContents() throws IOException {
+        copyTestFileToTestUserDirectory();
+        var fileName = getTestFilePath().getFileName().toString();
+        var newContents = "New contents".getBytes();
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("fileName", fileName)
+                .when()
+                .get("/api/storage/load")
+                .then()
+                .statusCode(200);
+        Files.write(getTestUserDirectoryPath().resolve(fileName), newContents);
+
+        var body = given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("fileName", fileName)
+                .when()
+                .get("/api/storage/load")
+                .then()
+                .statusCode(200)
+                .extract()
+                .asByteArray();
+
+        assertArrayEquals(newContents, body);
+    }
+
+    @Test
+    public void load_ifNoneMatchWithCurrentEntityTag_returnsNotModified() {
+        copyTestFileToTestUserDirectory();
+        var response = given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("fileName", getTestFilePath().getFileName().toString())
+                .when()
+                .get("/api/storage/load")
+                .then()
+                .statusCode(200)
+                .header("Last-Modified", notNullValue())
+                .extract();
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("fileName", getTestFilePath().getFileName().toString())
+                .header("If-None-Match", response.header("ETag"))
+                .when()
+                .get("/api/storage/load")
+                .then()
+                .statusCode(304)
+                .body(emptyString());
+    }
+
+    @Test
+    public void load_singleRange_returnsPartialContent() throws IOException {
+        copyTestFileToTestUserDirectory();
+        var fileContents = Files.readAllBytes(getTestFilePath());
+
+        var body = given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("fileName", getTestFilePath().getFileName().toString())
+                .header("Range", "bytes=10-19")
+                .when()
+                .get("/api/storage/load")
+                .then()
+                .statusCode(206)
+                .header("Content-Range", equalTo("bytes 10-19/" + fileContents.length))
+                .extract()
+                .asByteArray();
+
+        assertArrayEquals(Arrays.copyOfRange(fileContents, 10, 20), body);
+    }
+
+    @Test
+    public void load_rangeWithCurrentIfRange_returnsPartialContent() {
+        copyTestFileToTestUserDirectory();
+        var entityTag = given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("fileName", getTestFilePath().getFileName().toString())
+                .when()
+                .get("/api/storage/load")
+                .then()
+                .statusCode(200)
+                .extract()
+                .header("ETag");
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("fileName", getTestFilePath().getFileName().toString())
+                .header("Range", "bytes=10-19")
+                .header("If-Range", entityTag)
+                .when()
+                .get("/api/storage/load")
+                .then()
+                .statusCode(206);
+    }
+
+    @Test
+    public void load_rangeWithOutdatedIfRange_returnsWholeFile() throws IOException {
+        copyTestFileToTestUserDirectory();
+        var fileContents = Files.readAllBytes(getTestFilePath());
+
+        var body = given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("fileName", getTestFilePath().getFileName().toString())
+                .header("Range", "bytes=10-19")
+                .header("If-Range", "\"outdated\"")
+                .when()
+                .get("/api/storage/load")
+                .then()
+                .statusCode(200)
+                .header("Content-Range", nullValue())
+                .extract()
+                .asByteArray();
+
+        assertArrayEquals(fileContents, body);
+    }
+
+    @Test
+    public void load_multipleRanges_returnsMultipartByteranges() {
+        copyTestFileToTestUserDirectory();
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("fileName", getTestFilePath().getFileName().toString())
+                .header("Range", "bytes=0-9,20-29")
+                .when()
+                .get("/api/storage/load")
+                .then()
+                .statusCode(206)
+                .contentType(startsWith("multipart/byteranges"));
+    }
+
+    @Test
+    public void load_unsatisfiableRange_returnsRangeNotSatisfiable() throws IOException {
+        copyTestFileToTestUserDirectory();
+        var fileLength = Files.size(getTestFilePath());
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("fileName", getTestFilePath().getFileName().toString())
+                .header("Range", "bytes=" + fileLength + "-")
+                .when()
+                .get("/api/storage/load")
+                .then()
+                .statusCode(416)
+                .header("Content-Range", equalTo("bytes */" + fileLength));
+    }
+
+    @Test
+    public void load_suffixRangeOfEmptyFile_returnsRangeNotSatisfiable() throws IOException {
+        getTestUserDirectoryPath().toFile().mkdir();
+        Files.createFile(getTestUserDirectoryPath().resolve("empty.txt"));
+
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .queryParam("fileName", "empty.txt")
+                .header("Range", "bytes=-10")
+                .when()
+                .get("/api/storage/load")
+                .then()
+                .statusCode(416)
+                .header("Content-Range", equalTo("bytes */0"));
+    }
+
     @Test
     public void loadMultiple_emptyRequestBody_returnsBadRequest() {
         given()
@@ -377,4 +957,76 @@ public class FileStorageControllerTest {
         assertEquals(2, Files.walk(getTestTempDirectoryPath()).count());
     }
 
+    @Test
+    public void loadMultiple_sameFilesRequestedTwice_returnsCachedArchive() throws IOException {
+        copyTestFileToTestUserDirectory();
+
+        var firstBody = given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/json")
+                .body("[\"Bee Movie Transcript.txt\"]")
+                .when()
+                .get("/api/storage/loadmultiple")
+                .then()
+                .statusCode(200)
+                .extract()
+                .asByteArray();
+        var secondBody = given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/json")
+                .body("[\"Bee Movie Transcript.txt\"]")
+                .when()
+                .get("/api/storage/loadmultiple")
+                .then()
+                .statusCode(200)
+                .extract()
+                .asByteArray();
+
+        assertArrayEquals(firstBody, secondBody);
+        assertEquals(2, Files.walk(getTestTempDirectoryPath()).count());
+    }
+
+    @Test
+    public void loadMultipleAsStream_listWithSingleValidFile_returnsArchiveWithoutTempFile() throws IOException {
+        copyTestFileToTestUserDirectory();
+
+        var body = given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/json")
+                .body("[\"Bee Movie Transcript.txt\"]")
+                .when()
+                .get("/api/storage/loadmultiple/stream")
+                .then()
+                .statusCode(200)
+                .extract()
+                .asByteArray();
+
+        try (var zipInputStream = new ZipInputStream(new ByteArrayInputStream(body))) {
+            var zipEntry = zipInputStream.getNextEntry();
+            assertNotNull(zipEntry);
+            assertEquals("Bee Movie Transcript.txt", zipEntry.getName());
+            assertArrayEquals(Files.readAllBytes(getTestFilePath()), zipInputStream.readAllBytes());
+            assertNull(zipInputStream.getNextEntry());
+        }
+        assertFalse(Files.exists(getTestTempDirectoryPath()));
+    }
+
+    @Test
+    public void loadMultipleAsStream_listOfSingleNonExistingFile_returnsBadRequest() {
+        given()
+                .port(port)
+                .auth().oauth2(jwtUtil.generateToken(getTestUser()))
+                .contentType("application/json")
+                .body("[\"1.txt\"]")
+                .when()
+                .get("/api/storage/loadmultiple/stream")
+                .then()
+                .statusCode(400)
+                .body("message", equalTo("File 1.txt was not found in storage"))
+                .body("timestamp", notNullValue());
+    }
+
 }